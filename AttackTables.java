@@ -0,0 +1,199 @@
+/**
+* This class holds the precomputed attack masks for every square. <br>
+* Squares use the Position layout, the index of [x][y] is (x * 8 + y).
+* The masks ignore walls, Position provides the squares that walls
+* block so a move is a mask lookup followed by a few bitwise operations. <br>
+* Sliding pieces use a ray per direction. A wall is an edge between two
+* squares, so the square in front of a wall is added to the blockers of
+* that direction. The first blocker on the ray is found with a bit scan
+* and the ray behind it is removed with a second lookup.
+*/
+public class AttackTables {
+	public static final int NORTH = 0; // Directions. North is towards rank 8
+	public static final int NORTH_EAST = 1;
+	public static final int EAST = 2;
+	public static final int SOUTH_EAST = 3;
+	public static final int SOUTH = 4;
+	public static final int SOUTH_WEST = 5;
+	public static final int WEST = 6;
+	public static final int NORTH_WEST = 7;
+	public static final int[] DX = {-1, -1, 0, 1, 1, 1, 0, -1}; // Row change for each direction
+	public static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1}; // Column change for each direction
+	public static final long[] KNIGHT = new long[64]; // Knight destinations
+	public static final long[] KING = new long[64]; // King destinations
+	public static final long[] ADJACENT = new long[64]; // Neighbours that share a side with the square
+	public static final long[][] PAWN = new long[2][64]; // Pawn capture squares for white and black
+	public static final int[][] STEP = new int[8][64]; // Neighbour in each direction, -1 if off the board
+	public static final long[][] RAY = new long[8][64]; // Squares from a square to the edge in each direction
+
+	static {
+		int[][] knightJumps = {{-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}, {1, -2}, {2, -1}, {2, 1}, {1, 2}};
+		for(int sq = 0; sq < 64; sq++) {
+			int x = sq >>> 3;
+			int y = sq & 7;
+			for(int i = 0; i < knightJumps.length; i++) {
+				KNIGHT[sq] |= bit(x + knightJumps[i][0], y + knightJumps[i][1]);
+			}
+			for(int d = 0; d < 8; d++) {
+				for(int i = 1; onBoard(x + DX[d] * i, y + DY[d] * i); i++) {
+					RAY[d][sq] |= bit(x + DX[d] * i, y + DY[d] * i);
+				}
+				KING[sq] |= bit(x + DX[d], y + DY[d]);
+				if(DX[d] == 0 || DY[d] == 0) {
+					ADJACENT[sq] |= bit(x + DX[d], y + DY[d]);
+				}
+				if(onBoard(x + DX[d], y + DY[d])) {
+					STEP[d][sq] = (x + DX[d]) * 8 + y + DY[d];
+				} else {
+					STEP[d][sq] = -1;
+				}
+			}
+			// White pawns move towards rank 8, black pawns towards rank 1
+			PAWN[Position.WHITE][sq] = bit(x - 1, y - 1) | bit(x - 1, y + 1);
+			PAWN[Position.BLACK][sq] = bit(x + 1, y - 1) | bit(x + 1, y + 1);
+		}
+	}
+
+	/**
+	* Returns the squares a sliding piece reaches in one direction
+	* @param sq The square of the piece
+	* @param dir The direction
+	* @param occupied The occupied squares
+	* @param wallBlocks The squares a wall stops from stepping in this direction
+	* @return Bitboard of the reachable squares including the first piece hit
+	*/
+	public static long rayAttacks(int sq, int dir, long occupied, long wallBlocks) {
+		if((wallBlocks & (1L << sq)) != 0L) {
+			return 0L; // Wall in front of the piece
+		}
+		long ray = RAY[dir][sq];
+		long blockers = ray & (occupied | wallBlocks);
+		if(blockers == 0L) {
+			return ray;
+		}
+		int first;
+		if(dir >= EAST && dir <= SOUTH_WEST) {
+			// Square index increases along the ray
+			first = Long.numberOfTrailingZeros(blockers);
+		} else {
+			first = 63 - Long.numberOfLeadingZeros(blockers);
+		}
+		return ray ^ RAY[dir][first];
+	}
+
+	/**
+	* Returns the squares a rook reaches
+	* @param sq The square of the rook
+	* @param occupied The occupied squares
+	* @param pos The position holding the walls
+	* @return Bitboard of the reachable squares including the pieces hit
+	*/
+	public static long rookAttacks(int sq, long occupied, Position pos) {
+		return rayAttacks(sq, NORTH, occupied, pos.getWallBlocks(NORTH))
+			| rayAttacks(sq, EAST, occupied, pos.getWallBlocks(EAST))
+			| rayAttacks(sq, SOUTH, occupied, pos.getWallBlocks(SOUTH))
+			| rayAttacks(sq, WEST, occupied, pos.getWallBlocks(WEST));
+	}
+
+	/**
+	* Returns the squares a bishop reaches
+	* @param sq The square of the bishop
+	* @param occupied The occupied squares
+	* @param pos The position holding the walls
+	* @return Bitboard of the reachable squares including the pieces hit
+	*/
+	public static long bishopAttacks(int sq, long occupied, Position pos) {
+		return rayAttacks(sq, NORTH_EAST, occupied, pos.getWallBlocks(NORTH_EAST))
+			| rayAttacks(sq, SOUTH_EAST, occupied, pos.getWallBlocks(SOUTH_EAST))
+			| rayAttacks(sq, SOUTH_WEST, occupied, pos.getWallBlocks(SOUTH_WEST))
+			| rayAttacks(sq, NORTH_WEST, occupied, pos.getWallBlocks(NORTH_WEST));
+	}
+
+	/**
+	* Determines if a square is attacked by the pieces of a colour. <br>
+	* The lookup works backwards from the square. Every move is blocked by
+	* the same walls and pieces in both directions, so a piece standing on
+	* the square would reach exactly the pieces that attack it
+	* @param sq The square index
+	* @param colour The colour of the attackers
+	* @param pos The position holding the pieces and walls
+	* @return True if a piece of the colour can move to the square
+	*/
+	public static boolean isAttacked(int sq, int colour, Position pos) {
+		long open = ~pos.getBlockedSteps(sq);
+		if((KNIGHT[sq] & pos.getPieces(colour, Position.KNIGHT)) != 0L) {
+			return true; // Knights jump over walls
+		}
+		if((KING[sq] & open & pos.getPieces(colour, Position.KING)) != 0L) {
+			return true;
+		}
+		// A pawn of the other colour on the square would take towards the attacking pawns
+		if((PAWN[colour ^ 1][sq] & open & pos.getPieces(colour, Position.PAWN)) != 0L) {
+			return true;
+		}
+		long occupied = pos.getOccupied();
+		long queens = pos.getPieces(colour, Position.QUEEN);
+		if((rookAttacks(sq, occupied, pos) & (pos.getPieces(colour, Position.ROOK) | queens)) != 0L) {
+			return true;
+		}
+		return (bishopAttacks(sq, occupied, pos) & (pos.getPieces(colour, Position.BISHOP) | queens)) != 0L;
+	}
+
+	/**
+	* Returns the pieces of both colours that attack a square. <br>
+	* Sliding pieces are found through the given occupied squares, so
+	* pieces removed from them uncover the pieces behind (static exchange)
+	* @param sq The square index
+	* @param occupied The occupied squares
+	* @param pos The position holding the pieces and walls
+	* @return Bitboard of the attackers, it can include removed pieces
+	*/
+	public static long attackersTo(int sq, long occupied, Position pos) {
+		long open = ~pos.getBlockedSteps(sq);
+		long rooks = pos.getPieces(Position.WHITE, Position.ROOK) | pos.getPieces(Position.BLACK, Position.ROOK)
+			| pos.getPieces(Position.WHITE, Position.QUEEN) | pos.getPieces(Position.BLACK, Position.QUEEN);
+		long bishops = pos.getPieces(Position.WHITE, Position.BISHOP) | pos.getPieces(Position.BLACK, Position.BISHOP)
+			| pos.getPieces(Position.WHITE, Position.QUEEN) | pos.getPieces(Position.BLACK, Position.QUEEN);
+		return (KNIGHT[sq] & (pos.getPieces(Position.WHITE, Position.KNIGHT) | pos.getPieces(Position.BLACK, Position.KNIGHT)))
+			| (KING[sq] & open & (pos.getPieces(Position.WHITE, Position.KING) | pos.getPieces(Position.BLACK, Position.KING)))
+			| (PAWN[Position.BLACK][sq] & open & pos.getPieces(Position.WHITE, Position.PAWN))
+			| (PAWN[Position.WHITE][sq] & open & pos.getPieces(Position.BLACK, Position.PAWN))
+			| (rookAttacks(sq, occupied, pos) & rooks)
+			| (bishopAttacks(sq, occupied, pos) & bishops);
+	}
+
+	/**
+	* Returns the squares a mine clears when it explodes. <br>
+	* Walls shield the squares on the other side of them. Diagonal
+	* squares are always cleared because walls only sit on the sides
+	* @param sq The square of the mine
+	* @param pos The position holding the walls
+	* @return Bitboard of the neighbours that are blown up
+	*/
+	public static long blastSquares(int sq, Position pos) {
+		return KING[sq] & ~(pos.getBlockedSteps(sq) & ADJACENT[sq]);
+	}
+
+	/**
+	* Determines if the coordinates are on the board
+	* @param x The X coordinate
+	* @param y The Y coordinate
+	* @return True if the square exists
+	*/
+	private static boolean onBoard(int x, int y) {
+		return x >= 0 && x < 8 && y >= 0 && y < 8;
+	}
+
+	/**
+	* Returns the bit of a square
+	* @param x The X coordinate
+	* @param y The Y coordinate
+	* @return The bit of the square, 0 if it is off the board
+	*/
+	private static long bit(int x, int y) {
+		if(!onBoard(x, y)) {
+			return 0L;
+		}
+		return 1L << (x * 8 + y);
+	}
+}
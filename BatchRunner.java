@@ -0,0 +1,243 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+* This class runs many AUTO mode games in one program (batch mode). <br>
+* The games come from a manifest file with one game per line, the input
+* board file, game file and output board file separated by tabs, or from
+* a directory where every [Name].board.txt is run with [Name].log.txt
+* into [Name].out.txt. Relative paths in a manifest are taken from the
+* manifest's directory. Every game gets its own Chess object and runs on
+* a fixed pool of threads. The messages a game prints are held back and
+* printed with its result, so the games do not mix their output.
+*/
+public class BatchRunner {
+	private static final String BOARD_SUFFIX = ".board.txt"; // Input board files in directory mode
+	private static final String LOG_SUFFIX = ".log.txt"; // Game files in directory mode
+	private static final String OUT_SUFFIX = ".out.txt"; // Output board files in directory mode
+
+	/**
+	* Runs the games of a manifest file or directory and prints a line per
+	* game and the overall throughput
+	* @param source The manifest file or the directory
+	* @param threads The number of worker threads
+	* @param outDir The directory for the output board files in directory mode, null for the source directory
+	* @param verbose True to print the messages of every game, else only those of games that failed
+	*/
+	public static void run(String source, int threads, String outDir, boolean verbose) {
+		if(threads < 1) {
+			System.out.println("ERROR: at least one thread is needed");
+			return;
+		}
+		ArrayList<String[]> games = new ArrayList<String[]>();
+		File sourceFile = new File(source);
+		if(sourceFile.isDirectory()) {
+			if(!listDirectory(sourceFile, outDir == null ? sourceFile : new File(outDir), games)) {
+				return;
+			}
+		} else if(!readManifest(sourceFile, games)) {
+			return;
+		}
+		if(games.isEmpty()) {
+			System.out.println("ERROR: no games found in " + source);
+			return;
+		}
+
+		ThreadOutput output = ThreadOutput.install();
+		PrintStream console = output.getConsole();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		int saved = 0;
+		long moves = 0;
+		long failed = 0;
+		try {
+			ArrayList<Future<Result>> results = new ArrayList<Future<Result>>();
+			for(int i = 0; i < games.size(); i++) {
+				results.add(pool.submit(new Game(games.get(i), output)));
+			}
+			// Print the results in manifest order as they finish
+			for(int i = 0; i < results.size(); i++) {
+				String[] files = games.get(i);
+				Result result;
+				try {
+					result = results.get(i).get();
+				} catch(ExecutionException ex) {
+					result = new Result(false, 0, 0, 0, "ERROR: " + ex.getCause() + "\n");
+				}
+				moves += result.moves;
+				failed += result.failedMoves;
+				if(result.saved) {
+					saved++;
+				}
+				console.printf("%s: %s, %d moves, %d failed moves, %.1f ms%n", files[0],
+					result.saved ? "saved " + files[2] : "not saved", result.moves, result.failedMoves, result.nanos / 1e6);
+				if(verbose || !result.saved || result.failedMoves > 0) {
+					for(String line : result.messages.split("\n")) {
+						if(!line.isEmpty()) {
+							console.println("    " + line);
+						}
+					}
+				}
+			}
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdown();
+			output.uninstall();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		console.println();
+		console.println("Games: " + games.size() + " (" + saved + " saved, " + (games.size() - saved) + " not saved)");
+		console.println("Moves: " + moves + " (" + failed + " failed)");
+		console.printf("Time: %.3f s with %d threads%n", seconds, threads);
+		console.printf("Throughput: %.1f games/second, %.0f moves/second%n",
+			seconds > 0 ? games.size() / seconds : 0.0, seconds > 0 ? moves / seconds : 0.0);
+	}
+
+	/**
+	* Reads the games of a manifest file
+	* @param manifest The manifest file
+	* @param games The list to add the input board, game and output board files to
+	* @return True if the manifest was read
+	*/
+	private static boolean readManifest(File manifest, ArrayList<String[]> games) {
+		if(!manifest.exists()) {
+			System.out.println("ERROR: " + manifest.getPath() + " cannot be opened");
+			return false;
+		}
+		File dir = manifest.getAbsoluteFile().getParentFile();
+		try(BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+			String fileContent;
+			int lineCount = 0;
+			while((fileContent = reader.readLine()) != null) {
+				lineCount++;
+				if(fileContent.trim().isEmpty() || fileContent.charAt(0) == '%') {
+					continue;
+				}
+				String[] files = fileContent.split("\t");
+				if(files.length != 3) {
+					System.out.println("ERROR: " + manifest.getPath() + " line " + lineCount
+						+ ": expected input board, game and output board files separated by tabs");
+					return false;
+				}
+				for(int i = 0; i < files.length; i++) {
+					File file = new File(files[i].trim());
+					files[i] = file.isAbsolute() ? file.getPath() : new File(dir, file.getPath()).getPath();
+				}
+				games.add(files);
+			}
+		} catch(IOException ex) {
+			System.out.println("ERROR: " + manifest.getPath() + " could not be read");
+			System.out.println("Reason: " + ex.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Finds the games of a directory: every [Name].board.txt with a [Name].log.txt
+	* @param dir The directory
+	* @param outDir The directory for the output board files
+	* @param games The list to add the input board, game and output board files to
+	* @return True if the directory was read
+	*/
+	private static boolean listDirectory(File dir, File outDir, ArrayList<String[]> games) {
+		String[] names = dir.list();
+		if(names == null) {
+			System.out.println("ERROR: " + dir.getPath() + " cannot be opened");
+			return false;
+		}
+		if(!outDir.isDirectory() && !outDir.mkdirs()) {
+			System.out.println("ERROR: " + outDir.getPath() + " cannot be created");
+			return false;
+		}
+		Arrays.sort(names);
+		for(String name : names) {
+			if(!name.endsWith(BOARD_SUFFIX)) {
+				continue;
+			}
+			String game = name.substring(0, name.length() - BOARD_SUFFIX.length());
+			File log = new File(dir, game + LOG_SUFFIX);
+			if(!log.exists()) {
+				System.out.println("INFO: " + name + " has no " + game + LOG_SUFFIX + ", skipped");
+				continue;
+			}
+			games.add(new String[] {new File(dir, name).getPath(), log.getPath(), new File(outDir, game + OUT_SUFFIX).getPath()});
+		}
+		return true;
+	}
+
+	/**
+	* The outcome of one game
+	*/
+	private static class Result {
+		private boolean saved; // The output board file was saved
+		private int moves; // Moves in the game log after the run
+		private int failedMoves; // Moves of the game file that could not be played
+		private long nanos; // Time taken
+		private String messages; // What the game printed
+
+		/**
+		* Creates a result
+		* @param saved True if the output board file was saved
+		* @param moves The moves in the game log after the run
+		* @param failedMoves The moves that could not be played
+		* @param nanos The time taken in nanoseconds
+		* @param messages What the game printed
+		*/
+		Result(boolean saved, int moves, int failedMoves, long nanos, String messages) {
+			this.saved = saved;
+			this.moves = moves;
+			this.failedMoves = failedMoves;
+			this.nanos = nanos;
+			this.messages = messages;
+		}
+	}
+
+	/**
+	* Runs one game on a worker thread
+	*/
+	private static class Game implements Callable<Result> {
+		private String[] files; // Input board, game and output board files
+		private ThreadOutput output; // Collects what the game prints
+
+		/**
+		* Creates a game task
+		* @param files The input board, game and output board files
+		* @param output The stream that collects what the game prints
+		*/
+		Game(String[] files, ThreadOutput output) {
+			this.files = files;
+			this.output = output;
+		}
+
+		/**
+		* Loads, runs and saves the game
+		* @return The outcome
+		*/
+		@Override
+		public Result call() {
+			ByteArrayOutputStream messages = output.capture();
+			long start = System.nanoTime();
+			try {
+				Chess game = new Chess();
+				boolean saved = game.runAuto(files[0], files[1], files[2]);
+				return new Result(saved, game.getGameLog().length, game.getFailedMoves(),
+					System.nanoTime() - start, messages.toString());
+			} finally {
+				output.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,500 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+* This class reads and writes game logs in a compact binary format. <br>
+* The file starts with MAGIC and a header of varints: the format version,
+* the placements made before the first piece move (mines, trap doors,
+* walls and passes) and the number of moves after them. Each of those
+* moves then takes one or two bytes, built from the fields of the move
+* encoding: <br>
+* 0x00-0x3F piece move, the from square, followed by the to square <br>
+* 0x40-0x7F mine on the square 0x40 less, 0x80-0xBF trap door on the square 0x80 less <br>
+* PASS, CASTLE_KING, CASTLE_QUEEN, PROMOTE + piece type, one byte <br>
+* WALL + wall type, followed by the square <br>
+* TEXT, followed by a varint length and the line in UTF-8, for a line
+* that is not a valid move, so any text log converts back unchanged <br>
+* The file ends with the CRC32 of everything before it, in 4 bytes.
+*/
+public class BinaryGameLog {
+	private static final byte[] MAGIC = {(byte)0xB7, 'O', 'C', 'L'}; // Start of a binary log, never the start of a text log
+	private static final int VERSION = 1; // Format version
+	private static final int PASS = 0xC0; // Body codes after the square ranges
+	private static final int CASTLE_KING = 0xC1;
+	private static final int CASTLE_QUEEN = 0xC2;
+	private static final int PROMOTE = 0xC2; // Plus the promotion piece type, 0xC3-0xC6
+	private static final int WALL = 0xC6; // Plus the wall type, 0xC7-0xC9
+	private static final int TEXT = 0xCF;
+	private static final int SETUP_KINDS = 8; // Placement kinds in a header varint: pass, mine, trap door, 3 wall types
+	private int[] moves; // Decoded moves, Move.NONE for a text line
+	private String[] lines; // Decoded text lines, null for a move
+	private int size; // Number of entries decoded
+	private String error; // The problem found by the last decode, null if none
+
+	/**
+	* Creates a decoder
+	*/
+	public BinaryGameLog() {
+		moves = new int[0];
+		lines = new String[0];
+	}
+
+	/**
+	* Encodes log lines in the binary format
+	* @param log The moves in move notation, without comments
+	* @return The binary log
+	*/
+	public static byte[] encode(List<String> log) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 + log.size() * 2);
+		out.write(MAGIC, 0, MAGIC.length);
+		writeVarint(out, VERSION);
+		// Placements before the first piece move go to the header
+		int setup = 0;
+		while(setup < log.size() && setupCode(parseExact(log.get(setup))) >= 0) {
+			setup++;
+		}
+		writeVarint(out, setup);
+		for(int i = 0; i < setup; i++) {
+			writeVarint(out, setupCode(parseExact(log.get(i))));
+		}
+		writeVarint(out, log.size() - setup);
+		for(int i = setup; i < log.size(); i++) {
+			writeMove(out, log.get(i));
+		}
+		CRC32 crc = new CRC32();
+		byte[] data = out.toByteArray();
+		crc.update(data, 0, data.length);
+		long sum = crc.getValue();
+		for(int shift = 24; shift >= 0; shift -= 8) {
+			out.write((int)(sum >>> shift));
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	* Parses a move that converts back to exactly the same text
+	* @param muv The move in move notation
+	* @return The encoded move, NONE if it is not valid or not written that way
+	*/
+	private static int parseExact(String muv) {
+		int m = Move.parse(muv);
+		return m != Move.NONE && Move.toString(m).equals(muv) ? m : Move.NONE;
+	}
+
+	/**
+	* Returns the header code of a placement
+	* @param m The encoded move
+	* @return The placement kind plus the square times SETUP_KINDS, -1 if not a placement
+	*/
+	private static int setupCode(int m) {
+		if(m == Move.NONE) {
+			return -1;
+		}
+		switch(Move.getType(m)) {
+			case Move.PASS:
+				return 0;
+			case Move.MINE:
+				return 1 + Move.getTo(m) * SETUP_KINDS;
+			case Move.TRAP:
+				return 2 + Move.getTo(m) * SETUP_KINDS;
+			case Move.WALL:
+				return 2 + Move.getExtra(m) + Move.getTo(m) * SETUP_KINDS;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	* Returns the placement of a header code
+	* @param code The header code
+	* @return The encoded move, NONE if the code is not valid
+	*/
+	private static int setupMove(int code) {
+		int kind = code % SETUP_KINDS;
+		int sq = code / SETUP_KINDS;
+		if(sq > 63 || (kind == 0 && sq != 0)) {
+			return Move.NONE;
+		}
+		switch(kind) {
+			case 0:
+				return Move.create(Move.PASS, 0, 0, 0);
+			case 1:
+				return Move.create(Move.MINE, sq, sq, 0);
+			case 2:
+				return Move.create(Move.TRAP, sq, sq, 0);
+			case 3: case 4: case 5:
+				return Move.create(Move.WALL, sq, sq, kind - 2);
+			default:
+				return Move.NONE;
+		}
+	}
+
+	/**
+	* Writes one body entry
+	* @param out The stream to write to
+	* @param muv The move in move notation
+	*/
+	private static void writeMove(ByteArrayOutputStream out, String muv) {
+		int m = parseExact(muv);
+		if(m == Move.NONE) {
+			byte[] text = muv.getBytes(StandardCharsets.UTF_8);
+			out.write(TEXT);
+			writeVarint(out, text.length);
+			out.write(text, 0, text.length);
+			return;
+		}
+		switch(Move.getType(m)) {
+			case Move.PASS:
+				out.write(PASS);
+				break;
+			case Move.CASTLE_KING:
+				out.write(CASTLE_KING);
+				break;
+			case Move.CASTLE_QUEEN:
+				out.write(CASTLE_QUEEN);
+				break;
+			case Move.PROMOTE:
+				out.write(PROMOTE + Move.getExtra(m));
+				break;
+			case Move.MINE:
+				out.write(0x40 + Move.getTo(m));
+				break;
+			case Move.TRAP:
+				out.write(0x80 + Move.getTo(m));
+				break;
+			case Move.WALL:
+				out.write(WALL + Move.getExtra(m));
+				out.write(Move.getTo(m));
+				break;
+			default:
+				out.write(Move.getFrom(m));
+				out.write(Move.getTo(m));
+		}
+	}
+
+	/**
+	* Decodes a binary log
+	* @param data The binary log
+	* @return True if the log is valid, else getError has the problem
+	*/
+	public boolean decode(byte[] data) {
+		size = 0;
+		error = null;
+		if(!isBinary(data)) {
+			return fail("not a binary game log");
+		}
+		if(data.length < MAGIC.length + 4) {
+			return fail("file is too short");
+		}
+		int end = data.length - 4;
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, end);
+		long sum = 0;
+		for(int i = end; i < data.length; i++) {
+			sum = sum << 8 | (data[i] & 0xFF);
+		}
+		if(sum != crc.getValue()) {
+			return fail("checksum does not match, the file is damaged");
+		}
+		int[] pos = {MAGIC.length};
+		int version = readVarint(data, pos, end);
+		if(version != VERSION) {
+			return fail(version < 0 ? "header is cut short" : "unknown format version " + version);
+		}
+		int setup = readVarint(data, pos, end);
+		if(setup < 0 || setup > end) {
+			return fail("header is cut short");
+		}
+		ensureCapacity(setup);
+		for(int i = 0; i < setup; i++) {
+			int code = readVarint(data, pos, end);
+			int m = code < 0 ? Move.NONE : setupMove(code);
+			if(m == Move.NONE) {
+				return fail("invalid placement " + (i + 1) + " in the header");
+			}
+			add(m, null);
+		}
+		int count = readVarint(data, pos, end);
+		if(count < 0 || count > end) {
+			return fail("header is cut short");
+		}
+		ensureCapacity(setup + count);
+		for(int i = 0; i < count; i++) {
+			if(pos[0] >= end) {
+				return fail("moves are cut short after move " + size);
+			}
+			int code = data[pos[0]++] & 0xFF;
+			if(code < 0xC0) {
+				int sq = code & 63;
+				switch(code >>> 6) {
+					case 0:
+						if(pos[0] >= end || data[pos[0]] < 0 || data[pos[0]] > 63 || data[pos[0]] == sq) {
+							return fail("invalid piece move " + (size + 1));
+						}
+						add(Move.create(Move.NORMAL, sq, data[pos[0]++], 0), null);
+						break;
+					case 1:
+						add(Move.create(Move.MINE, sq, sq, 0), null);
+						break;
+					default:
+						add(Move.create(Move.TRAP, sq, sq, 0), null);
+				}
+			} else if(code == PASS) {
+				add(Move.create(Move.PASS, 0, 0, 0), null);
+			} else if(code == CASTLE_KING) {
+				add(Move.create(Move.CASTLE_KING, 0, 0, 0), null);
+			} else if(code == CASTLE_QUEEN) {
+				add(Move.create(Move.CASTLE_QUEEN, 0, 0, 0), null);
+			} else if(code > PROMOTE && code <= PROMOTE + Position.QUEEN) {
+				add(Move.create(Move.PROMOTE, 0, 0, code - PROMOTE), null);
+			} else if(code > WALL && code <= WALL + Move.WALL_BOTH) {
+				if(pos[0] >= end || data[pos[0]] < 0 || data[pos[0]] > 63) {
+					return fail("invalid wall placement " + (size + 1));
+				}
+				int wallSq = data[pos[0]++];
+				add(Move.create(Move.WALL, wallSq, wallSq, code - WALL), null);
+			} else if(code == TEXT) {
+				int length = readVarint(data, pos, end);
+				if(length < 0 || length > end - pos[0]) {
+					return fail("text line " + (size + 1) + " is cut short");
+				}
+				add(Move.NONE, new String(data, pos[0], length, StandardCharsets.UTF_8));
+				pos[0] += length;
+			} else {
+				return fail("unknown code " + code + " at move " + (size + 1));
+			}
+		}
+		if(pos[0] != end) {
+			return fail("unexpected data after the last move");
+		}
+		return true;
+	}
+
+	/**
+	* Returns the number of decoded entries
+	* @return The entry count
+	*/
+	public int size() {
+		return size;
+	}
+
+	/**
+	* Returns a decoded move
+	* @param idx The index of the entry
+	* @return The encoded move, NONE if the entry is a text line
+	*/
+	public int getMove(int idx) {
+		return moves[idx];
+	}
+
+	/**
+	* Returns a decoded entry as a line of a text log
+	* @param idx The index of the entry
+	* @return The move in move notation or the text line
+	*/
+	public String getLine(int idx) {
+		return lines[idx] != null ? lines[idx] : Move.toString(moves[idx]);
+	}
+
+	/**
+	* Returns the problem found by the last decode
+	* @return The problem, null if the log was valid
+	*/
+	public String getError() {
+		return error;
+	}
+
+	/**
+	* Determines if data starts as a binary log
+	* @param data The data
+	* @return True if the data starts with MAGIC
+	*/
+	public static boolean isBinary(byte[] data) {
+		if(data.length < MAGIC.length) {
+			return false;
+		}
+		for(int i = 0; i < MAGIC.length; i++) {
+			if(data[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	* Determines if a file is a binary log
+	* @param file The file
+	* @return True if the file starts with MAGIC
+	*/
+	public static boolean isBinary(File file) {
+		byte[] head = new byte[MAGIC.length];
+		try(InputStream in = new FileInputStream(file)) {
+			int read = 0;
+			while(read < head.length) {
+				int n = in.read(head, read, head.length - read);
+				if(n < 0) {
+					return false;
+				}
+				read += n;
+			}
+		} catch(IOException ex) {
+			return false;
+		}
+		return isBinary(head);
+	}
+
+	/**
+	* Reads the moves of a text log
+	* @param file The text log
+	* @return The lines that are not comments or empty
+	* @throws IOException If the file cannot be read
+	*/
+	public static ArrayList<String> readText(File file) throws IOException {
+		ArrayList<String> log = new ArrayList<String>();
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String fileContent;
+			while((fileContent = reader.readLine()) != null) {
+				if(!fileContent.isEmpty() && fileContent.charAt(0) != '%') {
+					log.add(fileContent);
+				}
+			}
+		}
+		return log;
+	}
+
+	/**
+	* Converts a text log to a binary log or a binary log to a text log,
+	* depending on the input
+	* @param inFile The log to convert
+	* @param outFile The file to write the converted log to
+	* @return True if the log was converted
+	*/
+	public static boolean convert(String inFile, String outFile) {
+		File input = new File(inFile);
+		if(!input.exists() || input.isDirectory()) {
+			System.out.println("ERROR: " + inFile + " cannot be opened");
+			return false;
+		}
+		try {
+			if(isBinary(input)) {
+				BinaryGameLog log = new BinaryGameLog();
+				if(!log.decode(Files.readAllBytes(input.toPath()))) {
+					System.out.println("ERROR: " + inFile + " is an invalid binary game log (" + log.getError() + ")");
+					return false;
+				}
+				try(BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
+					writer.write("% Game Log Converted: ");
+					writer.write(new SimpleDateFormat("dd-MMMM-YYYY - HH:mm:ss").format(new Date()));
+					writer.write("\n");
+					for(int i = 0; i < log.size(); i++) {
+						writer.write(log.getLine(i));
+						writer.write("\n");
+					}
+					writer.write("% --- End ---");
+				}
+				System.out.println("INFO: converted binary log (" + log.size() + " moves, " + input.length()
+					+ " bytes) to text log (" + new File(outFile).length() + " bytes)");
+			} else {
+				ArrayList<String> log = readText(input);
+				byte[] data = encode(log);
+				try(OutputStream out = new FileOutputStream(outFile)) {
+					out.write(data);
+				}
+				System.out.println("INFO: converted text log (" + log.size() + " moves, " + input.length()
+					+ " bytes) to binary log (" + data.length + " bytes)");
+			}
+		} catch(IOException ex) {
+			System.out.println("ERROR: could not convert " + inFile + " to " + outFile);
+			System.out.println("Reason: " + ex.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Adds a decoded entry
+	* @param m The encoded move, NONE for a text line
+	* @param line The text line, null for a move
+	*/
+	private void add(int m, String line) {
+		moves[size] = m;
+		lines[size] = line;
+		size++;
+	}
+
+	/**
+	* Makes room for the decoded entries
+	* @param entries The number of entries
+	*/
+	private void ensureCapacity(int entries) {
+		if(entries > moves.length) {
+			int[] newMoves = new int[entries];
+			String[] newLines = new String[entries];
+			System.arraycopy(moves, 0, newMoves, 0, size);
+			System.arraycopy(lines, 0, newLines, 0, size);
+			moves = newMoves;
+			lines = newLines;
+		}
+	}
+
+	/**
+	* Keeps the problem found
+	* @param message The problem
+	* @return False
+	*/
+	private boolean fail(String message) {
+		error = message;
+		return false;
+	}
+
+	/**
+	* Writes an unsigned varint, 7 bits a byte with the high bit set on all but the last byte
+	* @param out The stream to write to
+	* @param value The value, at least 0
+	*/
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	* Reads an unsigned varint
+	* @param data The data
+	* @param pos The position to read at, moved past the varint
+	* @param end The end of the data to read
+	* @return The value, -1 if the varint is cut short or too long
+	*/
+	private static int readVarint(byte[] data, int[] pos, int end) {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			if(pos[0] >= end) {
+				return -1;
+			}
+			int b = data[pos[0]++] & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value < 0 ? -1 : value;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,466 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+* This class reads a board file in one pass. <br>
+* The text is read a character at a time from a Reader, an InputStream
+* or a CharSequence. The squares are written to a Position as soon as
+* they are read and the game data line is kept in fields, so no line or
+* token strings are created. Lines starting with % are comments. The
+* first problem found stops the parse and is kept with its line and
+* column.
+*/
+public class BoardParser {
+	private static final int END = -1; // End of the text
+	private static final int ERROR = -2; // Parse stopped on an error
+	private static final int BUFFER_SIZE = 4096; // Characters read from a Reader at a time
+	private static final String[] DATA_FIELDS = {"player", "white walls", "black walls",
+		"castling", "en passant square", "fifty move counter"}; // Fields of the game data line
+	private Reader reader; // The text when read from a Reader
+	private CharSequence text; // The text when read from a CharSequence
+	private int textPos; // Next character of text
+	private char[] buffer; // Characters read from the Reader
+	private int bufPos; // Next character of buffer
+	private int bufLen; // Characters in buffer
+	private boolean afterCr; // The last character was a carriage return
+	private int line; // Line of the last character, from 1
+	private int column; // Column of the last character, from 1
+	private char[] token; // Start of the game data token being read
+	private char player; // Player to move
+	private int whiteWalls; // Remaining white walls
+	private int blackWalls; // Remaining black walls
+	private boolean[] castlingLost; // White king side, white queen side, black king side, black queen side
+	private int enpassantSquare; // Square of the pawn vulnerable to en passant, -1 if none
+	private int fiftyCounter; // Counter for the fifty move rule
+	private String error; // The problem found, null if none
+	private int errorLine; // Line of the problem
+	private int errorColumn; // Column of the problem
+
+	/**
+	* Creates a parser
+	*/
+	public BoardParser() {
+		buffer = new char[BUFFER_SIZE];
+		token = new char[16];
+		castlingLost = new boolean[4];
+	}
+
+	/**
+	* Reads a board from a Reader
+	* @param in The board file text
+	* @param target An empty position to place the pieces, obstacles and walls on
+	* @return True if the board is valid
+	* @throws IOException If the text cannot be read
+	*/
+	public boolean parse(Reader in, Position target) throws IOException {
+		reader = in;
+		text = null;
+		return run(target);
+	}
+
+	/**
+	* Reads a board from an InputStream in the default character set
+	* @param in The board file bytes
+	* @param target An empty position to place the pieces, obstacles and walls on
+	* @return True if the board is valid
+	* @throws IOException If the bytes cannot be read
+	*/
+	public boolean parse(InputStream in, Position target) throws IOException {
+		return parse(new InputStreamReader(in), target);
+	}
+
+	/**
+	* Reads a board from a CharSequence
+	* @param in The board file text
+	* @param target An empty position to place the pieces, obstacles and walls on
+	* @return True if the board is valid
+	*/
+	public boolean parse(CharSequence in, Position target) {
+		reader = null;
+		text = in;
+		try {
+			return run(target);
+		} catch(IOException ex) {
+			return false; // Not thrown for a CharSequence
+		}
+	}
+
+	/**
+	* Reads the lines of the board
+	* @param target The position to fill
+	* @return True if the board is valid
+	* @throws IOException If the text cannot be read
+	*/
+	private boolean run(Position target) throws IOException {
+		textPos = 0;
+		bufPos = 0;
+		bufLen = 0;
+		afterCr = false;
+		line = 1;
+		column = 0;
+		error = null;
+		int dataLines = 0;
+		int c = next();
+		while(c != END) {
+			if(c == '\n') {
+				fail(line, 1, "empty line");
+				return false;
+			}
+			if(c == '%') {
+				// Comment
+				while(c != '\n' && c != END) {
+					c = next();
+				}
+			} else {
+				if(dataLines == 9) {
+					fail(line, 1, "more than 9 board and game data lines");
+					return false;
+				}
+				c = dataLines < 8 ? parseRow(c, dataLines, target) : parseGameData(c);
+				if(c == ERROR) {
+					return false;
+				}
+				dataLines++;
+			}
+			if(c == '\n') {
+				line++;
+				column = 0;
+				c = next();
+			}
+		}
+		if(dataLines < 9) {
+			fail(line, Math.max(1, column), "expected 9 board and game data lines, found " + dataLines);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Reads one row of squares
+	* @param c The first character of the line
+	* @param row The row index, 0 for rank 8
+	* @param target The position to fill
+	* @return The character after the row, ERROR if the row is invalid
+	* @throws IOException If the text cannot be read
+	*/
+	private int parseRow(int c, int row, Position target) throws IOException {
+		int count = 0;
+		while(true) {
+			while(c == ' ' || c == '\t') {
+				c = next();
+			}
+			if(c == '\n' || c == END) {
+				break;
+			}
+			int start = column;
+			char first = (char)c;
+			int second = END;
+			int length = 0;
+			while(c != ' ' && c != '\t' && c != '\n' && c != END) {
+				if(length == 1) {
+					second = c;
+				}
+				length++;
+				c = next();
+			}
+			if(count == 8) {
+				return fail(line, start, "more than 8 squares in a row");
+			}
+			setSquare(target, row, count, first, second, length);
+			count++;
+		}
+		if(count < 8) {
+			return fail(line, column + 1, "expected 8 squares, found " + count);
+		}
+		return c;
+	}
+
+	/**
+	* Places the contents of one square
+	* @param target The position to fill
+	* @param x The row index
+	* @param y The column index
+	* @param first The first character of the square
+	* @param second The second character, END if there is none
+	* @param length The number of characters of the square
+	*/
+	private void setSquare(Position target, int x, int y, char first, int second, int length) {
+		switch(first) {
+			case 'K': case 'Q': case 'R': case 'N': case 'B': case 'P':
+			case 'k': case 'q': case 'r': case 'n': case 'b': case 'p':
+				target.setPiece(x, y, first);
+				break;
+			case 'D': case 'O': case 'M': case 'X':
+				target.setObstacle(x, y, first);
+				break;
+			case '|':
+				if(length == 1) {
+					target.setWall(x, y, '|');
+				} else if(second == '_') {
+					target.setWall(x, y, 'L');
+				}
+				break;
+			case '_':
+				if(length == 1) {
+					target.setWall(x, y, '_');
+				}
+				break;
+			default:
+				// Empty square or invalid character, left empty
+		}
+	}
+
+	/**
+	* Reads the game data line: player, walls, castling, en passant and fifty move counter
+	* @param c The first character of the line
+	* @return The character after the line, ERROR if the line is invalid
+	* @throws IOException If the text cannot be read
+	*/
+	private int parseGameData(int c) throws IOException {
+		int field = 0;
+		while(true) {
+			while(c == ' ' || c == '\t') {
+				c = next();
+			}
+			if(c == '\n' || c == END) {
+				break;
+			}
+			int start = column;
+			int length = 0;
+			while(c != ' ' && c != '\t' && c != '\n' && c != END) {
+				if(length < token.length) {
+					token[length] = (char)c;
+				}
+				length++;
+				c = next();
+			}
+			if(field < DATA_FIELDS.length && !setField(field, length, start)) {
+				return ERROR;
+			}
+			field++; // Tokens after the last field are ignored
+		}
+		if(field < DATA_FIELDS.length) {
+			return fail(line, column + 1, "missing " + DATA_FIELDS[field]);
+		}
+		return c;
+	}
+
+	/**
+	* Stores one field of the game data line from the token buffer
+	* @param field The field index
+	* @param length The length of the token
+	* @param start The column of the token
+	* @return False if the token is not valid for the field
+	*/
+	private boolean setField(int field, int length, int start) {
+		switch(field) {
+			case 0:
+				if(token[0] != 'w' && token[0] != 'b') {
+					fail(line, start, "player must be w or b");
+					return false;
+				}
+				player = token[0];
+				return true;
+			case 1:
+				whiteWalls = parseNumber(length, start);
+				return error == null && checkWalls(whiteWalls, start);
+			case 2:
+				blackWalls = parseNumber(length, start);
+				return error == null && checkWalls(blackWalls, start);
+			case 3:
+				if(length < 4) {
+					fail(line, start, "castling needs 4 characters");
+					return false;
+				}
+				for(int i = 0; i < 4; i++) {
+					castlingLost[i] = token[i] == '-';
+				}
+				return true;
+			case 4:
+				enpassantSquare = -1;
+				if(token[0] != '-' && length >= 2) {
+					char file = Character.toLowerCase(token[0]);
+					char rank = token[1];
+					if(file >= 'a' && file <= 'h' && rank >= '1' && rank <= '8') {
+						enpassantSquare = ('8' - rank) * 8 + (file - 'a');
+					}
+				}
+				return true;
+			default:
+				fiftyCounter = parseNumber(length, start);
+				return error == null;
+		}
+	}
+
+	/**
+	* Checks that a count of remaining walls is in the range the game can hold
+	* @param walls The wall count
+	* @param start The column of the token
+	* @return False if the count is out of range
+	*/
+	private boolean checkWalls(int walls, int start) {
+		if(walls < -1 || walls > Zobrist.MAX_WALLS) {
+			fail(line, start, "walls must be from -1 to " + Zobrist.MAX_WALLS);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Reads a whole number from the token buffer
+	* @param length The length of the token
+	* @param start The column of the token
+	* @return The number, 0 if the token is not a number
+	*/
+	private int parseNumber(int length, int start) {
+		int sign = token[0] == '-' ? -1 : 1;
+		int i = sign < 0 ? 1 : 0;
+		if(i == length || length - i > 9) {
+			fail(line, start, "invalid number");
+			return 0;
+		}
+		int value = 0;
+		for(; i < length; i++) {
+			if(token[i] < '0' || token[i] > '9') {
+				fail(line, start + i, "invalid number");
+				return 0;
+			}
+			value = value * 10 + (token[i] - '0');
+		}
+		return sign * value;
+	}
+
+	/**
+	* Returns the next character, with every line end turned into '\n'
+	* @return The character, END at the end of the text
+	* @throws IOException If the text cannot be read
+	*/
+	private int next() throws IOException {
+		int c = read();
+		if(afterCr && c == '\n') {
+			c = read(); // Second half of \r\n
+		}
+		afterCr = c == '\r';
+		if(c == '\r') {
+			c = '\n';
+		}
+		if(c != END) {
+			column++;
+		}
+		return c;
+	}
+
+	/**
+	* Returns the next raw character of the text
+	* @return The character, END at the end of the text
+	* @throws IOException If the text cannot be read
+	*/
+	private int read() throws IOException {
+		if(text != null) {
+			return textPos < text.length() ? text.charAt(textPos++) : END;
+		}
+		if(bufPos == bufLen) {
+			bufLen = reader.read(buffer, 0, buffer.length);
+			bufPos = 0;
+			if(bufLen <= 0) {
+				bufLen = 0;
+				return END;
+			}
+		}
+		return buffer[bufPos++];
+	}
+
+	/**
+	* Keeps the first problem found
+	* @param errLine The line of the problem
+	* @param errColumn The column of the problem
+	* @param message The problem
+	* @return ERROR
+	*/
+	private int fail(int errLine, int errColumn, String message) {
+		if(error == null) {
+			error = message;
+			errorLine = errLine;
+			errorColumn = errColumn;
+		}
+		return ERROR;
+	}
+
+	/**
+	* Returns the problem that stopped the last parse
+	* @return The line, column and problem, null if the board was valid
+	*/
+	public String getError() {
+		if(error == null) {
+			return null;
+		}
+		return "line " + errorLine + ", column " + errorColumn + ": " + error;
+	}
+
+	/**
+	* Returns the line of the problem that stopped the last parse
+	* @return The line, from 1
+	*/
+	public int getErrorLine() {
+		return errorLine;
+	}
+
+	/**
+	* Returns the column of the problem that stopped the last parse
+	* @return The column, from 1
+	*/
+	public int getErrorColumn() {
+		return errorColumn;
+	}
+
+	/**
+	* Returns the player to move
+	* @return 'w' or 'b'
+	*/
+	public char getPlayer() {
+		return player;
+	}
+
+	/**
+	* Returns the remaining white walls
+	* @return The wall count
+	*/
+	public int getWhiteWalls() {
+		return whiteWalls;
+	}
+
+	/**
+	* Returns the remaining black walls
+	* @return The wall count
+	*/
+	public int getBlackWalls() {
+		return blackWalls;
+	}
+
+	/**
+	* Determines if a castling right is lost
+	* @param idx 0 white king side, 1 white queen side, 2 black king side, 3 black queen side
+	* @return True if the castling field has a - for the right
+	*/
+	public boolean isCastlingLost(int idx) {
+		return castlingLost[idx];
+	}
+
+	/**
+	* Returns the en passant square
+	* @return The square index, -1 if none
+	*/
+	public int getEnPassantSquare() {
+		return enpassantSquare;
+	}
+
+	/**
+	* Returns the fifty move counter
+	* @return The counter
+	*/
+	public int getFiftyCounter() {
+		return fiftyCounter;
+	}
+}
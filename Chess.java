@@ -1,32 +1,44 @@
 import java.io.File;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
 * The chess engine that handles all the operations of the game
 */
 public class Chess {
+	private static final int A8 = 0; // Square indexes of the castling squares
+	private static final int E8 = 4;
+	private static final int H8 = 7;
+	private static final int A1 = 56;
+	private static final int E1 = 60;
+	private static final int H1 = 63;
 	private char activePlayer;
-	private char[][] board; // Chess board
-	private char[][] oBoard; // Obstacles board
-	private char[][] wBoard; // Walls board
+	private Position position; // Bitboard layout of the pieces, obstacles and walls
+	private char[][] board; // Chess board (character view of position)
+	private char[][] oBoard; // Obstacles board (character view of position)
+	private char[][] wBoard; // Walls board (character view of position)
 	private boolean gamePlaying; // Game play flag. True if game is playing
 	private ArrayList<String> gameLog; // Keep track of all moves
-	private ArrayList<Storage> boardState; // Keep track of the board state
+	private GameHistory boardState; // Keep track of the board state
+	private RepetitionTable repetitions; // Occurrences of each saved position for threefold repetition
 	private boolean whiteCheck; // White king in check
 	private boolean blackCheck; // Black king in check
 	private boolean[][] hasMoved; // Castling detection. [0][0] - white king, [1][1] - black rook kingside
-	private String enpassantPawn; // pawn vulnerable to en passant attack
+	private int enpassantSquare; // Square of the pawn vulnerable to en passant attack, -1 if none
 	private int[] enpassantPawnGui; // pawn vulnerable to en passant attack (for gui)
 	private int fiftyMoveCounter; // Counter for the fifty move rule
 	private int whiteWallRemain; // Remaining white walls
@@ -39,21 +51,28 @@ public class Chess {
 	private int failedMoves; // The number of failed moves from the loaded game log
 	private boolean isGui; // Set flag to enable pawn promotion dialog in gui
 	private int wasTrapMine; // Return 1 [Trap] or 2 [Mine] if last move triggered an obstacle
+	private UndoJournal journal; // Changes made by makeMove that can be taken back
+	private MoveList mateMoves; // Move buffer for checkmate detection
+	private int lastEnPassantVictim; // Square of the pawn taken en passant by the last move, -1 if none
+	private volatile Snapshot view; // Position after the last played move, for other threads
+	private long viewVersion; // Number of views published
 
 	/**
 	* The default constructor
 	*/
 	public Chess() {
 		activePlayer = 'w';
-		board = new char[8][8];
-		oBoard = new char[8][8];
-		wBoard = new char[8][8];
+		position = new Position();
+		board = position.getBoard();
+		oBoard = position.getObstacleBoard();
+		wBoard = position.getWallBoard();
 		hasMoved = new boolean[2][3];
 		gamePlaying = false;
 		whiteCheck = blackCheck = false;
 		gameLog = new ArrayList<String>();
-		boardState = new ArrayList<Storage>();
-		enpassantPawn = "xx";
+		boardState = new GameHistory();
+		repetitions = new RepetitionTable();
+		enpassantSquare = -1;
 		enpassantPawnGui = null;
 		errMsg = "";
 		failedMoves = 0;
@@ -63,19 +82,27 @@ public class Chess {
 		whiteTrap = blackTrap = false;
 		isGui = false;
 		wasTrapMine = 0;
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				board[i][j] = '.';
-				oBoard[i][j] = '.';
-				wBoard[i][j] = '.';
-			}
-		}
+		journal = new UndoJournal();
+		mateMoves = new MoveList();
+		lastEnPassantVictim = -1;
 		for(int i = 0; i < hasMoved.length; i++) {
 			for(int j = 0; j < hasMoved[i].length; j++) {
 				hasMoved[i][j] = false;
 			}
 		}
 		newGame();
+		publishView();
+	}
+
+	/**
+	* Creates a copy of the position and game flags of another game. <br>
+	* The game log and saved states are not copied, so the copy is a cheap
+	* private board for a search thread
+	* @param other The game to copy
+	*/
+	public Chess(Chess other) {
+		this();
+		copyFrom(other);
 	}
 
 	/**
@@ -85,52 +112,65 @@ public class Chess {
 	* @param outBoardFile The output board file
 	*/
 	public Chess(String inBoardFile, String gameFile, String outBoardFile) {
+		runAuto(inBoardFile, gameFile, outBoardFile);
+	}
+
+	/**
+	* Loads a board file, runs a game file on it and saves the result
+	* @param inBoardFile The input board file
+	* @param gameFile The game file
+	* @param outBoardFile The output board file
+	* @return True if the output board file was saved
+	*/
+	public boolean runAuto(String inBoardFile, String gameFile, String outBoardFile) {
 		// *** READ BOARD FILE ***
 		if(!loadGame(inBoardFile)) {
-			return;
+			return false;
 		}
 		// *** RUN CHECK IF CHECKMATE ON NEW BOARD ***
 		if(isCheckMate()) {
 			System.out.println("INFO: checkmate");
+			errMsg = "checkmate on the input board";
 			gamePlaying = false;
-			return;
+			return false;
 		}
 		// *** RUN GAME ***
 		if(!runGame(gameFile)) {
-			return;
+			return false;
 		}
 		// *** SAVE GAME TO BOARD FILE ***
-		if(!saveGame(outBoardFile)) {
-			return;
-		}
+		return saveGame(outBoardFile);
 	}
 
 	/**
-	* This validates the board file
-	* @param bFile The board file
-	* @return True if the file is valid
+	* Copies the position and game flags of another game into this one. <br>
+	* The game log and saved states are left as they are and any moves
+	* made with makeMove are forgotten. The copy is a private board, so its
+	* view is not published again
+	* @param other The game to copy
 	*/
-	private boolean boardFileValid(File bFile) {
-		int lineCount = 0;
-		BufferedReader reader = null;
-		String fileContent = "";
-		try {
-			reader = new BufferedReader(new FileReader(bFile));
-			while((fileContent = reader.readLine()) != null) {
-				if(fileContent.charAt(0) != '%') {
-					lineCount++;
-				}
-			}
-			if(lineCount == 9) {
-				return true;
-			} else {
-				return false;
-			}
-		} catch(IOException ex) {
-			// Error reading file
-			errMsg = ex.getMessage();
-			return false;
-		}
+	public void copyFrom(Chess other) {
+		position.copyFrom(other.position);
+		for(int i = 0; i < hasMoved.length; i++) {
+			for(int j = 0; j < hasMoved[i].length; j++) {
+				hasMoved[i][j] = other.hasMoved[i][j];
+			}
+		}
+		activePlayer = other.activePlayer;
+		gamePlaying = other.gamePlaying;
+		whiteCheck = other.whiteCheck;
+		blackCheck = other.blackCheck;
+		enpassantSquare = other.enpassantSquare;
+		fiftyMoveCounter = other.fiftyMoveCounter;
+		whiteWallRemain = other.whiteWallRemain;
+		blackWallRemain = other.blackWallRemain;
+		whiteTrap = other.whiteTrap;
+		blackTrap = other.blackTrap;
+		whiteMine = other.whiteMine;
+		blackMine = other.blackMine;
+		isGui = other.isGui;
+		wasTrapMine = other.wasTrapMine;
+		journal.clear();
 	}
 
 	/**
@@ -142,22 +182,28 @@ public class Chess {
 		gamePlaying = false;
 		// Setup pawns
 		for(int i = 0; i < board.length; i++) {
-			board[1][i] = 'p'; // Black
-			board[6][i] = 'P'; // White
+			position.setPiece(1, i, 'p'); // Black
+			position.setPiece(6, i, 'P'); // White
 		}
 		// White pieces
-		board[7][0] = board[7][7] = 'R'; // White Rooks
-		board[7][1] = board[7][6] = 'N'; // Black Knights
-		board[7][2] = board[7][5] = 'B'; // White Bishops
-		board[7][3] = 'Q'; // White Queen
-		board[7][4] = 'K'; // White King
+		position.setPiece(7, 0, 'R'); // White Rooks
+		position.setPiece(7, 7, 'R');
+		position.setPiece(7, 1, 'N'); // White Knights
+		position.setPiece(7, 6, 'N');
+		position.setPiece(7, 2, 'B'); // White Bishops
+		position.setPiece(7, 5, 'B');
+		position.setPiece(7, 3, 'Q'); // White Queen
+		position.setPiece(7, 4, 'K'); // White King
 
 		// Black pieces
-		board[0][0] = board[0][7] = 'r'; // Black Rooks
-		board[0][1] = board[0][6] = 'n'; // Black Knights
-		board[0][2] = board[0][5] = 'b'; // Black Bishops
-		board[0][3] = 'q'; // Black Queen
-		board[0][4] = 'k'; // Black King
+		position.setPiece(0, 0, 'r'); // Black Rooks
+		position.setPiece(0, 7, 'r');
+		position.setPiece(0, 1, 'n'); // Black Knights
+		position.setPiece(0, 6, 'n');
+		position.setPiece(0, 2, 'b'); // Black Bishops
+		position.setPiece(0, 5, 'b');
+		position.setPiece(0, 3, 'q'); // Black Queen
+		position.setPiece(0, 4, 'k'); // Black King
 	}
 
 	/**
@@ -166,23 +212,8 @@ public class Chess {
 	* @return True if the game is successfully loaded
 	*/
 	public boolean loadGame(String filename) {
-		// *** Initialise object variables ***
-		board = new char[8][8];
-		oBoard = new char[8][8];
-		wBoard = new char[8][8];
-		hasMoved = new boolean[2][3];
-		gamePlaying = false;
-		whiteCheck = blackCheck = false;
-		gameLog = new ArrayList<String>();
-		boardState = new ArrayList<Storage>();
+		resetLoadedGame();
 		File fileInboard = new File(filename);
-		BufferedReader reader = null;
-		String fileContent = "";
-		for(int i = 0; i < hasMoved.length; i++) {
-			for(int j = 0; j < hasMoved[i].length; j++) {
-				hasMoved[i][j] = false;
-			}
-		}
 
 		// *** FILE ERROR CHECKING ***
 		if(!fileInboard.exists() || fileInboard.isDirectory()) {
@@ -190,125 +221,154 @@ public class Chess {
 			errMsg = filename + " cannot be opened";
 			return false;
 		}
-		if(!boardFileValid(fileInboard)) {
-			System.out.println("ERROR: " + filename + " is an invalid board file");
-			errMsg = filename + " is an invalid board file";
+
+		BoardParser parser = new BoardParser();
+		try(FileReader reader = new FileReader(fileInboard)) {
+			return applyBoard(parser, parser.parse(reader, position), filename);
+		} catch(IOException ex) {
+			// Error reading file
+			System.out.println("ERROR: " + filename + " could not be read");
+			errMsg = ex.getMessage();
+			System.out.println("Reason: " + errMsg);
 			return false;
 		}
+	}
 
-		int lineCount = 0;
-		try {
-			reader = new BufferedReader(new FileReader(fileInboard));
-			while((fileContent = reader.readLine()) != null) {
-				if(fileContent.charAt(0) != '%') {
-					if(lineCount < 8) {
-						// Read board
-						if(fileContent.split(" ").length == 8) {
-							for(int i = 0; i < board.length; i++) {
-								char sqr = fileContent.split(" ")[i].charAt(0);
-								if(Character.toLowerCase(sqr) == 'k' || Character.toLowerCase(sqr) == 'q' || Character.toLowerCase(sqr) == 'r' || Character.toLowerCase(sqr) == 'n' || Character.toLowerCase(sqr) == 'b' || Character.toLowerCase(sqr) == 'p') {
-									board[lineCount][i] = sqr;
-									oBoard[lineCount][i] = '.';
-									wBoard[lineCount][i] = '.';
-								} else if(sqr == 'D' || sqr == 'O' || sqr == 'M' || sqr == 'X') {
-									board[lineCount][i] = '.';
-									oBoard[lineCount][i] = sqr;
-									wBoard[lineCount][i] = '.';
-								} else if(sqr == '.') {
-									board[lineCount][i] = sqr;
-									oBoard[lineCount][i] = sqr;
-									wBoard[lineCount][i] = sqr;
-								} else {
-									// WALLS
-									if(fileContent.split(" ")[i].length() > 1) {
-										if(sqr == '|' && fileContent.split(" ")[i].charAt(1) == '_') {
-											board[lineCount][i] = '.';
-											oBoard[lineCount][i] = '.';
-											wBoard[lineCount][i] = 'L';
-										}
-									} else {
-										if(sqr == '|' || sqr == '_') {
-											board[lineCount][i] = '.';
-											oBoard[lineCount][i] = '.';
-											wBoard[lineCount][i] = sqr;
-										} else {
-											// Invalid character. Setting default
-											board[lineCount][i] = '.';
-											oBoard[lineCount][i] = '.';
-											wBoard[lineCount][i] = '.';
-										}
-									}
-								}
-							}
-						} else {
-							System.out.println("ERROR: " + filename + " is an invalid board file");
-							errMsg = filename + " is an invalid board file";
-							return false;
-						}
-					} else {
-						// Other game data
-						activePlayer = fileContent.split(" ")[0].charAt(0);
-						whiteWallRemain = Integer.parseInt(fileContent.split(" ")[1]);
-						blackWallRemain = Integer.parseInt(fileContent.split(" ")[2]);
-						// Castling
-						if(fileContent.split(" ")[3].charAt(0) == '-') {
-							// White king-side castling
-							hasMoved[0][1] = true;
-						}
-						if(fileContent.split(" ")[3].charAt(1) == '-') {
-							// White queen-side castling
-							hasMoved[0][2] = true;
-						}
-						if(hasMoved[0][1] && hasMoved[0][2]) {
-							hasMoved[0][0] = true;
-						}
-						if(fileContent.split(" ")[3].charAt(2) == '-') {
-							// Black king-side castling
-							hasMoved[1][1] = true;
-						}
-						if(fileContent.split(" ")[3].charAt(3) == '-') {
-							// Black queen-side castling
-							hasMoved[1][2] = true;
-						}
-						if(hasMoved[1][1] && hasMoved[1][2]) {
-							hasMoved[0][0] = true;
-						}
+	/**
+	* Loads a game from the text of a board file
+	* @param content The board file text
+	* @return True if the game is successfully loaded
+	*/
+	public boolean loadBoard(CharSequence content) {
+		resetLoadedGame();
+		BoardParser parser = new BoardParser();
+		return applyBoard(parser, parser.parse(content, position), "board");
+	}
 
-						if(fileContent.split(" ")[4].charAt(0) == '-') {
-							enpassantPawn = "xx";
-						} else {
-							enpassantPawn = fileContent.split(" ")[4];
-						}
+	/**
+	* Loads a game from a board file read by a Reader
+	* @param reader The board file text, it is not closed
+	* @return True if the game is successfully loaded
+	*/
+	public boolean loadBoard(Reader reader) {
+		resetLoadedGame();
+		BoardParser parser = new BoardParser();
+		try {
+			return applyBoard(parser, parser.parse(reader, position), "board");
+		} catch(IOException ex) {
+			System.out.println("ERROR: board could not be read");
+			errMsg = ex.getMessage();
+			return false;
+		}
+	}
 
-						fiftyMoveCounter = Integer.parseInt(fileContent.split(" ")[5]);
-					}
-					lineCount++;
-				}
-			}
+	/**
+	* Loads a game from a board file read from an InputStream
+	* @param in The board file bytes, the stream is not closed
+	* @return True if the game is successfully loaded
+	*/
+	public boolean loadBoard(InputStream in) {
+		resetLoadedGame();
+		BoardParser parser = new BoardParser();
+		try {
+			return applyBoard(parser, parser.parse(in, position), "board");
 		} catch(IOException ex) {
-			// Error reading file
-			System.out.println("ERROR: " + filename + " could not be read");
+			System.out.println("ERROR: board could not be read");
 			errMsg = ex.getMessage();
-			System.out.println("Reason: " + errMsg);
 			return false;
 		}
+	}
+
+	/**
+	* Takes the game data of a parsed board, or reports why it is invalid
+	* @param parser The parser that read the board
+	* @param valid The result of the parse
+	* @param name The name of the board for error messages
+	* @return True if the board was valid
+	*/
+	private boolean applyBoard(BoardParser parser, boolean valid, String name) {
+		if(!valid) {
+			errMsg = name + " is an invalid board file (" + parser.getError() + ")";
+			System.out.println("ERROR: " + errMsg);
+			return false;
+		}
+		activePlayer = parser.getPlayer();
+		whiteWallRemain = parser.getWhiteWalls();
+		blackWallRemain = parser.getBlackWalls();
+		// Castling
+		if(parser.isCastlingLost(0)) {
+			// White king-side castling
+			hasMoved[0][1] = true;
+		}
+		if(parser.isCastlingLost(1)) {
+			// White queen-side castling
+			hasMoved[0][2] = true;
+		}
+		if(hasMoved[0][1] && hasMoved[0][2]) {
+			hasMoved[0][0] = true;
+		}
+		if(parser.isCastlingLost(2)) {
+			// Black king-side castling
+			hasMoved[1][1] = true;
+		}
+		if(parser.isCastlingLost(3)) {
+			// Black queen-side castling
+			hasMoved[1][2] = true;
+		}
+		if(hasMoved[1][1] && hasMoved[1][2]) {
+			hasMoved[0][0] = true;
+		}
+		enpassantSquare = parser.getEnPassantSquare();
+		fiftyMoveCounter = parser.getFiftyCounter();
+		updateChecks();
+		publishView();
+		return true;
+	}
+
+	/**
+	* Empties the board and game state before a board is loaded
+	*/
+	private void resetLoadedGame() {
+		// *** Initialise object variables ***
+		position = new Position();
+		board = position.getBoard();
+		oBoard = position.getObstacleBoard();
+		wBoard = position.getWallBoard();
+		journal = new UndoJournal();
+		mateMoves = new MoveList();
+		lastEnPassantVictim = -1;
+		hasMoved = new boolean[2][3];
+		gamePlaying = false;
+		whiteCheck = blackCheck = false;
+		gameLog = new ArrayList<String>();
+		boardState = new GameHistory();
+		repetitions = new RepetitionTable();
+		for(int i = 0; i < hasMoved.length; i++) {
+			for(int j = 0; j < hasMoved[i].length; j++) {
+				hasMoved[i][j] = false;
+			}
+		}
+	}
 
-		// *** CHECK IF GAME IS IN CHECK
+	/**
+	* Sets the check flags of the player to move after a board is loaded
+	*/
+	private void updateChecks() {
 		if(activePlayer == 'w') {
 			if(isChecked('w')) {
 				whiteCheck = true;
 			}
 		} else {
+			whiteCheck = false;
 			if(isChecked('b')) {
 				blackCheck = true;
 			}
 		}
-		return true;
 	}
 
 	/**
 	* Run the game using the game log in the provided file
-	* @param filename The file containing the game log
+	* @param filename The file containing the game log, in text or binary format
 	* @return True if game ran successfully
 	*/
 	public boolean runGame(String filename) {
@@ -321,6 +381,9 @@ public class Chess {
 			errMsg = filename + " cannot be opened";
 			return false;
 		}
+		if(BinaryGameLog.isBinary(fileGame)) {
+			return runBinaryGame(fileGame, filename);
+		}
 
 		// *** RUN GAME FROM FILE ***
 		failedMoves = 0;
@@ -347,7 +410,44 @@ public class Chess {
 			System.out.println("Reason: " + errMsg);
 			return false;
 		}
-		if(enpassantPawn.equals("xx")) {
+		if(enpassantSquare == -1) {
+			resetEnpassPawn();
+		}
+		return true;
+	}
+
+	/**
+	* Run the game using a binary game log
+	* @param fileGame The binary game log
+	* @param filename The file name for messages
+	* @return True if game ran successfully
+	*/
+	private boolean runBinaryGame(File fileGame, String filename) {
+		BinaryGameLog log = new BinaryGameLog();
+		try {
+			if(!log.decode(Files.readAllBytes(fileGame.toPath()))) {
+				errMsg = filename + " is an invalid binary game log (" + log.getError() + ")";
+				System.out.println("ERROR: " + errMsg);
+				return false;
+			}
+		} catch(IOException ex) {
+			System.out.println("ERROR: " + filename + " could not be read");
+			errMsg = ex.getMessage();
+			System.out.println("Reason: " + errMsg);
+			return false;
+		}
+		failedMoves = 0;
+		for(int i = 0; i < log.size(); i++) {
+			int m = log.getMove(i);
+			if(i == 0 && Move.getType(m) == Move.PASS) {
+				activePlayer = 'b'; // Black starts, as ... on the first line of a text log
+				continue;
+			}
+			if(!(m == Move.NONE ? move(log.getLine(i)) : move(m))) {
+				failedMoves++;
+			}
+		}
+		if(enpassantSquare == -1) {
 			resetEnpassPawn();
 		}
 		return true;
@@ -367,68 +467,7 @@ public class Chess {
 			writer.write("% Game Saved: ");
 			writer.write(new SimpleDateFormat("dd-MMMM-YYYY - HH:mm:ss").format(new Date()));
 			writer.write("\n");
-			for(int i = 0; i < board.length; i++) {
-				for(int j = 0; j < board[i].length; j++) {
-					// Write board to file
-					if(oBoard[i][j] == '.' && wBoard[i][j] == '.') {
-						writer.write(board[i][j]);
-					} else {
-						if(wBoard[i][j] == '.') {
-							writer.write(oBoard[i][j]);
-						} else {
-							if(wBoard[i][j] == 'L') {
-								writer.write("|_");
-							} else {
-								writer.write(wBoard[i][j]);
-							}
-						}
-					}
-					if(j != (board.length - 1)) {
-						writer.write(" ");
-					}
-				}
-				writer.write("\n"); // New line
-			}
-			// Other Game data
-			writer.write(activePlayer);
-			writer.write(" ");
-			writer.write(String.valueOf(whiteWallRemain));
-			writer.write(" ");
-			writer.write(String.valueOf(blackWallRemain));
-			writer.write(" ");
-			// White king-side castling
-			if(hasMoved[0][1]) {
-				writer.write("-");
-			} else {
-				writer.write("+");
-			}
-			// White queen-side castling
-			if(hasMoved[0][2]) {
-				writer.write("-");
-			} else {
-				writer.write("+");
-			}
-			// Black king-side castling
-			if(hasMoved[1][1]) {
-				writer.write("-");
-			} else {
-				writer.write("+");
-			}
-			// Black queen-side castling
-			if(hasMoved[1][2]) {
-				writer.write("-");
-			} else {
-				writer.write("+");
-			}
-			writer.write(" ");
-			if(enpassantPawn.equals("xx")) {
-				writer.write("- ");
-			} else {
-				writer.write(enpassantPawn);
-				writer.write(" ");
-			}
-			writer.write(String.valueOf(fiftyMoveCounter));
-			writer.write("\n");
+			writeBoard(writer);
 			writer.write("% --- End ---");
 			writer.close();
 		} catch(IOException ex) {
@@ -440,6 +479,90 @@ public class Chess {
 		return true;
 	}
 
+	/**
+	* Returns the board and game data in the board file format
+	* @return The 9 board and game data lines
+	*/
+	public String getBoardText() {
+		StringWriter writer = new StringWriter();
+		try {
+			writeBoard(writer);
+		} catch(IOException ex) {
+			// Not thrown by a StringWriter
+		}
+		return writer.toString();
+	}
+
+	/**
+	* Writes the board and game data lines of a board file
+	* @param writer The writer to write the lines to
+	* @throws IOException If the lines cannot be written
+	*/
+	private void writeBoard(Writer writer) throws IOException {
+		for(int i = 0; i < board.length; i++) {
+			for(int j = 0; j < board[i].length; j++) {
+				// Write board to file
+				if(oBoard[i][j] == '.' && wBoard[i][j] == '.') {
+					writer.write(board[i][j]);
+				} else {
+					if(wBoard[i][j] == '.') {
+						writer.write(oBoard[i][j]);
+					} else {
+						if(wBoard[i][j] == 'L') {
+							writer.write("|_");
+						} else {
+							writer.write(wBoard[i][j]);
+						}
+					}
+				}
+				if(j != (board.length - 1)) {
+					writer.write(" ");
+				}
+			}
+			writer.write("\n"); // New line
+		}
+		// Other Game data
+		writer.write(activePlayer);
+		writer.write(" ");
+		writer.write(String.valueOf(whiteWallRemain));
+		writer.write(" ");
+		writer.write(String.valueOf(blackWallRemain));
+		writer.write(" ");
+		// White king-side castling
+		if(hasMoved[0][1]) {
+			writer.write("-");
+		} else {
+			writer.write("+");
+		}
+		// White queen-side castling
+		if(hasMoved[0][2]) {
+			writer.write("-");
+		} else {
+			writer.write("+");
+		}
+		// Black king-side castling
+		if(hasMoved[1][1]) {
+			writer.write("-");
+		} else {
+			writer.write("+");
+		}
+		// Black queen-side castling
+		if(hasMoved[1][2]) {
+			writer.write("-");
+		} else {
+			writer.write("+");
+		}
+		writer.write(" ");
+		if(enpassantSquare == -1) {
+			writer.write("- ");
+		} else {
+			writer.write(Position.squareName(enpassantSquare));
+			writer.write(" ");
+		}
+		writer.write(String.valueOf(fiftyMoveCounter));
+		writer.write("\n");
+	}
+
 	/**
 	* Saves the game log to a file
 	* @param filename The file to save the game to
@@ -447,9 +570,9 @@ public class Chess {
 	*/
 	public boolean saveGameLog(String filename) {
 		File fileOutboard = new File(filename);
-		FileWriter writer = null;
+		Writer writer = null;
 		try {
-			writer = new FileWriter(fileOutboard);
+			writer = new BufferedWriter(new FileWriter(fileOutboard));
 			// Write date to file
 			writer.write("% Game Log Saved: ");
 			writer.write(new SimpleDateFormat("dd-MMMM-YYYY - HH:mm:ss").format(new Date()));
@@ -469,14 +592,64 @@ public class Chess {
 		return true;
 	}
 
+	/**
+	* Saves the game log to a file in the binary format
+	* @param filename The file to save the game to
+	* @return True if the game was successfully saved
+	*/
+	public boolean saveBinaryGameLog(String filename) {
+		try(OutputStream out = new FileOutputStream(filename)) {
+			out.write(BinaryGameLog.encode(gameLog));
+		} catch(IOException ex) {
+			System.out.println("ERROR: could not save game to " + filename);
+			errMsg = ex.getMessage();
+			System.out.println("Reason: " + errMsg);
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	* Performs the given move
 	* @param muv The move in move notation. Eg. e1-e5
 	* @return Move successful or not
 	*/
 	public boolean move(String muv) {
+		int m = Move.parse(muv);
+		if(m == Move.NONE) {
+			System.out.println("ERROR: invalid move " + muv);
+			return false;
+		}
+		if(!move(m, muv)) {
+			return false;
+		}
+		publishView();
+		return true;
+	}
+
+	/**
+	* Performs the given encoded move
+	* @param m The encoded move
+	* @return Move successful or not
+	*/
+	public boolean move(int m) {
+		if(!move(m, Move.toString(m))) {
+			return false;
+		}
+		publishView();
+		return true;
+	}
+
+	/**
+	* Performs the given move
+	* @param m The encoded move
+	* @param muv The move in move notation for the game log
+	* @return Move successful or not
+	*/
+	private boolean move(int m, String muv) {
+		int type = Move.getType(m);
 		// Change player on ... 
-		if(muv.equals("...")) {
+		if(type == Move.PASS) {
 			if(!gamePlaying) {
 				recordState(muv);
 			}
@@ -485,16 +658,8 @@ public class Chess {
 		}
 
 		// Add mines and trap doors
-		if(muv.charAt(0) == 'M') {
-			if(addMineTrap(muv.substring(1), 'M')) {
-				recordState(muv);
-				return true;
-			} else {
-				return false;
-			}
-		}
-		if(muv.charAt(0) == 'D') {
-			if(addMineTrap(muv.substring(1), 'D')) {
+		if(type == Move.MINE || type == Move.TRAP) {
+			if(addMineTrap(Move.getTo(m), type == Move.MINE ? 'M' : 'D')) {
 				recordState(muv);
 				return true;
 			} else {
@@ -503,46 +668,29 @@ public class Chess {
 		}
 
 		// Add Walls
-		if(muv.charAt(0) == '|' || muv.charAt(0) == '_') {
-			if(muv.charAt(0) == '_') {
-				return addWall(muv.substring(1), '_');
-			} else {
-				if(muv.charAt(1) == '_') {
-					return addWall(muv.substring(2), 'L');
-				} else {
-					return addWall(muv.substring(1), '|');
-				}
-			}
+		if(type == Move.WALL) {
+			return addWall(Move.getTo(m), Move.getWallChar(m));
 		}
 
 		// Pawn promotion from game log file
-		if(muv.charAt(0) == '=' && muv.length() == 2) {
-			pawnPromotion(gameLog.get(gameLog.size() - 1).substring(3), muv.charAt(1));
+		if(type == Move.PROMOTE) {
+			pawnPromotion(gameLog.get(gameLog.size() - 1).substring(3), Move.promotionChar(Move.getExtra(m)));
 			return true;
 		}
 
 
 		// Start game
 		if(!gamePlaying) {
-			int gCount = 0;
-			for(int i = 0; i < gameLog.size(); i++) {
-				if(gameLog.get(i).charAt(0) == '=' || gameLog.get(i).charAt(0) == 'M' || 
-					gameLog.get(i).charAt(0) == 'D' || gameLog.get(i).charAt(0) == '|' || gameLog.get(i).charAt(0) == '_') {
-					continue;
-				}
-				gCount++;
-			}
-			if(gCount <= 1) {
+			if(canStartGame()) {
 				gamePlaying = true;
 			} else {
 				System.out.println("INFO: new game has not started");
 				return false;
 			}
-			gamePlaying = true;
 		}
 
 		// Castling move
-		if(muv.equals("0-0")) {
+		if(type == Move.CASTLE_KING) {
 			boolean cstrtn = kingCastling();
 			if(!cstrtn) {
 				System.out.println("ERROR: illegal move " + muv);
@@ -550,7 +698,7 @@ public class Chess {
 			} else {
 				return true;
 			}
-		} else if(muv.equals("0-0-0")) {
+		} else if(type == Move.CASTLE_QUEEN) {
 			boolean cstrtn = queenCastling();
 			if(!cstrtn) {
 				System.out.println("ERROR: illegal move " + muv);
@@ -559,90 +707,50 @@ public class Chess {
 				return true;
 			}
 		}
-		// Check if moves valid
-		String[] position = muv.split("-");
-		if(position.length != 2) {
-			System.out.println("ERROR: invalid move " + muv);
-			return false;
-		}
-		if(!squareValid(position[0]) || !squareValid(position[1]) || position[0].equals(position[1])) {
-			System.out.println("ERROR: invalid move " + muv);
-			return false;
-		}
+		int from = Move.getFrom(m);
+		int to = Move.getTo(m);
 
 		// Add Castling move - Support for GUI
-		if(activePlayer == 'w') {
-			if(position[0].equals("e1") && position[1].equals("h1")) {
+		char fromPc = board[from >>> 3][from & 7];
+		if(fromPc != 'K' && fromPc != 'k') {
+			// Only the king can castle
+		} else if(activePlayer == 'w') {
+			if(from == E1 && to == H1) {
 				return kingCastling();
-			} else if(position[0].equals("e1") && position[1].equals("a1")) {
+			} else if(from == E1 && to == A1) {
 				return queenCastling();
 			}
 		} else {
-			if(position[0].equals("e8") && position[1].equals("h8")) {
+			if(from == E8 && to == H8) {
 				return kingCastling();
-			} else if(position[0].equals("e8") && position[1].equals("a8")) {
+			} else if(from == E8 && to == A8) {
 				return queenCastling();
 			}
 		}
 
-		ArrayList<String> possibleMoves = getPossibleSquares(position[0]);
-		if(possibleMoves.contains(position[1])) {
+		if((getDestinations(from) & (1L << to)) != 0L) {
 			// Moves pieces
-			int oldX = getSquare(position[0])[0];
-			int oldY = getSquare(position[0])[1];
-			int newx = getSquare(position[1])[0];
-			int newY = getSquare(position[1])[1];
+			int oldX = from >>> 3;
+			int oldY = from & 7;
+			int newx = to >>> 3;
+			int newY = to & 7;
 			if(isPlayersTurn(board[oldX][oldY])) {
 				// Save current state
 				recordState(muv);
-
-				// Fifty move rule check
-				if(board[newx][newY] != '.' && (board[newx][newY] == 'P' || board[newx][newY] == 'p')) {
-					// No capture and pawn not moved
-					fiftyMoveCounter++;
-				} else {
-					// Reset counter
-					fiftyMoveCounter = 0;
+				char mover = activePlayer;
+				char pc = board[oldX][oldY];
+				boolean promotes = (pc == 'P' || pc == 'p') && (newx == 0 || newx == (board.length - 1))
+					&& (Move.getExtra(m) != 0 || !isGui);
+				makeMove(m);
+				if(lastEnPassantVictim != -1) {
+					enpassantPawnGui = new int[2];
+					enpassantPawnGui[0] = lastEnPassantVictim >>> 3;
+					enpassantPawnGui[1] = lastEnPassantVictim & 7;
 				}
 
-				board[newx][newY] = board[oldX][oldY];
-				board[oldX][oldY] = '.';
-				if(!enpassantPawn.equals("xx")) {
-					// Disable en passant. Attack now or lose ability
-					if(board[newx][newY] == 'P') {
-						if(board[newx+1][newY] == 'p') {
-							// In front of enemy pawn
-							board[newx+1][newY] = '.';
-							enpassantPawnGui = new int[2];
-							enpassantPawnGui[0] = newx + 1;
-							enpassantPawnGui[1] = newY;
-						}
-					} else if(board[newx][newY] == 'p') {
-						if(board[newx-1][newY] == 'P') {
-							// In front of enemy pawn
-							board[newx-1][newY] = '.';
-							enpassantPawnGui = new int[2];
-							enpassantPawnGui[0] = newx - 1;
-							enpassantPawnGui[1] = newY;
-						}
-					}
-					enpassantPawn = "xx";
-				}
-
-				// Pawn promotion
-				if(!isGui) {
-					// Default to queen in CLI mode
-					if(((newx == 0) || newx == (board.length - 1)) && (board[newx][newY] == 'P' || board[newx][newY] == 'p')) {
-						pawnPromotion(getSquare(newx, newY), 'Q');
-					}
-				}
-
-				// Activate obstacles
-				activateObstacles(getSquare(newx, newY));
-
 				if(blackCheck) {
 					if(isChecked('b')) {
-						restoreBoard();
+						takeBack();
 						System.out.println("ERROR: black king is still in check");
 						return false;
 					} else {
@@ -650,7 +758,7 @@ public class Chess {
 					}
 				} else if(whiteCheck) {
 					if(isChecked('w')) {
-						restoreBoard();
+						takeBack();
 						System.out.println("ERROR: white king is still in check");
 						return false;
 					} else {
@@ -658,9 +766,9 @@ public class Chess {
 					}
 				}
 				// Check if move creates check/checkmate
-				if(activePlayer == 'b') {
+				if(mover == 'b') {
 					if(isChecked('b')) {
-						restoreBoard();
+						takeBack();
 						System.out.println("ERROR: cannot put yourself in check");
 						return false;
 					}
@@ -669,7 +777,7 @@ public class Chess {
 					}
 				} else {
 					if(isChecked('w')) {
-						restoreBoard();
+						takeBack();
 						System.out.println("ERROR: cannot put yourself in check");
 						return false;
 					}
@@ -677,31 +785,11 @@ public class Chess {
 						blackCheck = true;
 					}
 				}
-				// Adjust castling flags
-				int curPlayer = activePlayer == 'w' ? 0 : 1;
-				if(activePlayer == 'w') {
-					if(position[0].equals("a1")) {
-						hasMoved[0][2] = true; // queen side
-					} else if(position[0].equals("e1")) {
-						hasMoved[0][0] = true; // king
-					} else if(position[0].equals("h1")) {
-						hasMoved[0][1] = true; // king side
-					}
-				} else {
-					if(position[0].equals("a8")) {
-						hasMoved[1][2] = true; // queen side
-					} else if(position[0].equals("e8")) {
-						hasMoved[1][0] = true; // king
-					} else if(position[0].equals("h8")) {
-						hasMoved[1][1] = true; // king side
-					}
-				}
-
-				// Activate en passant
-				if(board[newx][newY] == 'P' || board[newx][newY] == 'p') {
-					if(Math.abs(oldX - newx) == 2) {
-						enpassantPawn = getSquare(newx, newY);
-					}
+				journal.commit();
+				if(promotes) {
+					// Pawn promotion
+					char promo = Move.getExtra(m) != 0 ? Move.promotionChar(Move.getExtra(m)) : 'Q';
+					recordState("=" + promo);
 				}
 				checkEndGame(); // Check if the game is over
 				return true;
@@ -731,601 +819,592 @@ public class Chess {
 		ArrayList<String> rtn = new ArrayList<String>();
 		int x = getSquare(piece)[0];
 		int y = getSquare(piece)[1];
-		rtn.clear(); // Clear just incase
-		// *** WHITE PAWNS ***
-		if(board[x][y] == 'P') {
-			// Move forward
-			if(x == 0) {
+		addSquares(rtn, getDestinations(x * 8 + y));
+		// Return possible moves
+		return rtn;
+	}
+
+	/**
+	* Gets the squares the piece on the given square can move to
+	* @param sq The square index of the piece
+	* @return Bitboard of the destinations, 0 if the square is empty
+	*/
+	private long getDestinations(int sq) {
+		char pc = board[sq >>> 3][sq & 7];
+		int colour = Position.colourOf(pc);
+		if(colour == -1) {
+			return 0L; // Empty square
+		}
+		if(isStepPiece(pc)) {
+			// *** PAWNS, KINGS AND KNIGHTS ***
+			return getStepDestinations(sq);
+		}
+		// *** ROOKS, BISHOPS AND QUEENS ***
+		long occupied = position.getOccupied();
+		long rtn = 0L;
+		char lower = Character.toLowerCase(pc);
+		if(lower == 'r' || lower == 'q') {
+			rtn |= AttackTables.rookAttacks(sq, occupied, position);
+		}
+		if(lower == 'b' || lower == 'q') {
+			rtn |= AttackTables.bishopAttacks(sq, occupied, position);
+		}
+		// Can only eliminate enemies
+		return rtn & ~position.getColour(colour);
+	}
+
+	/**
+	* Determines if the piece moves by single steps or jumps (pawns, knights and kings)
+	* @param pc The piece
+	* @return True if the attack tables handle the piece
+	*/
+	private boolean isStepPiece(char pc) {
+		char lower = Character.toLowerCase(pc);
+		return lower == 'p' || lower == 'n' || lower == 'k';
+	}
+
+	/**
+	* Gets the destinations of a pawn, knight or king from the attack tables. <br>
+	* Walls are removed with the blocked steps of the square, knights jump over walls
+	* @param sq The square index of the piece
+	* @return Bitboard of the squares the piece can move to
+	*/
+	private long getStepDestinations(int sq) {
+		char pc = board[sq >>> 3][sq & 7];
+		int colour = Position.colourOf(pc);
+		long own = position.getColour(colour);
+		long enemy = position.getColour(colour ^ 1);
+		long empty = ~position.getOccupied();
+		long blocked = position.getBlockedSteps(sq);
+		long rtn = 0L;
+		if(pc == 'N' || pc == 'n') {
+			return AttackTables.KNIGHT[sq] & ~own;
+		}
+		if(pc == 'K' || pc == 'k') {
+			return AttackTables.KING[sq] & ~own & ~blocked;
+		}
+		if(pc == 'P') {
+			if(sq < 8) {
 				// Prevent errors in gui move detection
-				return rtn;
+				return 0L;
 			}
-			if(board[x-1][y] == '.') { // Move forward
-				if(!wallExists(getSquare(x,y), getSquare(x-1,y))) {
-					rtn.add(getSquare((x - 1), y));
-				}
-				if(x == 6) {
-					if(board[x-2][y] == '.') { // First move -> 2 step
-						if(!wallExists(getSquare(x,y), getSquare(x-1,y)) && !wallExists(getSquare(x-1,y), getSquare(x-2,y))) {
-							rtn.add(getSquare((x - 2), y));
-						}
-					}
+			long forward = 1L << (sq - 8);
+			if((empty & forward) != 0L && (blocked & forward) == 0L) {
+				rtn |= forward;
+				if((sq >>> 3) == 6 && (empty & (1L << (sq - 16))) != 0L
+					&& (position.getBlockedSteps(sq - 8) & (1L << (sq - 16))) == 0L) {
+					rtn |= 1L << (sq - 16); // First move -> 2 step
 				}
 			}
-			// Eliminate other pieces
-			if(y > 0 && y < 7) {
-				if(pieceColour('b',x-1,y-1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x-1,y-1))) {
-						rtn.add(getSquare((x - 1), y - 1));
-					}
-				}
-				if(pieceColour('b',x-1,y+1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x-1,y+1))) {
-						rtn.add(getSquare((x - 1), y + 1));
-					}
-				}
-			} else if(y == 0) {
-				if(pieceColour('b',x-1,y+1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x-1,y+1))) {
-						rtn.add(getSquare((x - 1), y + 1));
-					}
-				}
-			} else if(y == 7) {
-				if(pieceColour('b',x-1,y-1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x-1,y-1))) {
-						rtn.add(getSquare((x - 1), y - 1));
-					}
+		} else {
+			if(sq >= 56) {
+				// Prevent errors in gui move detection
+				return 0L;
+			}
+			long forward = 1L << (sq + 8);
+			if((empty & forward) != 0L && (blocked & forward) == 0L) {
+				rtn |= forward;
+				if((sq >>> 3) == 1 && (empty & (1L << (sq + 16))) != 0L) {
+					rtn |= 1L << (sq + 16); // First move -> 2 step
 				}
 			}
-			// Check if en passant possible
-			if(!enpassantPawn.equals("xx")) {
-				int enpX = getSquare(enpassantPawn)[0];
-				int enpY = getSquare(enpassantPawn)[1];
-				if(board[enpX][enpY] == 'p') {
-					// if enemy
-					if(enpX == x) {
-						// Pass on either side
-						if(enpY == (y + 1)) {
-							if(!wallExistsDiag(getSquare(x,y), getSquare(enpX-1, enpY))) {
-								rtn.add(getSquare((enpX - 1), enpY));
-							}
-						} else if(enpY == (y - 1)) {
-							if(!wallExistsDiag(getSquare(x,y), getSquare(enpX-1, enpY))) {
-								rtn.add(getSquare((enpX - 1), enpY));
-							}
-						}
-					}
+		}
+		// Eliminate other pieces
+		rtn |= AttackTables.PAWN[colour][sq] & enemy & ~blocked;
+		// Check if en passant possible
+		if(enpassantSquare != -1) {
+			int enpX = enpassantSquare >>> 3;
+			int enpY = enpassantSquare & 7;
+			int x = sq >>> 3;
+			int y = sq & 7;
+			if(enpX == x && Math.abs(enpY - y) == 1 && Position.colourOf(board[enpX][enpY]) == (colour ^ 1)
+				&& Character.toLowerCase(board[enpX][enpY]) == 'p') {
+				long dest = 1L << (colour == Position.WHITE ? sq - 8 - y + enpY : sq + 8 - y + enpY);
+				if((blocked & dest) == 0L) {
+					rtn |= dest;
 				}
 			}
 		}
+		return rtn;
+	}
 
-		// *** BLACK PAWNS ***
-		if(board[x][y] == 'p') {
-			// Move forward
-			if(x == 7) {
-				// Prevent errors in gui move detection
-				return rtn;
-			}
-			if(board[x+1][y] == '.') { // Move forward
-				if(!wallExists(getSquare(x,y), getSquare(x+1,y))) {
-					rtn.add(getSquare((x + 1), y));
-				}
-				if(x == 1) {
-					if(board[x+2][y] == '.') { // First move -> 2 step
-						if(!wallExists(getSquare(x,y), getSquare(x+1,y)) && !wallExists(getSquare(x-1,y), getSquare(x+2,y))) {
-							rtn.add(getSquare((x + 2), y));
-						}
-					}
+	/**
+	* Generates the piece moves of the current player, including castling. <br>
+	* The moves may still leave the player's own king in check
+	* @param list The list to fill, it is cleared first
+	*/
+	public void generateMoves(MoveList list) {
+		list.clear();
+		int colour = activePlayer == 'w' ? Position.WHITE : Position.BLACK;
+		long pieces = position.getColour(colour);
+		while(pieces != 0L) {
+			int from = Long.numberOfTrailingZeros(pieces);
+			pieces &= pieces - 1;
+			char pc = position.getPiece(from);
+			boolean isPawn = pc == 'P' || pc == 'p';
+			long dests = getDestinations(from);
+			while(dests != 0L) {
+				int to = Long.numberOfTrailingZeros(dests);
+				dests &= dests - 1;
+				if(isPawn && (to < 8 || to >= 56)) {
+					// Pawn promotion
+					for(int promo = Position.QUEEN; promo >= Position.KNIGHT; promo--) {
+						list.add(Move.create(Move.NORMAL, from, to, promo));
+					}
+				} else if(isPawn && (to & 7) != (from & 7) && position.getPiece(to) == '.') {
+					list.add(Move.create(Move.EN_PASSANT, from, to, 0));
+				} else {
+					list.add(Move.create(Move.NORMAL, from, to, 0));
 				}
 			}
-			// Eliminate other pieces
-			if(y > 0 && y < 7) {
-				if(pieceColour('w',x+1,y-1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x+1,y-1))) {
-						rtn.add(getSquare((x + 1), y - 1));
-					}
-				}
-				if(pieceColour('w',x+1,y+1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x+1,y+1))) {
-						rtn.add(getSquare((x + 1), y + 1));
-					}
-				}
-			} else if(y == 0) {
-				if(pieceColour('w',x+1,y+1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x+1,y+1))) {
-						rtn.add(getSquare((x + 1), y + 1));
-					}
-				}
-			} else if(y == 7) {
-				if(pieceColour('w',x+1,y-1)) {
-					if(!wallExistsDiag(getSquare(x,y), getSquare(x+1,y-1))) {
-						rtn.add(getSquare((x + 1), y - 1));
-					}
-				}
+		}
+		// Castling, never out of check
+		int kingSquare = activePlayer == 'w' ? E1 : E8;
+		if(position.getKingSquare(colour) == kingSquare && (canKingCastle() || canQueenCastle())
+			&& !isChecked(activePlayer)) {
+			if(canKingCastle() && castlingPathClear(true)) {
+				list.add(Move.create(Move.CASTLE_KING, 0, 0, 0));
 			}
-			// Check if en passant possible
-			if(!enpassantPawn.equals("xx")) {
-				int enpX = getSquare(enpassantPawn)[0];
-				int enpY = getSquare(enpassantPawn)[1];
-				if(board[enpX][enpY] == 'P') {
-					// If enemy
-					if(enpX == x) {
-						// Pass on either side
-						if(enpY == (y + 1)) {
-							if(!wallExistsDiag(getSquare(x,y), getSquare(enpX+1, enpY))) {
-								rtn.add(getSquare((enpX + 1), enpY));
-							}
-						} else if(enpY == (y - 1)) {
-							if(!wallExistsDiag(getSquare(x,y), getSquare(enpX+1, enpY))) {
-								rtn.add(getSquare((enpX + 1), enpY));
-							}
-						}
-					}
-				}
+			if(canQueenCastle() && castlingPathClear(false)) {
+				list.add(Move.create(Move.CASTLE_QUEEN, 0, 0, 0));
 			}
 		}
+	}
 
-		// *** KINGS ***
-		if(board[x][y] == 'K' || board[x][y] == 'k') {
-			// Get all possibilities
-			if((y + 1) < board.length) {
-				if(board[x][y+1] == '.' || isEnemy(board[x][y], board[x][y+1])) {
-					if(!wallExists(getSquare(x,y), getSquare(x,y+1))) {
-						rtn.add(getSquare(x, y+1));
-					}
-				}
-				if((x - 1) >= 0) {
-					if(board[x-1][y+1] == '.' || isEnemy(board[x][y], board[x-1][y+1])) {
-						if(!wallExistsDiag(getSquare(x,y), getSquare(x-1,y+1)))
-							rtn.add(getSquare(x-1, y+1));
-					}
-				}
-				if((x + 1) < board.length) {
-					if(board[x+1][y+1] == '.' || isEnemy(board[x][y], board[x+1][y+1])) {
-						if(!wallExistsDiag(getSquare(x,y), getSquare(x+1,y+1)))
-							rtn.add(getSquare(x+1, y+1));
-					}
-				}
-			}
-			if((y - 1) >= 0) {
-				if(board[x][y-1] == '.' || isEnemy(board[x][y], board[x][y-1])) {
-					if(!wallExists(getSquare(x,y), getSquare(x,y-1))) {
-						rtn.add(getSquare(x, y-1));
-					}
+	/**
+	* Generates the wall placements of the current player and, before
+	* the game starts, the mine and trap door placements. <br>
+	* Walls that would not change the board are left out
+	* @param list The list to add the placements to
+	*/
+	public void generatePlacements(MoveList list) {
+		int wallsLeft = activePlayer == 'w' ? whiteWallRemain : blackWallRemain;
+		if(wallsLeft > 0) {
+			for(int sq = 0; sq < 64; sq++) {
+				boolean west = (position.getWestWalls() & (1L << sq)) != 0L;
+				boolean south = (position.getSouthWalls() & (1L << sq)) != 0L;
+				boolean westEdge = (sq & 7) == 0; // A wall on the edge of the board does nothing
+				boolean southEdge = sq >= 56;
+				if(!west && !westEdge) {
+					list.add(Move.create(Move.WALL, sq, sq, Move.WALL_WEST));
 				}
-				if((x - 1) >= 0) {
-					if(board[x-1][y-1] == '.' || isEnemy(board[x][y], board[x-1][y-1])) {
-						if(!wallExistsDiag(getSquare(x,y), getSquare(x-1,y-1))) {
-							rtn.add(getSquare(x-1, y-1));
-						}
-					}
+				if(!south && !southEdge) {
+					list.add(Move.create(Move.WALL, sq, sq, Move.WALL_SOUTH));
 				}
-				if((x + 1) < board.length) {
-					if(board[x+1][y-1] == '.' || isEnemy(board[x][y], board[x+1][y-1])) {
-						if(!wallExistsDiag(getSquare(x,y), getSquare(x+1,y-1))) {
-							rtn.add(getSquare(x+1, y-1));
-						}
-					}
+				if(!west && !south && !westEdge && !southEdge && wallsLeft > 1) {
+					list.add(Move.create(Move.WALL, sq, sq, Move.WALL_BOTH));
 				}
 			}
-			if((x - 1) >= 0) {
-				if(board[x-1][y] == '.' || isEnemy(board[x][y], board[x-1][y])) {
-					if(!wallExists(getSquare(x,y), getSquare(x-1,y))) {
-						rtn.add(getSquare(x-1, y));
-					}
-				}
+		}
+		if(gamePlaying) {
+			return; // Mines and traps are only placed before the game
+		}
+		boolean mineUsed = activePlayer == 'w' ? whiteMine : blackMine;
+		boolean trapUsed = activePlayer == 'w' ? whiteTrap : blackTrap;
+		if(!mineUsed) {
+			for(int sq = 24; sq < 40; sq++) {
+				list.add(Move.create(Move.MINE, sq, sq, 0)); // Ranks 4 and 5
 			}
-			if((x + 1) < board.length) {
-				if(board[x+1][y] == '.' || isEnemy(board[x][y], board[x+1][y])) {
-					if(!wallExists(getSquare(x,y), getSquare(x+1,y))) {
-						rtn.add(getSquare(x+1, y));
-					}
-				}
+		}
+		if(!trapUsed) {
+			for(int sq = 16; sq < 48; sq++) {
+				list.add(Move.create(Move.TRAP, sq, sq, 0)); // Ranks 3 - 6
 			}
 		}
+		list.add(Move.create(Move.PASS, 0, 0, 0));
+	}
 
-		// *** ROOKS ***
-		if(board[x][y] == 'R' || board[x][y] == 'r') {
-			for(int i = x + 1; i < board.length; i++) {
-				// Down
-				if(board[i][y] == '.' || isEnemy(board[x][y], board[i][y])) {
-					if(!wallExists(getSquare(i-1,y), getSquare(i,y))) {
-						rtn.add(getSquare(i,y));
-						if(isEnemy(board[x][y], board[i][y])) {
-							// Can only eliminate one enemy
-							break;
-						}
-					} else {
-						break; // Wall blocking
-					}
-				} else {
-					break; // Stop looking
-				}
-			}
-			for(int i = x - 1; i >= 0; i--) {
-				// Up
-				if(board[i][y] == '.' || isEnemy(board[x][y], board[i][y])) {
-					if(!wallExists(getSquare(i+1,y), getSquare(i,y))) {
-						rtn.add(getSquare(i,y));
-						if(isEnemy(board[x][y], board[i][y])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break; // Stop looking
-				}
+	/**
+	* Determines if the current player may play the given piece move or
+	* castling without leaving their king in check. <br>
+	* The move is played and taken back, nothing is recorded
+	* @param muv The move in move notation. Eg. e2-e4 or 0-0
+	* @return True if the move is legal
+	*/
+	public boolean isLegalMove(String muv) {
+		int m = Move.parse(muv);
+		if(m == Move.NONE) {
+			return false;
+		}
+		return isLegalMove(m);
+	}
+
+	/**
+	* Determines if the current player may play the given piece move or
+	* castling without leaving their king in check
+	* @param m The encoded move
+	* @return True if the move is legal
+	*/
+	public boolean isLegalMove(int m) {
+		if(!gamePlaying && !canStartGame()) {
+			return false;
+		}
+		int colour = activePlayer == 'w' ? Position.WHITE : Position.BLACK;
+		int type = Move.getType(m);
+		if(type == Move.CASTLE_KING || type == Move.CASTLE_QUEEN) {
+			boolean kingSide = type == Move.CASTLE_KING;
+			if(position.getKingSquare(colour) == -1 || !(kingSide ? canKingCastle() : canQueenCastle())
+				|| isChecked(activePlayer) || !castlingPathClear(kingSide)) {
+				return false;
 			}
-			for(int i = y + 1; i < board.length; i++) {
-				// Right
-				if(board[x][i] == '.' || isEnemy(board[x][y], board[x][i])) {
-					if(!wallExists(getSquare(x,i-1), getSquare(x,i))) {
-						rtn.add(getSquare(x,i));
-						if(isEnemy(board[x][y], board[x][i])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break; // Stop looking
-				}
+		} else if(type == Move.NORMAL || type == Move.EN_PASSANT) {
+			int from = Move.getFrom(m);
+			if(!position.isColour(colour, from) || (getDestinations(from) & (1L << Move.getTo(m))) == 0L) {
+				return false;
 			}
-			for(int i = y - 1; i >= 0; i--) {
-				// Left
-				if(board[x][i] == '.' || isEnemy(board[x][y], board[x][i])) {
-					if(!wallExists(getSquare(x,i+1), getSquare(x,i))) {
-						rtn.add(getSquare(x,i));
-						if(isEnemy(board[x][y], board[x][i])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break; // Stop looking
-				}
+		} else {
+			return false; // Not a piece move
+		}
+		return isKingSafeAfter(m);
+	}
+
+	/**
+	* Plays a move and takes it back to see if it leaves the mover in check
+	* @param m The encoded move
+	* @return True if the mover's king is not in check after the move
+	*/
+	private boolean isKingSafeAfter(int m) {
+		char mover = activePlayer;
+		makeMove(m);
+		boolean safe = !isChecked(mover);
+		unmakeMove();
+		return safe;
+	}
+
+	/**
+	* Determines if a piece move may start the game. <br>
+	* The game starts with the first piece move after the mines, trap doors and walls are placed
+	* @return True if the game has not been played yet
+	*/
+	private boolean canStartGame() {
+		int gCount = 0;
+		for(int i = 0; i < gameLog.size(); i++) {
+			if(!isSetupMove(gameLog.get(i))) {
+				gCount++;
 			}
 		}
+		return gCount <= 1;
+	}
+
+	/**
+	* Plays a move on the board without checking it or recording it in the game log. <br>
+	* Every change, including trap doors and mine blasts, is written to the
+	* undo journal so unmakeMove can take the move back. The move should come
+	* from generateMoves or generatePlacements
+	* @param m The encoded move
+	*/
+	public void makeMove(int m) {
+		journal.open(packState());
+		lastEnPassantVictim = -1;
+		int type = Move.getType(m);
+		switch(type) {
+			case Move.PASS:
+				break;
+			case Move.WALL:
+				playWall(Move.getTo(m), Move.getWallChar(m));
+				return; // Walls do not end the turn
+			case Move.MINE:
+				playObstacle(Move.getTo(m), 'M');
+				break;
+			case Move.TRAP:
+				playObstacle(Move.getTo(m), 'D');
+				break;
+			case Move.CASTLE_KING:
+			case Move.CASTLE_QUEEN:
+				playCastling(type == Move.CASTLE_KING);
+				gamePlaying = true;
+				break;
+			case Move.PROMOTE:
+				return; // Only used in game logs
+			default:
+				playPiece(Move.getFrom(m), Move.getTo(m), Move.getExtra(m));
+				gamePlaying = true; // The first piece move starts the game
+				break;
+		}
+		changePlayer();
+	}
 
-		// *** BISHOPS ***
-		if(board[x][y] == 'B' || board[x][y] == 'b') {
-			int offset = 1;
-			int prevX = x;
-			int prevY = y;
-			// Down-right
-			for(int i = x + 1; i < board.length; i++) {
-				if((y + offset) >= board.length) {
-					break;
-				}
-				if(board[i][y+offset] == '.' || isEnemy(board[x][y], board[i][y+offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y+offset))) {
-						rtn.add(getSquare(i,y+offset));
-						if(isEnemy(board[x][y], board[i][y+offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y + offset;
-				offset++;
-			}
+	/**
+	* Takes back the last move played with makeMove
+	*/
+	public void unmakeMove() {
+		while(journal.hasRecords()) {
+			long rec = journal.popRecord();
+			int sq = UndoJournal.getSquare(rec);
+			position.setPiece(sq >>> 3, sq & 7, UndoJournal.getPiece(rec));
+			position.setObstacle(sq >>> 3, sq & 7, UndoJournal.getObstacle(rec));
+			position.setWall(sq >>> 3, sq & 7, UndoJournal.getWall(rec));
+		}
+		unpackState(journal.close());
+	}
 
-			// Up-right
-			offset = 1;
-			prevX = x;
-			prevY = y;
-			for(int i = x - 1; i >= 0; i--) {
-				if((y + offset) >= board.length) {
-					break;
-				}
-				if(board[i][y+offset] == '.' || isEnemy(board[x][y], board[i][y+offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y+offset))) {
-						rtn.add(getSquare(i,y+offset));
-						if(isEnemy(board[x][y], board[i][y+offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y + offset;
-				offset++;
-			}
+	/**
+	* Takes back a move that failed its check tests together with its saved state
+	*/
+	private void takeBack() {
+		unmakeMove();
+		deleteLastState();
+	}
 
-			// Down-left
-			offset = 1;
-			prevX = x;
-			prevY = y;
-			for(int i = x + 1; i < board.length; i++) {
-				if((y - offset) < 0) {
-					break;
-				}
-				if(board[i][y-offset] == '.' || isEnemy(board[x][y], board[i][y-offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y-offset))) {
-						rtn.add(getSquare(i,y-offset));
-						if(isEnemy(board[x][y], board[i][y-offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y - offset;
-				offset++;
-			}
+	/**
+	* Writes the contents of a square to the undo journal before it changes
+	* @param sq The square index
+	*/
+	private void saveSquare(int sq) {
+		int x = sq >>> 3;
+		int y = sq & 7;
+		journal.record(sq, board[x][y], oBoard[x][y], wBoard[x][y]);
+	}
 
-			// Up-left
-			offset = 1;
-			prevX = x;
-			prevY = y;
-			for(int i = x - 1; i >= 0; i--) {
-				if((y - offset) < 0) {
-					break;
-				}
-				if(board[i][y-offset] == '.' || isEnemy(board[x][y], board[i][y-offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y-offset))) {
-						rtn.add(getSquare(i,y-offset));
-						if(isEnemy(board[x][y], board[i][y-offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
+	/**
+	* Packs the game flags that a move can change into a long
+	* @return The packed flags
+	*/
+	private long packState() {
+		long state = activePlayer == 'b' ? 1L : 0L;
+		state |= (long)(enpassantSquare + 1) << 1; // 7 bits
+		state |= (long)(fiftyMoveCounter & 0xFFFFF) << 8; // 20 bits
+		state |= (long)((whiteWallRemain + 128) & 0xFF) << 28;
+		state |= (long)((blackWallRemain + 128) & 0xFF) << 36;
+		state |= (long)wasTrapMine << 44; // 2 bits
+		int bit = 46;
+		boolean[] flags = {whiteCheck, blackCheck, gamePlaying, whiteMine, blackMine, whiteTrap, blackTrap};
+		for(int i = 0; i < flags.length; i++) {
+			if(flags[i]) {
+				state |= 1L << bit;
+			}
+			bit++;
+		}
+		for(int i = 0; i < hasMoved.length; i++) {
+			for(int j = 0; j < hasMoved[i].length; j++) {
+				if(hasMoved[i][j]) {
+					state |= 1L << bit;
 				}
-				prevX = i;
-				prevY = y - offset;
-				offset++;
+				bit++;
 			}
 		}
+		return state;
+	}
 
-		// *** KNIGHTS ***
-		if(board[x][y] == 'N' || board[x][y] == 'n') {
-			// Forward-left-wide |_ _
-			if((y-2) >= 0 && (x-1) >= 0) {
-				if(board[x-1][y-2] == '.' || isEnemy(board[x][y], board[x-1][y-2])) {
-					rtn.add(getSquare(x-1,y-2));
-				}
+	/**
+	* Restores the game flags from a packed long
+	* @param state The packed flags
+	*/
+	private void unpackState(long state) {
+		activePlayer = (state & 1L) != 0L ? 'b' : 'w';
+		enpassantSquare = (int)((state >>> 1) & 127) - 1;
+		fiftyMoveCounter = (int)((state >>> 8) & 0xFFFFF);
+		whiteWallRemain = (int)((state >>> 28) & 0xFF) - 128;
+		blackWallRemain = (int)((state >>> 36) & 0xFF) - 128;
+		wasTrapMine = (int)((state >>> 44) & 3);
+		whiteCheck = (state & (1L << 46)) != 0L;
+		blackCheck = (state & (1L << 47)) != 0L;
+		gamePlaying = (state & (1L << 48)) != 0L;
+		whiteMine = (state & (1L << 49)) != 0L;
+		blackMine = (state & (1L << 50)) != 0L;
+		whiteTrap = (state & (1L << 51)) != 0L;
+		blackTrap = (state & (1L << 52)) != 0L;
+		int bit = 53;
+		for(int i = 0; i < hasMoved.length; i++) {
+			for(int j = 0; j < hasMoved[i].length; j++) {
+				hasMoved[i][j] = (state & (1L << bit)) != 0L;
+				bit++;
 			}
+		}
+	}
 
-			// Forward-left-narrow ||_
-			if((y-1) >= 0 && (x-2) >= 0) {
-				if(board[x-2][y-1] == '.' || isEnemy(board[x][y], board[x-2][y-1])) {
-					rtn.add(getSquare(x-2,y-1));
-				}
-			}
+	/**
+	* Moves a piece, including captures, en passant, promotion,
+	* obstacles and the castling and en passant flags
+	* @param from The from square
+	* @param to The to square
+	* @param promo The promotion piece type, 0 to use the default
+	*/
+	private void playPiece(int from, int to, int promo) {
+		int oldX = from >>> 3;
+		int oldY = from & 7;
+		int newx = to >>> 3;
+		int newY = to & 7;
+		// Fifty move rule check
+		if(board[newx][newY] != '.' && (board[newx][newY] == 'P' || board[newx][newY] == 'p')) {
+			// No capture and pawn not moved
+			fiftyMoveCounter++;
+		} else {
+			// Reset counter
+			fiftyMoveCounter = 0;
+		}
 
-			// Forward-right-narrow _||
-			if((y+1) < board.length && (x-2) >= 0) {
-				if(board[x-2][y+1] == '.' || isEnemy(board[x][y], board[x-2][y+1])) {
-					rtn.add(getSquare(x-2,y+1));
+		saveSquare(to);
+		saveSquare(from);
+		position.setPiece(newx, newY, board[oldX][oldY]);
+		position.setPiece(oldX, oldY, '.');
+		if(enpassantSquare != -1) {
+			// Disable en passant. Attack now or lose ability
+			if(board[newx][newY] == 'P') {
+				if(board[newx+1][newY] == 'p') {
+					// In front of enemy pawn
+					lastEnPassantVictim = to + 8;
 				}
-			}
-
-			// Forward-right-wide _ _|
-			if((y+2) < board.length && (x-1) >= 0) {
-				if(board[x-1][y+2] == '.' || isEnemy(board[x][y], board[x-1][y+2])) {
-					rtn.add(getSquare(x-1,y+2));
+			} else if(board[newx][newY] == 'p') {
+				if(board[newx-1][newY] == 'P') {
+					// In front of enemy pawn
+					lastEnPassantVictim = to - 8;
 				}
 			}
-
-			// Backward-left-wide |_ _
-			if((y-2) >= 0 && (x+1) < board.length) {
-				if(board[x+1][y-2] == '.' || isEnemy(board[x][y], board[x+1][y-2])) {
-					rtn.add(getSquare(x+1,y-2));
-				}
+			if(lastEnPassantVictim != -1) {
+				saveSquare(lastEnPassantVictim);
+				position.setPiece(lastEnPassantVictim >>> 3, lastEnPassantVictim & 7, '.');
 			}
+			enpassantSquare = -1;
+		}
 
-			// Backward-left-narrow ||_
-			if((y-1) >= 0 && (x+2) < board.length) {
-				if(board[x+2][y-1] == '.' || isEnemy(board[x][y], board[x+2][y-1])) {
-					rtn.add(getSquare(x+2,y-1));
-				}
+		// Pawn promotion
+		if(((newx == 0) || newx == (board.length - 1)) && (board[newx][newY] == 'P' || board[newx][newY] == 'p')) {
+			if(promo != 0 || !isGui) {
+				// Default to queen in CLI mode, the GUI asks the player
+				char pc = promo != 0 ? Move.promotionChar(promo) : 'Q';
+				position.setPiece(newx, newY, board[newx][newY] == 'p' ? Character.toLowerCase(pc) : pc);
 			}
+		}
 
-			// Backward-right-narrow _||
-			if((y+1) < board.length && (x+2) < board.length) {
-				if(board[x+2][y+1] == '.' || isEnemy(board[x][y], board[x+2][y+1])) {
-					rtn.add(getSquare(x+2,y+1));
-				}
-			}
+		// Activate obstacles
+		activateObstacles(to);
 
-			// Backward-right-wide _ _|
-			if((y+2) < board.length && (x+1) < board.length) {
-				if(board[x+1][y+2] == '.' || isEnemy(board[x][y], board[x+1][y+2])) {
-					rtn.add(getSquare(x+1,y+2));
-				}
+		// Adjust castling flags
+		if(activePlayer == 'w') {
+			if(from == A1) {
+				hasMoved[0][2] = true; // queen side
+			} else if(from == E1) {
+				hasMoved[0][0] = true; // king
+			} else if(from == H1) {
+				hasMoved[0][1] = true; // king side
+			}
+		} else {
+			if(from == A8) {
+				hasMoved[1][2] = true; // queen side
+			} else if(from == E8) {
+				hasMoved[1][0] = true; // king
+			} else if(from == H8) {
+				hasMoved[1][1] = true; // king side
 			}
 		}
 
-		// *** QUEENS ***
-		if(board[x][y] == 'Q' || board[x][y] == 'q') {
-			// DIAGONALS
-			int offset = 1;
-			int prevX = x;
-			int prevY = y;
-			// Down-right
-			for(int i = x + 1; i < board.length; i++) {
-				if((y + offset) >= board.length) {
-					break;
-				}
-				if(board[i][y+offset] == '.' || isEnemy(board[x][y], board[i][y+offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y+offset))) {
-						rtn.add(getSquare(i,y+offset));
-						if(isEnemy(board[x][y], board[i][y+offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y + offset;
-				offset++;
+		// Activate en passant
+		if(board[newx][newY] == 'P' || board[newx][newY] == 'p') {
+			if(Math.abs(oldX - newx) == 2) {
+				enpassantSquare = to;
 			}
+		}
+	}
 
-			// Up-right
-			offset = 1;
-			prevX = x;
-			prevY = y;
-			for(int i = x - 1; i >= 0; i--) {
-				if((y + offset) >= board.length) {
-					break;
-				}
-				if(board[i][y+offset] == '.' || isEnemy(board[x][y], board[i][y+offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y+offset))) {
-						rtn.add(getSquare(i,y+offset));
-						if(isEnemy(board[x][y], board[i][y+offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y + offset;
-				offset++;
-			}
+	/**
+	* Moves the king two squares towards the rook and puts the rook next to it
+	* @param kingSide True for king side castling
+	*/
+	private void playCastling(boolean kingSide) {
+		int curPlayer = activePlayer == 'w' ? 0 : 1;
+		int king = position.getKingSquare(curPlayer == 0 ? Position.WHITE : Position.BLACK);
+		int x = king >>> 3;
+		int y = king & 7;
+		int dir = kingSide ? 1 : -1;
+		int rookY = kingSide ? board.length - 1 : 0;
+		char kingPc = activePlayer == 'w' ? 'K' : 'k';
+		char rookPc = activePlayer == 'w' ? 'R' : 'r';
+		saveSquare(king);
+		saveSquare(king + 2 * dir);
+		saveSquare(x * 8 + rookY);
+		saveSquare(king + dir);
+		position.setPiece(x, y, '.');
+		position.setPiece(x, y + 2 * dir, kingPc);
+		position.setPiece(x, rookY, '.');
+		position.setPiece(x, y + dir, rookPc);
+		hasMoved[curPlayer][0] = true;
+		hasMoved[curPlayer][1] = true;
+	}
 
-			// Down-left
-			offset = 1;
-			prevX = x;
-			prevY = y;
-			for(int i = x + 1; i < board.length; i++) {
-				if((y - offset) < 0) {
-					break;
-				}
-				if(board[i][y-offset] == '.' || isEnemy(board[x][y], board[i][y-offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y-offset))) {
-						rtn.add(getSquare(i,y-offset));
-						if(isEnemy(board[x][y], board[i][y-offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y - offset;
-				offset++;
-			}
+	/**
+	* Places a wall for the current player
+	* @param sq The square index
+	* @param wall The type of wall to add
+	*/
+	private void playWall(int sq, char wall) {
+		int xPos = sq >>> 3;
+		int yPos = sq & 7;
+		saveSquare(sq);
+		if(wBoard[xPos][yPos] != '.' && wBoard[xPos][yPos] != wall) {
+			position.setWall(xPos, yPos, 'L'); // Wall already exists
+		} else {
+			position.setWall(xPos, yPos, wall); // A waste if the wall is already there
+		}
+		int used = wall == 'L' ? 2 : 1; // An L wall uses two walls
+		if(activePlayer == 'w') {
+			whiteWallRemain -= used;
+		} else {
+			blackWallRemain -= used;
+		}
+	}
 
-			// Up-left
-			offset = 1;
-			prevX = x;
-			prevY = y;
-			for(int i = x - 1; i >= 0; i--) {
-				if((y - offset) < 0) {
-					break;
-				}
-				if(board[i][y-offset] == '.' || isEnemy(board[x][y], board[i][y-offset])) {
-					if(!wallExistsDiag(getSquare(prevX,prevY), getSquare(i,y-offset))) {
-						rtn.add(getSquare(i,y-offset));
-						if(isEnemy(board[x][y], board[i][y-offset])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-				prevX = i;
-				prevY = y - offset;
-				offset++;
-			}
-
-			// VERTICAL/HORIZONTAL
-			for(int i = x + 1; i < board.length; i++) {
-				// Down
-				if(board[i][y] == '.' || isEnemy(board[x][y], board[i][y])) {
-					if(!wallExists(getSquare(i-1,y), getSquare(i,y))) {
-						rtn.add(getSquare(i,y));
-						if(isEnemy(board[x][y], board[i][y])) {
-							// Can only eliminate one enemy
-							break;
-						}
-					} else {
-						break; // Wall blocking
-					}
+	/**
+	* Places a mine or trap door for the current player
+	* @param sq The square index
+	* @param mTrap The mine or trap to be added
+	*/
+	private void playObstacle(int sq, char mTrap) {
+		int xPos = sq >>> 3;
+		int yPos = sq & 7;
+		saveSquare(sq);
+		if(oBoard[xPos][yPos] == '.') {
+			position.setObstacle(xPos, yPos, mTrap); // Just add it
+		} else {
+			if(oBoard[xPos][yPos] == 'D' || oBoard[xPos][yPos] == 'O') {
+				if(mTrap == 'M') {
+					position.setObstacle(xPos, yPos, 'X'); // Hidden mine/trap combo
 				} else {
-					break; // Stop looking
+					position.setObstacle(xPos, yPos, mTrap); // Wasted trap door
 				}
-			}
-			for(int i = x - 1; i >= 0; i--) {
-				// Up
-				if(board[i][y] == '.' || isEnemy(board[x][y], board[i][y])) {
-					if(!wallExists(getSquare(i+1,y), getSquare(i,y))) {
-						rtn.add(getSquare(i,y));
-						if(isEnemy(board[x][y], board[i][y])) {
-							break;
-						}
-					} else {
-						break;
-					}
+			} else {
+				// Already a mine
+				if(mTrap == 'D') {
+					position.setObstacle(xPos, yPos, 'X');
 				} else {
-					break; // Stop looking
+					position.setObstacle(xPos, yPos, mTrap); // Wasted mine
 				}
 			}
-			for(int i = y + 1; i < board.length; i++) {
-				// Right
-				if(board[x][i] == '.' || isEnemy(board[x][y], board[x][i])) {
-					if(!wallExists(getSquare(x,i-1), getSquare(x,i))) {
-						rtn.add(getSquare(x,i));
-						if(isEnemy(board[x][y], board[x][i])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break; // Stop looking
-				}
+		}
+		if(mTrap == 'D') {
+			if(activePlayer == 'w') {
+				whiteTrap = true;
+			} else {
+				blackTrap = true;
 			}
-			for(int i = y - 1; i >= 0; i--) {
-				// Left
-				if(board[x][i] == '.' || isEnemy(board[x][y], board[x][i])) {
-					if(!wallExists(getSquare(x,i+1), getSquare(x,i))) {
-						rtn.add(getSquare(x,i));
-						if(isEnemy(board[x][y], board[x][i])) {
-							break;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break; // Stop looking
-				}
+		} else {
+			if(activePlayer == 'w') {
+				whiteMine = true;
+			} else {
+				blackMine = true;
 			}
 		}
+	}
 
-		// Return possible moves
-		return rtn;
+	/**
+	* Adds the squares of a bitboard to a list in chess notation
+	* @param list The list to add to
+	* @param squares The bitboard of squares
+	*/
+	private void addSquares(ArrayList<String> list, long squares) {
+		while(squares != 0L) {
+			int sq = Long.numberOfTrailingZeros(squares);
+			squares &= squares - 1;
+			list.add(Position.squareName(sq));
+		}
 	}
 
 	// ********************************************************
 	// ***** FUNCTION TO GET DATA FOR GRAPHICAL INTERFACE *****
 	// ********************************************************
 
-	/** This function returns the current board
+	/** This function returns the current board. <br>
+	* The array changes with every move, other threads use getView
 	* @return board state
 	*/
 	public char[][] getBoard() {
@@ -1333,7 +1412,8 @@ public class Chess {
 	}
 
 	/**
-	* This function returns the obstacle board that is saved
+	* This function returns the obstacle board that is saved. <br>
+	* The array changes with every move, other threads use getView
 	* @return Saved board state
 	*/
 	public char[][] getObstacleBoard() {
@@ -1341,13 +1421,22 @@ public class Chess {
 	}
 
 	/**
-	* This function returns the walls board that is saved
+	* This function returns the walls board that is saved. <br>
+	* The array changes with every move, other threads use getView
 	* @return Saved board state
 	*/
 	public char[][] getWallBoard() {
 		return wBoard;
 	}
 
+	/**
+	* This function returns the bitboard layout of the board
+	* @return The position, it changes with every move
+	*/
+	public Position getPosition() {
+		return position;
+	}
+
 	/**
 	* This function returns the game log
 	* @return Game log
@@ -1388,6 +1477,17 @@ public class Chess {
 		return enpassantPawnGui;
 	}
 
+	/**
+	* Return the square of the pawn vulnerable to en passant attack
+	* @return The square in chess notation, "xx" if there is none
+	*/
+	public String getEnPassantSquare() {
+		if(enpassantSquare == -1) {
+			return "xx";
+		}
+		return Position.squareName(enpassantSquare);
+	}
+
 	/**
 	* Reset en passant pawn piece for gui
 	*/
@@ -1466,16 +1566,11 @@ public class Chess {
 	* @return The square containing the white king
 	*/
 	public String getWhiteKing() {
-		String rtn = "";
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				if(board[i][j] == 'K') {
-					rtn = getSquare(i,j);
-					break;
-				}
-			}
+		int sq = position.getKingSquare(Position.WHITE);
+		if(sq == -1) {
+			return "";
 		}
-		return rtn;
+		return getSquare(sq >>> 3, sq & 7);
 	}
 
 	/**
@@ -1483,57 +1578,39 @@ public class Chess {
 	* @return The square containing the black king
 	*/
 	public String getBlackKing() {
-		String rtn = "";
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				if(board[i][j] == 'k') {
-					rtn = getSquare(i,j);
-					break;
-				}
-			}
+		int sq = position.getKingSquare(Position.BLACK);
+		if(sq == -1) {
+			return "";
 		}
-		return rtn;
+		return getSquare(sq >>> 3, sq & 7);
 	}
 
 	/**
-	* This function determines if a checkmate condition is reached
+	* This function determines if a checkmate condition is reached. <br>
+	* Every move of the checked side is played and taken back until
+	* one is found that gets the king out of check
 	* @return true if it's a checkmate
 	*/
 	public boolean isCheckMate() {
-		char myLeader = '-';
-		char myColour = '-';
-		if(blackCheck || whiteCheck) {
-			myLeader = blackCheck ? 'k' : 'K';
-			myColour = blackCheck ? 'b' : 'w';
-			for(int i = 0; i < board.length; i++) {
-				for(int j = 0; j < board[i].length; j++) {
-					if(isEnemy(myLeader, board[i][j])) {
-						continue;
-					} else {
-						// My team
-						ArrayList<String> posMoves = getPossibleSquares(getSquare(i,j));
-						for(int t = 0; t < posMoves.size(); t++) {
-							// Try all posibilities
-							recordState("checkmate-detect");
-							int newx = getSquare(posMoves.get(t))[0];
-							int newY = getSquare( posMoves.get(t))[1];
-							board[newx][newY] = board[i][j];
-							board[i][j] = '.';
-							if(isChecked(myColour)) {
-								restoreBoard();
-							} else {
-								// Way out of check located
-								restoreBoard();
-								return false;
-							}
-						}
-					}
-				}
-			}
-		} else {
+		if(!blackCheck && !whiteCheck) {
 			return false; // Not in check
 		}
-		return true; // Nothing else possible
+		char myColour = blackCheck ? 'b' : 'w';
+		boolean otherTurn = myColour != activePlayer;
+		if(otherTurn) {
+			changePlayer(); // Generate the moves of the checked side
+		}
+		generateMoves(mateMoves);
+		boolean mate = true;
+		for(int i = 0; i < mateMoves.size() && mate; i++) {
+			if(isKingSafeAfter(mateMoves.get(i))) {
+				mate = false; // Way out of check located
+			}
+		}
+		if(otherTurn) {
+			changePlayer();
+		}
+		return mate;
 	}
 
 	/**
@@ -1542,36 +1619,20 @@ public class Chess {
 	*/
 	public boolean isStaleMate() {
 		// check if only king left
-		int pieceCount = 0;
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				if(activePlayer == 'w') {
-					if(isEnemy('k', board[i][j])) {
-						pieceCount++;
-					}
-				} else {
-					if(isEnemy('K', board[i][j])) {
-						pieceCount++;
-					}
-				}
-			}
+		int pieceCount;
+		if(activePlayer == 'w') {
+			pieceCount = Long.bitCount(position.getColour(Position.WHITE));
+		} else {
+			pieceCount = Long.bitCount(position.getColour(Position.BLACK));
 		}
 		if(pieceCount != 1) {
 			return false;
 		} else {
-			if(activePlayer == 'w') {
-				if(getPossibleSquares(getWhiteKing()).size() == 0) {
-					return true;
-				} else {
-					return false;
-				}
-			} else {
-				if(getPossibleSquares(getBlackKing()).size() == 0) {
-					return true;
-				} else {
-					return false;
-				}
+			int kingSquare = position.getKingSquare(activePlayer == 'w' ? Position.WHITE : Position.BLACK);
+			if(kingSquare == -1) {
+				return false; // The last piece is not a king
 			}
+			return getDestinations(kingSquare) == 0L;
 		}
 	}
 
@@ -1581,30 +1642,12 @@ public class Chess {
 	* @return True if the king is in check
 	*/
 	public boolean isChecked(char king) {
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				if(king == 'w') {
-					if(isEnemy('K', board[i][j])) {
-						if(getPossibleSquares(getSquare(i,j)).contains(getWhiteKing())) {
-							return true;
-						}
-					} else {
-						continue;
-					}
-				} else {
-					// Then black king
-					if(isEnemy('k', board[i][j])) {
-						if(getPossibleSquares(getSquare(i,j)).contains(getBlackKing())) {
-							return true;
-						}
-					} else {
-						continue;
-					}
-				}
-			}
+		int colour = king == 'w' ? Position.WHITE : Position.BLACK;
+		int kingSquare = position.getKingSquare(colour);
+		if(kingSquare == -1) {
+			return false; // No king to attack
 		}
-		// Not in check
-		return false;
+		return AttackTables.isAttacked(kingSquare, colour ^ 1, position);
 	}
 
 	/**
@@ -1612,25 +1655,67 @@ public class Chess {
 	* @return true if threefold repetition has occured
 	*/
 	public boolean threefoldRepetition() {
-		int occurances = -1;
-		ArrayList<String> boardStatus = new ArrayList<String>();
-		for(int i = 0; i < (boardState.size() - 1); i++) {
-			if(gameLog.get(i).charAt(0) == '=' || gameLog.get(i).charAt(0) == 'M' || gameLog.get(i).charAt(0) == 'D' || gameLog.get(i).charAt(0) == '|' || gameLog.get(i).charAt(0) == '_') {
-				continue;
+		int repeated = repetitions.getRepeated();
+		int last = boardState.size() - 1;
+		if(last >= 0 && !isSetupMove(gameLog.get(last))) {
+			// The last saved state is not counted
+			if(repetitions.count(boardState.getHashKey(last)) == 3) {
+				repeated--;
+			}
+		}
+		return repeated > 0;
+	}
+
+	/**
+	* Returns the Zobrist key of the current position. <br>
+	* The board part is updated by Position on every change, the game
+	* flags are added here with a few table lookups
+	* @return Key covering the pieces, obstacles, walls, side to move, setup phase,
+	* castling, en passant and the remaining walls, mines and trap doors
+	*/
+	public long getHashKey() {
+		long key = position.getKey();
+		if(activePlayer == 'b') {
+			key ^= Zobrist.SIDE;
+		}
+		if(!gamePlaying) {
+			key ^= Zobrist.SETUP;
+		}
+		for(int i = 0; i < hasMoved.length; i++) {
+			for(int j = 0; j < hasMoved[i].length; j++) {
+				if(hasMoved[i][j]) {
+					key ^= Zobrist.CASTLING[i][j];
+				}
 			}
-			boardStatus.add(Arrays.deepToString(boardState.get(i).getBoard()));
 		}
-		Set<String> boardRepeat = new HashSet<String>(boardStatus);
-		for(String state : boardRepeat) {
-			if(Collections.frequency(boardStatus, state) >= occurances) {
-				occurances = Collections.frequency(boardStatus, state);
-			}
+		if(enpassantSquare != -1) {
+			key ^= Zobrist.EN_PASSANT[enpassantSquare];
+		}
+		key ^= Zobrist.wallsLeft(Position.WHITE, whiteWallRemain);
+		key ^= Zobrist.wallsLeft(Position.BLACK, blackWallRemain);
+		if(whiteMine) {
+			key ^= Zobrist.MINE_USED[Position.WHITE];
+		}
+		if(blackMine) {
+			key ^= Zobrist.MINE_USED[Position.BLACK];
 		}
-		if(occurances >= 3) {
-			return true;
-		} else {
-			return false;
+		if(whiteTrap) {
+			key ^= Zobrist.TRAP_USED[Position.WHITE];
 		}
+		if(blackTrap) {
+			key ^= Zobrist.TRAP_USED[Position.BLACK];
+		}
+		return key;
+	}
+
+	/**
+	* Determines if a game log entry is a placement or promotion rather than a move
+	* @param muv The game log entry
+	* @return True for promotions, mines, trap doors and walls
+	*/
+	private static boolean isSetupMove(String muv) {
+		char first = muv.charAt(0);
+		return first == '=' || first == 'M' || first == 'D' || first == '|' || first == '_';
 	}
 
 	// *****************************************************
@@ -1638,7 +1723,8 @@ public class Chess {
 	// *****************************************************
 
 	/**
-	* This function checks if the game is over
+	* This function checks if the game is over. <br>
+	* The move has already handed the turn to the other player
 	*/
 	private void checkEndGame() {
 		// Fifty move rule check
@@ -1651,7 +1737,6 @@ public class Chess {
 			System.out.println("INFO: draw due to threefold repetition");
 			gamePlaying = false;
 		}
-		changePlayer();
 		if(isCheckMate()) {
 			System.out.println("INFO: checkmate");
 			gamePlaying = false;
@@ -1672,10 +1757,10 @@ public class Chess {
 		int py = getSquare(sqr)[1];
 		if(Character.isLowerCase(board[px][py])) {
 			// black
-			board[px][py] = Character.toLowerCase(pc);
+			position.setPiece(px, py, Character.toLowerCase(pc));
 		} else {
 			// white
-			board[px][py] = Character.toUpperCase(pc);
+			position.setPiece(px, py, Character.toUpperCase(pc));
 		}
 		recordState("=" + pc);
 		if(isGui) {
@@ -1690,6 +1775,7 @@ public class Chess {
 				}
 			}
 		}
+		publishView();
 	}
 
 	/**
@@ -1705,21 +1791,12 @@ public class Chess {
 			return false;
 		}
 
-		char piece = board[x][y];
-		if(Character.toLowerCase(col) == 'w') {
+		if(col == 'w' || col == 'W') {
 			// Check if white
-			if(piece == 'K' || piece == 'Q' || piece == 'R' || piece == 'N' || piece == 'B' || piece == 'P') {
-				return true;
-			} else {
-				return false;
-			}
-		} else if(Character.toLowerCase(col) == 'b') {
+			return position.isColour(Position.WHITE, x * 8 + y);
+		} else if(col == 'b' || col == 'B') {
 			// Check if black
-			if(piece == 'k' || piece == 'q' || piece == 'r' || piece == 'n' || piece == 'b' || piece == 'p') {
-				return true;
-			} else {
-				return false;
-			}
+			return position.isColour(Position.BLACK, x * 8 + y);
 		} else {
 			return false;
 		}
@@ -1732,23 +1809,12 @@ public class Chess {
 	* @return Returns true is the pieces are enemies
 	*/
 	private boolean isEnemy(char myself, char other) {
-		if(myself == '.' || other == '.') {
+		int myColour = Position.colourOf(myself);
+		int otherColour = Position.colourOf(other);
+		if(myColour == -1 || otherColour == -1) {
 			return false; // Empty Square
 		}
-
-		if(Character.isLowerCase(myself)) {
-			if(Character.isLowerCase(other)) {
-				return false;
-			} else {
-				return true;
-			}
-		} else {
-			if(Character.isLowerCase(other)) {
-				return true;
-			} else {
-				return false;
-			}
-		}
+		return myColour != otherColour;
 	}
 
 	/**
@@ -1789,55 +1855,23 @@ public class Chess {
 	*/
 	private boolean kingCastling() {
 		int curPlayer = activePlayer == 'w' ? 0 : 1;
-		String rook = activePlayer == 'w' ? "h1" : "h8";
-		String destRook = activePlayer == 'w' ? "f1" : "f8";
 		if(hasMoved[curPlayer][0] || hasMoved[curPlayer][1]) {
 			System.out.println("ERROR: illegal king side castling");
 			return false;
-		} else {
-			// Perform castling
-			if(getPossibleSquares(rook).contains(destRook)) {
-				recordState("0-0");
-				int x, y;
-				if(activePlayer == 'w') {
-					x = getSquare(getWhiteKing())[0];
-					y = getSquare(getWhiteKing())[1];
-					board[x][y] = '.';
-					board[x][y+2] = 'K';
-					board[x][board.length - 1] = '.';
-					board[x][y+1] = 'R';
-				} else {
-					x = getSquare(getBlackKing())[0];
-					y = getSquare(getBlackKing())[1];
-					board[x][y] = '.';
-					board[x][y+2] = 'k';
-					board[x][board.length - 1] = '.';
-					board[x][y+1] = 'r';
-				}
-				if(isChecked(activePlayer)) {
-					restoreBoard();
-					System.out.println("ERROR: cannot perform king side castling");
-					return false;
-				} else {
-					// Check if in check
-					if(activePlayer == 'b') {
-						if(isChecked('w')) {
-							whiteCheck = true;
-						}
-					} else {
-						if(isChecked('b')) {
-							blackCheck = true;
-						}
-					}
-					changePlayer();
-					hasMoved[curPlayer][0] = true;
-					hasMoved[curPlayer][1] = true;
-					return true;
-				}
-			} else {
-				return false;
-			}
 		}
+		if(isChecked(activePlayer)) {
+			System.out.println("ERROR: cannot castle out of check");
+			return false;
+		}
+		if(!castlingPathClear(true)) {
+			return false;
+		}
+		recordState("0-0");
+		if(!castle(Move.create(Move.CASTLE_KING, 0, 0, 0))) {
+			System.out.println("ERROR: cannot perform king side castling");
+			return false;
+		}
+		return true;
 	}
 
 	/**
@@ -1846,55 +1880,68 @@ public class Chess {
 	*/
 	private boolean queenCastling() {
 		int curPlayer = activePlayer == 'w' ? 0 : 1;
-		String rook = activePlayer == 'w' ? "a1" : "a8";
-		String destRook = activePlayer == 'w' ? "d1" : "d8";
 		if(hasMoved[curPlayer][0] || hasMoved[curPlayer][2]) {
 			System.out.println("ERROR: illegal queen side castling");
 			return false;
+		}
+		if(isChecked(activePlayer)) {
+			System.out.println("ERROR: cannot castle out of check");
+			return false;
+		}
+		if(!castlingPathClear(false)) {
+			return false;
+		}
+		recordState("0-0-0");
+		if(!castle(Move.create(Move.CASTLE_QUEEN, 0, 0, 0))) {
+			System.out.println("ERROR: cannot perform queen side castling");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Plays a castling move that has been recorded and takes
+	* it back if it leaves the king in check
+	* @param m The encoded castling move
+	* @return true if the king is safe after castling
+	*/
+	private boolean castle(int m) {
+		char mover = activePlayer;
+		makeMove(m);
+		if(isChecked(mover)) {
+			takeBack();
+			return false;
+		}
+		journal.commit();
+		// Check if in check
+		if(mover == 'b') {
+			blackCheck = false;
+			if(isChecked('w')) {
+				whiteCheck = true;
+			}
 		} else {
-			// Perform castling
-			if(getPossibleSquares(rook).contains(destRook)) {
-				recordState("0-0-0");
-				int x, y;
-				if(activePlayer == 'w') {
-					x = getSquare(getWhiteKing())[0];
-					y = getSquare(getWhiteKing())[1];
-					board[x][y] = '.';
-					board[x][y-2] = 'K';
-					board[x][0] = '.';
-					board[x][y-1] = 'R';
-				} else {
-					x = getSquare(getBlackKing())[0];
-					y = getSquare(getBlackKing())[1];
-					board[x][y] = '.';
-					board[x][y-2] = 'k';
-					board[x][0] = '.';
-					board[x][y-1] = 'r';
-				}			
-				if(isChecked(activePlayer)) {
-					restoreBoard();
-					System.out.println("ERROR: cannot perform queen side castling");
-					return false;
-				} else {
-					// Check if in check
-					if(activePlayer == 'b') {
-						if(isChecked('w')) {
-							whiteCheck = true;
-						}
-					} else {
-						if(isChecked('b')) {
-							blackCheck = true;
-						}
-					}
-					changePlayer();
-					hasMoved[curPlayer][0] = true;
-					hasMoved[curPlayer][1] = true;
-					return true;
-				}
-			} else {
-				return false;
+			whiteCheck = false;
+			if(isChecked('b')) {
+				blackCheck = true;
 			}
 		}
+		return true;
+	}
+
+	/**
+	* Determines if the rook can slide to its castling square
+	* @param kingSide True for king side castling
+	* @return True if the rook reaches the square next to the king's destination
+	*/
+	private boolean castlingPathClear(boolean kingSide) {
+		int rook;
+		if(activePlayer == 'w') {
+			rook = kingSide ? H1 : A1;
+		} else {
+			rook = kingSide ? H8 : A8;
+		}
+		int destRook = kingSide ? rook - 2 : rook + 3;
+		return (getDestinations(rook) & (1L << destRook)) != 0L;
 	}
 
 	/**
@@ -1923,141 +1970,23 @@ public class Chess {
 		}
 	}
 
-	/**
-	* Determines if there is a wall between two squares
-	* @param sqr1 The first square
-	* @param sqr2 The second square
-	* @return True if a wall exists between the two
-	*/
-	private boolean wallExists(String sqr1, String sqr2) {
-		int x1 = getSquare(sqr1)[0];
-		int y1 = getSquare(sqr1)[1];
-		int x2 = getSquare(sqr2)[0];
-		int y2 = getSquare(sqr2)[1];
-		if(x1 == x2) {
-			// Side-by-side
-			if(Math.abs(y1 - y2) == 1) {
-				// Together
-				if(y2 > y1) {
-					// y2 on right side
-					if(wBoard[x2][y2] == '|' || wBoard[x2][y2] == 'L') {
-						return true; // Wall exists
-					} else {
-						return false; // No wall
-					}
-				} else {
-					if(wBoard[x1][y1] == '|' || wBoard[x1][y1] == 'L') {
-						return true; // Wall exists
-					} else {
-						return false; // No wall
-					}
-				}
-			} else {
-				return false; // Not together
-			}
-		} else if(y1 == y2) {
-			// ontop of each other
-			if(Math.abs(x1 - x2) == 1) {
-				// Together
-				if(x2 > x1) {
-					// x2 is the square below
-					if(wBoard[x1][y1] == '_' || wBoard[x1][y1] == 'L') {
-						return true; // Wall exists
-					}	else {
-						return false; // No wall
-					}
-				} else {
-					if(wBoard[x2][y2] == '_' || wBoard[x2][y2] == 'L') {
-						return true; // Wall exists
-					}	else {
-						return false; // No wall
-					}
-				}
-			} else {
-				return false; // Not together
-			}
-		} else {
-			return false; // Not next to each other
-		}
-	}
-
-	/**
-	* Determines if the wall exists in the diagonal position
-	* @param sqr1 The first square
-	* @param sqr2 The second square
-	* @return True if a wall exists between the two
-	*/
-	private boolean wallExistsDiag(String sqr1, String sqr2) {
-		// Some diagonals ignored because walls only on south and west sides
-		int x1 = getSquare(sqr1)[0];
-		int y1 = getSquare(sqr1)[1];
-		int x2 = getSquare(sqr2)[0];
-		int y2 = getSquare(sqr2)[1];
-		if((Math.abs(x1 - x2) == 1) && (Math.abs(y1 - y2) == 1)) {
-			// Diagonal exists
-			if(x1 < x2) {
-				// x1 is higher on board
-				if(y1 > y2) {
-					// Diagonally right
-					if(wBoard[x1][y1] == 'L') {
-						return true; // Wall exists
-					} else {
-						return false; // No wall
-					}
-				} else {
-					// Diagonally left
-					return false; // No wall
-				}
-			} else {
-				// x1 is lower on board
-				if(y1 < y2) {
-					// Diagonally left
-					if(wBoard[x2][y2] == 'L') {
-						return true; // Wall exists
-					} else {
-						return false; // No wall
-					}
-				} else {
-					// Diagonally on right
-					return false;
-				}
-			}
-		} else {
-			return false; // No diagonal
-		}
-	}
-
 	/**
 	* Add a wall at the given square
-	* @param square The square to add the wall to
+	* @param square The square index to add the wall to
 	* @param wall The type of wall to add
 	* @return True is successful
 	*/
-	private boolean addWall(String square, char wall) {
+	private boolean addWall(int square, char wall) {
 		/*
 		*	WALLS
 		*	| west
 		*	_ south
 		*	L south west combo
 		*/
-		int xPos = getSquare(square)[0];
-		int yPos = getSquare(square)[1];
 		if(activePlayer == 'w') {
 			if(whiteWallRemain > 0) {
-				if(wBoard[xPos][yPos] != '.') {
-					// Wall already exists
-					if(wBoard[xPos][yPos] != wall) {
-						wBoard[xPos][yPos] = 'L';
-					} else {
-						wBoard[xPos][yPos] = wall; // A waste because a wall is already there
-					}
-				} else {
-					wBoard[xPos][yPos] = wall; // Add
-				}
-				whiteWallRemain--;
-				if(wall == 'L') {
-					whiteWallRemain--; // Remove second wall
-				}
+				makeMove(Move.create(Move.WALL, square, square, Move.wallType(wall)));
+				journal.commit();
 				System.out.print("INFO: [");
 				if(activePlayer == 'w') {
 					System.out.print("white");
@@ -2076,20 +2005,8 @@ public class Chess {
 			}
 		} else {
 			if(blackWallRemain > 0) {
-				if(wBoard[xPos][yPos] != '.') {
-					// Wall already exists
-					if(wBoard[xPos][yPos] != wall) {
-						wBoard[xPos][yPos] = 'L';
-					} else {
-						wBoard[xPos][yPos] = wall; // A waste because a wall is already there
-					}
-				} else {
-					wBoard[xPos][yPos] = wall; // Add
-				}
-				blackWallRemain--;
-				if(wall == 'L') {
-					blackWallRemain--; // Remove second wall
-				}
+				makeMove(Move.create(Move.WALL, square, square, Move.wallType(wall)));
+				journal.commit();
 				System.out.print("INFO: you have " + blackWallRemain);
 				if(blackWallRemain == 1) {
 					System.out.println(" wall remaining");
@@ -2106,13 +2023,13 @@ public class Chess {
 
 	/**
 	* Adds a mine or trap at the given square
-	* @param square The square to add the wall to
+	* @param square The square index to add the wall to
 	* @param mTrap The mine or trap to be added
 	* @return True if successful
 	*/
-	private boolean addMineTrap(String square, char mTrap) {
-		int xPos = getSquare(square)[0];
-		int yPos = getSquare(square)[1];
+	private boolean addMineTrap(int square, char mTrap) {
+		int xPos = square >>> 3;
+		int yPos = square & 7;
 		if(mTrap == 'D') {
 			if(xPos < 2 || xPos > 5) {
 				System.out.println("ERROR: traps can only be placed in ranks 3 - 6");
@@ -2149,54 +2066,28 @@ public class Chess {
 				return false;
 			}
 		}
-		if(oBoard[xPos][yPos] == '.') {
-			oBoard[xPos][yPos] = mTrap; // Just add it
-		} else {
-			if(oBoard[xPos][yPos] == 'D' || oBoard[xPos][yPos] == 'O') {
-				if(mTrap == 'M') {
-					oBoard[xPos][yPos] = 'X'; // Hidden mine/trap combo
-				} else {
-					oBoard[xPos][yPos] = mTrap; // Wasted trap door
-				}
-			} else {
-				// Already a mine
-				if(mTrap == 'D') {
-					oBoard[xPos][yPos] = 'X';
-				} else {
-					oBoard[xPos][yPos] = mTrap; // Wasted mine
-				}
-			}
-		}
-		if(mTrap == 'D') {
-			if(activePlayer == 'w') {
-				whiteTrap = true;
-			} else {
-				blackTrap = true;
-			}
-		} else {
-			if(activePlayer == 'w') {
-				whiteMine = true;
-			} else {
-				blackMine = true;
-			}
-		}
-		changePlayer();
+		makeMove(Move.create(mTrap == 'D' ? Move.TRAP : Move.MINE, square, square, 0));
+		journal.commit();
 		return true;
 	}
 
 	/**
 	* Drops pieces down trap doors and explodes mines 
 	* at if a pieces lands on the square
-	* @param sqr The square a piece just landed on
+	* @param sq The square index a piece just landed on
 	*/
-	private void activateObstacles(String sqr) {
-		int cordX = getSquare(sqr)[0];
-		int cordY = getSquare(sqr)[1];
+	private void activateObstacles(int sq) {
+		int cordX = sq >>> 3;
+		int cordY = sq & 7;
+		if(oBoard[cordX][cordY] == '.') {
+			return; // Nothing here
+		}
+		saveSquare(sq);
 		// TRAP DOOR
 		if(oBoard[cordX][cordY] == 'D' || oBoard[cordX][cordY] == 'O') {
-			board[cordX][cordY] = '.'; // Down the hole
+			position.setPiece(cordX, cordY, '.'); // Down the hole
 			if(oBoard[cordX][cordY] == 'D') {
-				oBoard[cordX][cordY] = 'O'; // Open trap door
+				position.setObstacle(cordX, cordY, 'O'); // Open trap door
 			}
 			wasTrapMine = 1;
 		}
@@ -2204,72 +2095,25 @@ public class Chess {
 		// MINES
 		if(oBoard[cordX][cordY] == 'M' || oBoard[cordX][cordY] == 'X') {
 			// Explode, if no wall then blow it up
-			if((cordY + 1) < oBoard.length) {
-				if(!wallExists(sqr, getSquare(cordX,cordY+1))) {
-					board[cordX][cordY+1] = '.';
-				}
-				if((cordX - 1) >= 0) {
-					if(!wallExists(sqr, getSquare(cordX-1, cordY+1))) {
-						board[cordX-1][cordY+1] = '.';
-					}
-				}
-				if((cordX + 1) < oBoard.length) {
-					if(!wallExists(sqr, getSquare(cordX+1, cordY+1))) {
-						board[cordX+1][cordY+1] = '.';
-					}
-				}
-			}
-			if((cordY - 1) >= 0) {
-				if(!wallExists(sqr, getSquare(cordX, cordY-1))) {
-					board[cordX][cordY-1] = '.';
-				}
-				if(cordX - 1 >= 0) {
-					if(!wallExists(sqr, getSquare(cordX-1, cordY-1))) {
-						board[cordX-1][cordY-1] = '.';
-					}
-				}
-				if(cordX + 1 < oBoard.length) {
-					if(!wallExists(sqr, getSquare(cordX+1, cordY-1))) {
-						board[cordX+1][cordY-1] = '.';
-					}
-				}
-			}
-			if((cordX - 1) >= 0) {
-				if(!wallExists(sqr, getSquare(cordX-1, cordY))) {
-					board[cordX-1][cordY] = '.';
-				}
-			}
-			if((cordX + 1) < oBoard.length) {
-				if(!wallExists(sqr, getSquare(cordX+1, cordY))) {
-					board[cordX+1][cordY] = '.';
-				}
+			long blast = AttackTables.blastSquares(sq, position);
+			while(blast != 0L) {
+				int victim = Long.numberOfTrailingZeros(blast);
+				blast &= blast - 1;
+				saveSquare(victim);
+				position.setPiece(victim >>> 3, victim & 7, '.');
 			}
 			// Remove Dead piece too
-			board[cordX][cordY] = '.';
+			position.setPiece(cordX, cordY, '.');
 			// Remove used mine
 			if(oBoard[cordX][cordY] == 'X') {
-				oBoard[cordX][cordY] = 'O'; // Still a trap door here
+				position.setObstacle(cordX, cordY, 'O'); // Still a trap door here
 			} else {
-				oBoard[cordX][cordY] = '.'; // Mine gone
+				position.setObstacle(cordX, cordY, '.'); // Mine gone
 			}
 			wasTrapMine = 2;
 		}
 	}
 
-	/**
-	* Determines if a square is valid
-	* @param bSquare The square to be tested
-	* @return The square's validity
-	*/
-	private boolean squareValid(String bSquare) {
-		int[] square = getSquare(bSquare);
-		if(square[0] == -1 || square[1] == -1) {
-			return false;
-		} else {
-			return true;
-		}
-	}
-
 	/**
 	* Returns the given square in chess notation
 	* @param x The X coordinate of the piece
@@ -2281,41 +2125,7 @@ public class Chess {
 			// Invalid location
 			return "xx";
 		}
-
-		String rtn = "";
-		switch(y) {
-			case 0:
-				rtn = "a";
-				break;
-			case 1:
-				rtn = "b";
-				break;
-			case 2:
-				rtn = "c";
-				break;
-			case 3:
-				rtn = "d";
-				break;
-			case 4:
-				rtn = "e";
-				break;
-			case 5:
-				rtn = "f";
-				break;
-			case 6:
-				rtn = "g";
-				break;
-			case 7:
-				rtn = "h";
-				break;
-			default:
-				rtn = "xx";
-				break;
-		}
-		if(!rtn.equals("xx")) {
-			rtn += (8 - x);
-		}
-		return rtn;
+		return Position.squareName(x * 8 + y);
 	}
 
 	/**
@@ -2379,11 +2189,15 @@ public class Chess {
 	* @param muv The last move played
 	*/
 	public void recordState(String muv) {
+		long key = getHashKey();
 		gameLog.add(muv);
-		boardState.add(new Storage(board, oBoard, wBoard, activePlayer, 
-			blackCheck, whiteCheck, hasMoved, gamePlaying, enpassantPawn, 
+		boardState.add(board, oBoard, wBoard, activePlayer,
+			blackCheck, whiteCheck, hasMoved, gamePlaying, enpassantSquare,
 			fiftyMoveCounter, whiteWallRemain, blackWallRemain, whiteMine,
-			blackMine, whiteTrap, blackTrap));
+			blackMine, whiteTrap, blackTrap, key);
+		if(!isSetupMove(muv)) {
+			repetitions.add(key);
+		}
 	}
 
 	/**
@@ -2394,86 +2208,44 @@ public class Chess {
 			System.out.println("ERROR: no restore points available");
 			return;
 		}
-		char[][] boardCopy = boardState.get(boardState.size() - 1).getBoard();
-		char[][] oBoardCopy = boardState.get(boardState.size() - 1).getOBoard();
-		char[][] wBoardCopy = boardState.get(boardState.size() - 1).getWBoard();
-		boolean[][] hasPlayedCopy = boardState.get(boardState.size() - 1).getHasPlayed();
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				board[i][j] = boardCopy[i][j];
-				oBoard[i][j] = oBoardCopy[i][j];
-				wBoard[i][j] = wBoardCopy[i][j];
-			}
-		}
-		for(int i = 0; i < hasPlayedCopy.length; i++) {
-			for(int j = 0; j < hasPlayedCopy[i].length; j++) {
-				hasMoved[i][j] = hasPlayedCopy[i][j];
-			}
-		}
-		activePlayer = boardState.get(boardState.size() - 1).getPlayer();
-		blackCheck = boardState.get(boardState.size() - 1).getBlackCheck();
-		whiteCheck = boardState.get(boardState.size() - 1).getWhiteCheck();
-		gamePlaying = boardState.get(boardState.size() - 1).getGamePlaying();
-		enpassantPawn = boardState.get(boardState.size() - 1).getEnPassPawn();
-		fiftyMoveCounter = boardState.get(boardState.size() - 1).getFiftyCounter();
-		whiteWallRemain = boardState.get(boardState.size() - 1).getWWRemain();
-		blackWallRemain = boardState.get(boardState.size() - 1).getBWRemain();
-		whiteMine = boardState.get(boardState.size() - 1).getWMine();
-		blackMine = boardState.get(boardState.size() - 1).getBMine();
-		whiteTrap = boardState.get(boardState.size() - 1).getWTrap();
-		blackTrap = boardState.get(boardState.size() - 1).getBTrap();
+		restoreLastState();
+		publishView();
+	}
+
+	/**
+	* Restores the last saved state without publishing the view, and the
+	* move before it as well if the last one was a pawn promotion
+	*/
+	private void restoreLastState() {
+		loadBoardState(boardState.get(boardState.size() - 1));
 		String savPoint = gameLog.get(gameLog.size() - 1);
-		boardState.remove(boardState.size() - 1);
-		gameLog.remove(gameLog.size() - 1);
+		deleteLastState();
 		if(savPoint.charAt(0) == '=') {
 			// Undo pawn promotion
-			restoreBoard();
+			if(boardState.size() == 0) {
+				System.out.println("ERROR: no restore points available");
+				return;
+			}
+			restoreLastState();
 		}
 	}
 
 	/**
-	* Restore the game to the given point
+	* Restore the game to the given point. <br>
+	* The history arena is cut in one step, the game log and the repetition
+	* counts take time in the number of plies removed
 	* @param pt The point to restore the game to
 	* @return True if restore successful
 	*/
 	public boolean restoreBoard(int pt) {
-		if(pt >= boardState.size()) {
+		if(pt < 0 || pt >= boardState.size()) {
 			System.out.println("ERROR: could not restore game");
 			return false;
 		}
-		char[][] boardCopy = boardState.get(pt).getBoard();
-		char[][] oBoardCopy = boardState.get(pt).getOBoard();
-		char[][] wBoardCopy = boardState.get(pt).getWBoard();
-		boolean[][] hasPlayedCopy = boardState.get(pt).getHasPlayed();
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[i].length; j++) {
-				board[i][j] = boardCopy[i][j];
-				oBoard[i][j] = oBoardCopy[i][j];
-				wBoard[i][j] = wBoardCopy[i][j];
-			}
-		}
-		for(int i = 0; i < hasPlayedCopy.length; i++) {
-			for(int j = 0; j < hasPlayedCopy[i].length; j++) {
-				hasMoved[i][j] = hasPlayedCopy[i][j];
-			}
-		}
-		activePlayer = boardState.get(pt).getPlayer();
-		blackCheck = boardState.get(pt).getBlackCheck();
-		whiteCheck = boardState.get(pt).getWhiteCheck();
-		gamePlaying = boardState.get(pt).getGamePlaying();
-		enpassantPawn = boardState.get(pt).getEnPassPawn();
-		fiftyMoveCounter = boardState.get(pt).getFiftyCounter();
-		whiteWallRemain = boardState.get(pt).getWWRemain();
-		blackWallRemain = boardState.get(pt).getBWRemain();
-		whiteMine = boardState.get(pt).getWMine();
-		blackMine = boardState.get(pt).getBMine();
-		whiteTrap = boardState.get(pt).getWTrap();
-		blackTrap = boardState.get(pt).getBTrap();
-		// Delete Everything after point
-		for(int i = pt; i < boardState.size(); i++) {
-			boardState.remove(boardState.size() - 1);
-			gameLog.remove(gameLog.size() - 1);
-		}
+		loadBoardState(boardState.get(pt));
+		// Delete everything from the point on
+		deleteStatesFrom(pt);
+		publishView();
 		return true;
 	}
 
@@ -2490,12 +2262,79 @@ public class Chess {
 		return boardState.get(pt);
 	}
 
+	/**
+	* Returns an immutable snapshot of the game at point x. <br>
+	* The snapshot stays valid when the game goes on or is taken back
+	* @param pt The point in the game log
+	* @return The snapshot of point x, null if not found
+	*/
+	public Snapshot getSnapshot(int pt) {
+		if(pt < 0 || pt >= boardState.size()) {
+			System.out.println("ERROR: board state could not be retrieved");
+			return null;
+		}
+		return boardState.getSnapshot(pt);
+	}
+
+	/**
+	* Returns an immutable snapshot of the current position, sharing the
+	* unchanged layers of the last saved state
+	* @return The snapshot
+	*/
+	public Snapshot getSnapshot() {
+		long[] record = new long[Storage.RECORD_SIZE];
+		Storage.write(record, 0, board, oBoard, wBoard, activePlayer,
+			blackCheck, whiteCheck, hasMoved, gamePlaying, enpassantSquare,
+			fiftyMoveCounter, whiteWallRemain, blackWallRemain, whiteMine,
+			blackMine, whiteTrap, blackTrap, getHashKey());
+		int last = boardState.size() - 1;
+		return new Snapshot(record, last + 1, last >= 0 ? boardState.getSnapshot(last) : null);
+	}
+
+	/**
+	* Returns the view of the game published after the last move. <br>
+	* Safe to call from any thread while the game is played: the view is an
+	* immutable snapshot, replaced (not changed) by every move played, taken
+	* back or loaded. Moves tried with makeMove are not published
+	* @return The view, null if no board was set up yet
+	*/
+	public Snapshot getView() {
+		return view;
+	}
+
+	/**
+	* Publishes the current position as the view for other threads. <br>
+	* The view shares the unchanged layers of the one before it
+	*/
+	private void publishView() {
+		long[] record = new long[Storage.RECORD_SIZE];
+		Storage.write(record, 0, board, oBoard, wBoard, activePlayer,
+			blackCheck, whiteCheck, hasMoved, gamePlaying, enpassantSquare,
+			fiftyMoveCounter, whiteWallRemain, blackWallRemain, whiteMine,
+			blackMine, whiteTrap, blackTrap, getHashKey());
+		view = Snapshot.publish(record, boardState.size(), ++viewVersion, view);
+	}
+
 	/**
 	* This function sets the game to the saved state that is provided
 	* @param state The game state to restore
 	* @return True if the restoration process is successful
 	*/
 	public boolean setBoardState(Storage state) {
+		if(!loadBoardState(state)) {
+			return false;
+		}
+		publishView();
+		return true;
+	}
+
+	/**
+	* Sets the game to a saved state without publishing the view, so the
+	* caller can publish once the game log and saved states match it
+	* @param state The game state to restore
+	* @return True if the restoration process is successful
+	*/
+	private boolean loadBoardState(Storage state) {
 		if(state == null) {
 			return false;
 		}
@@ -2505,9 +2344,9 @@ public class Chess {
 		boolean[][] hasPlayedCopy = state.getHasPlayed();
 		for(int i = 0; i < board.length; i++) {
 			for(int j = 0; j < board[i].length; j++) {
-				board[i][j] = boardCopy[i][j];
-				oBoard[i][j] = oBoardCopy[i][j];
-				wBoard[i][j] = wBoardCopy[i][j];
+				position.setPiece(i, j, boardCopy[i][j]);
+				position.setObstacle(i, j, oBoardCopy[i][j]);
+				position.setWall(i, j, wBoardCopy[i][j]);
 			}
 		}
 		for(int i = 0; i < hasPlayedCopy.length; i++) {
@@ -2519,7 +2358,7 @@ public class Chess {
 		blackCheck = state.getBlackCheck();
 		whiteCheck = state.getWhiteCheck();
 		gamePlaying = state.getGamePlaying();
-		enpassantPawn = state.getEnPassPawn();
+		enpassantSquare = Move.parseSquare(state.getEnPassPawn(), 0);
 		fiftyMoveCounter = state.getFiftyCounter();
 		whiteWallRemain = state.getWWRemain();
 		blackWallRemain = state.getBWRemain();
@@ -2537,8 +2376,32 @@ public class Chess {
 		if(boardState.size() == 0) {
 			return; // Nothing to delete
 		}
-		boardState.remove(boardState.size() - 1);
-		gameLog.remove(gameLog.size() - 1);
+		long key = boardState.getHashKey(boardState.size() - 1);
+		boardState.removeLast();
+		String muv = gameLog.remove(gameLog.size() - 1);
+		if(!isSetupMove(muv)) {
+			repetitions.remove(key);
+		}
+	}
+
+	/**
+	* Deletes the saved states and game log entries from the given point on. <br>
+	* GameHistory.truncate is O(1), the repetition counts and the game log
+	* tail are O(k) in the k states deleted
+	* @param pt The index of the first state to delete
+	*/
+	private void deleteStatesFrom(int pt) {
+		int size = boardState.size();
+		if(pt < 0 || pt >= size) {
+			return;
+		}
+		for(int i = pt; i < size; i++) {
+			if(!isSetupMove(gameLog.get(i))) {
+				repetitions.remove(boardState.getHashKey(i));
+			}
+		}
+		boardState.truncate(pt);
+		gameLog.subList(pt, size).clear();
 	}
 
 	/**
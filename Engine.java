@@ -0,0 +1,802 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+* This class searches for the best move of the player to move (computer opponent). <br>
+* It runs a negamax alpha-beta search with iterative deepening on a private
+* copy of the game, so the game itself is never changed. Every move is
+* played with makeMove, so trap doors, mine blasts and walls work in the
+* search just as they do in the game. At the end of the search captures and
+* moves onto mines and trap doors are played out (quiescence search), so a
+* capture that lands on a mine is not misjudged. Captures are searched first, then
+* killer moves and then the quiet moves with the best history. Results are
+* kept in a transposition table, so positions reached again through another
+* move order (Eg. a wall placed before or after a piece move) are not searched
+* again. The search stops at a depth or time budget, whichever comes first.
+*/
+public class Engine {
+	public static final int MATE = 30000; // Score of a lost king at the root
+	private static final int INFINITY = 32000; // Bigger than any score
+	private static final int MAX_PLY = 64; // Deepest supported search
+	private static final int DEFAULT_HASH_MB = 16; // Size of the transposition table if none is given
+	private static final int CHECK_NODES = 1023; // The clock is checked every 1024 nodes
+	private static final int HASH_SCORE = 2000000; // Move ordering scores
+	private static final int CAPTURE_SCORE = 1000000;
+	private static final int PROMOTION_SCORE = 900000;
+	private static final int KILLER_SCORE = 800000;
+	private static final int HISTORY_LIMIT = 700000; // Quiet moves stay below the killers
+	private static final int SEE_KING = 5000; // King value in the static exchange, losing it loses the game
+	private Chess board; // Private copy of the game that is searched
+	private TranspositionTable table; // Search results, can be shared with other engines
+	private MoveList[] lists; // Move buffer of each ply
+	private int[][] scores; // Ordering score of each move in the buffer of each ply
+	private int[][] killers; // Two quiet moves per ply that caused a cut-off
+	private int[][][] history; // Cut-off bonus of quiet moves by colour, from and to square
+	private long[] keys; // Position keys along the current search path
+	private int[] swap; // Gains of each capture in a static exchange
+	private MoveList rootMoves; // Legal moves at the root, best first after every iteration
+	private MoveList legalMoves; // Buffer for the legal moves of a game
+	private AtomicBoolean stopSignal; // Stop flag shared by the engines of a parallel search, null if none
+	private int firstDepth; // Depth of the first iteration
+	private boolean placements; // Search wall placements at the root
+	private boolean verbose; // Print a line after every iteration
+	private volatile boolean stopped; // Set when the search has to stop
+	private long nodes; // Positions visited
+	private long startTime; // Start of the search in nanoseconds
+	private long endTime; // End of the search in nanoseconds, 0 while it runs
+	private long deadline; // Time to stop in nanoseconds
+	private int bestMove; // Best move of the last finished iteration
+	private int bestScore; // Score of the best move
+	private int completedDepth; // Depth of the last finished iteration
+
+	/**
+	* Creates a search engine with its own transposition table
+	*/
+	public Engine() {
+		this(new TranspositionTable(DEFAULT_HASH_MB));
+	}
+
+	/**
+	* Creates a search engine that uses the given transposition table
+	* @param table The table, it can be shared by engines searching on other threads
+	*/
+	public Engine(TranspositionTable table) {
+		this.table = table;
+		board = new Chess();
+		lists = new MoveList[MAX_PLY + 1];
+		scores = new int[MAX_PLY + 1][];
+		for(int i = 0; i < lists.length; i++) {
+			lists[i] = new MoveList();
+			scores[i] = new int[256];
+		}
+		killers = new int[MAX_PLY + 1][2];
+		history = new int[2][64][64];
+		keys = new long[MAX_PLY + 1];
+		swap = new int[32];
+		rootMoves = new MoveList();
+		legalMoves = new MoveList();
+		stopSignal = null;
+		firstDepth = 1;
+		placements = false;
+		verbose = false;
+		stopped = false;
+	}
+
+	/**
+	* Sets if wall placements are searched as well as piece moves. <br>
+	* Walls do not end the turn, so they are only tried at the root
+	* @param placements True to search wall placements
+	*/
+	public void setPlacements(boolean placements) {
+		this.placements = placements;
+	}
+
+	/**
+	* Sets if a report line is printed after every iteration
+	* @param verbose True to print the reports
+	*/
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	* Asks a running search to stop. The best move found so far is returned
+	*/
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	* Sets a stop flag shared with other engines. The search stops soon after it is set
+	* @param stopSignal The flag, null for none
+	*/
+	public void setStopSignal(AtomicBoolean stopSignal) {
+		this.stopSignal = stopSignal;
+	}
+
+	/**
+	* Sets the depth of the first iteration. <br>
+	* Helper engines of a parallel search start at different depths, so they
+	* work ahead of each other and fill the shared table with different results
+	* @param firstDepth The first depth, at least 1
+	*/
+	public void setFirstDepth(int firstDepth) {
+		this.firstDepth = Math.max(1, firstDepth);
+	}
+
+	/**
+	* Returns the transposition table of the engine
+	* @return The table
+	*/
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	* Searches for the best move of the player to move
+	* @param game The game, it is only read
+	* @param maxDepth The deepest iteration, 0 for no depth limit
+	* @param millis The time budget in milliseconds, 0 for no time limit
+	* @return The best move, Move.NONE if the player has no move
+	*/
+	public int search(Chess game, int maxDepth, long millis) {
+		table.newSearch();
+		generateRootMoves(game, legalMoves);
+		return search(game, legalMoves, maxDepth, millis);
+	}
+
+	/**
+	* Searches the given moves of the player to move. <br>
+	* The game is only read, so several engines can search the same game
+	* on different threads as long as it does not change
+	* @param game The game
+	* @param moves The legal moves to choose from (see generateRootMoves), they are only read
+	* @param maxDepth The deepest iteration, 0 for no depth limit
+	* @param millis The time budget in milliseconds, 0 for no time limit
+	* @return The best move, Move.NONE if there are no moves
+	*/
+	public int search(Chess game, MoveList moves, int maxDepth, long millis) {
+		startTime = System.nanoTime();
+		endTime = 0;
+		deadline = millis > 0 ? startTime + millis * 1000000L : Long.MAX_VALUE;
+		stopped = false;
+		nodes = 0;
+		bestMove = Move.NONE;
+		bestScore = 0;
+		completedDepth = 0;
+		for(int i = 0; i < killers.length; i++) {
+			killers[i][0] = killers[i][1] = Move.NONE;
+		}
+		for(int c = 0; c < history.length; c++) {
+			for(int from = 0; from < 64; from++) {
+				java.util.Arrays.fill(history[c][from], 0);
+			}
+		}
+		rootMoves.clear();
+		for(int i = 0; i < moves.size(); i++) {
+			rootMoves.add(moves.get(i));
+		}
+		if(rootMoves.size() == 0) {
+			endTime = System.nanoTime();
+			return Move.NONE;
+		}
+		board.copyFrom(game);
+		int hashMove = TranspositionTable.getMove(table.probe(board.getHashKey()));
+		for(int i = 1; i < rootMoves.size(); i++) {
+			if(rootMoves.get(i) == hashMove) {
+				// Best move of an earlier search first
+				rootMoves.set(i, rootMoves.get(0));
+				rootMoves.set(0, hashMove);
+			}
+		}
+		bestMove = rootMoves.get(0);
+		if(maxDepth <= 0 || maxDepth >= MAX_PLY) {
+			maxDepth = MAX_PLY - 1;
+		}
+		for(int depth = Math.min(firstDepth, maxDepth); depth <= maxDepth; depth++) {
+			int score = searchRoot(depth);
+			if(stopped) {
+				break; // The unfinished iteration is not used
+			}
+			completedDepth = depth;
+			bestScore = score;
+			bestMove = rootMoves.get(0);
+			if(verbose) {
+				System.out.println(getInfo());
+			}
+			if(Math.abs(score) >= MATE - MAX_PLY) {
+				break; // Mate found
+			}
+		}
+		endTime = System.nanoTime();
+		return bestMove;
+	}
+
+	/**
+	* Returns the best move of the last search
+	* @return The encoded move, Move.NONE if there was none
+	*/
+	public int getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	* Returns the score of the best move from the view of the player to move
+	* @return The score in centipawns, near MATE for a forced win
+	*/
+	public int getScore() {
+		return bestScore;
+	}
+
+	/**
+	* Returns the depth of the last finished iteration
+	* @return The depth in plies
+	*/
+	public int getDepth() {
+		return completedDepth;
+	}
+
+	/**
+	* Returns the number of positions visited by the last search
+	* @return The node count
+	*/
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	* Returns the time taken by the last search
+	* @return The time in milliseconds
+	*/
+	public long getElapsed() {
+		return getNanos() / 1000000L;
+	}
+
+	/**
+	* Returns the speed of the last search
+	* @return The nodes searched per second
+	*/
+	public long getNodesPerSecond() {
+		long nanos = getNanos();
+		return nanos > 0 ? nodes * 1000000000L / nanos : nodes;
+	}
+
+	/**
+	* Returns the time taken by the last search, or so far if it still runs
+	* @return The time in nanoseconds
+	*/
+	private long getNanos() {
+		return (endTime != 0 ? endTime : System.nanoTime()) - startTime;
+	}
+
+	/**
+	* Returns a report of the last search
+	* @return The depth, score, node count, speed, time and best move on one line
+	*/
+	public String getInfo() {
+		return formatInfo(completedDepth, bestScore, nodes, getNanos(), table.getHitRate(), bestMove);
+	}
+
+	/**
+	* Returns a search report
+	* @param depth The depth of the last finished iteration
+	* @param score The score of the best move
+	* @param nodes The number of positions visited
+	* @param nanos The time taken in nanoseconds
+	* @param hitRate The transposition table hit rate in percent
+	* @param move The best move
+	* @return The depth, score, node count, speed, time and best move on one line
+	*/
+	public static String formatInfo(int depth, int score, long nodes, long nanos, double hitRate, int move) {
+		String scoreText;
+		if(Math.abs(score) >= MATE - MAX_PLY) {
+			int plies = MATE - Math.abs(score);
+			scoreText = "mate " + (score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+		} else {
+			scoreText = "cp " + score;
+		}
+		long nps = nanos > 0 ? nodes * 1000000000L / nanos : nodes;
+		return "info depth " + depth + " score " + scoreText + " nodes " + nodes
+			+ " nps " + nps + " time " + nanos / 1000000L
+			+ " hashhits " + String.format("%.1f", hitRate) + "%"
+			+ " pv " + (move == Move.NONE ? "-" : Move.toString(move));
+	}
+
+	/**
+	* Fills a list with the moves the engine may play in a game. <br>
+	* These are the legal piece moves and, if placements are searched, the walls.
+	* The game is changed and restored, so it must not be used by another thread
+	* @param game The game to move in
+	* @param list The list to fill, it is cleared first
+	*/
+	public void generateRootMoves(Chess game, MoveList list) {
+		MoveList moves = lists[0];
+		game.generateMoves(moves);
+		list.clear();
+		for(int i = 0; i < moves.size(); i++) {
+			if(game.isLegalMove(moves.get(i))) {
+				list.add(moves.get(i));
+			}
+		}
+		if(placements) {
+			moves.clear();
+			game.generatePlacements(moves);
+			for(int i = 0; i < moves.size(); i++) {
+				if(Move.getType(moves.get(i)) == Move.WALL) {
+					list.add(moves.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	* Searches every root move and puts the best one first
+	* @param depth The depth of the iteration
+	* @return The score of the best move
+	*/
+	private int searchRoot(int depth) {
+		int alpha = -INFINITY;
+		int bestIdx = 0;
+		keys[0] = board.getHashKey();
+		for(int i = 0; i < rootMoves.size(); i++) {
+			int m = rootMoves.get(i);
+			char mover = board.getPlayer();
+			board.makeMove(m);
+			int score;
+			if(board.getPlayer() == mover) {
+				score = alphaBeta(depth, alpha, INFINITY, 1); // A wall, the same player moves again
+			} else {
+				score = -alphaBeta(depth - 1, -INFINITY, -alpha, 1);
+			}
+			board.unmakeMove();
+			if(stopped) {
+				return alpha;
+			}
+			if(score > alpha) {
+				alpha = score;
+				bestIdx = i;
+			}
+		}
+		// Best move first for the next iteration, the others keep their order
+		int best = rootMoves.get(bestIdx);
+		for(int i = bestIdx; i > 0; i--) {
+			rootMoves.set(i, rootMoves.get(i - 1));
+		}
+		rootMoves.set(0, best);
+		table.store(keys[0], depth, TranspositionTable.EXACT, toTable(alpha, 0), best);
+		return alpha;
+	}
+
+	/**
+	* Searches a position with negamax alpha-beta
+	* @param depth The remaining depth
+	* @param alpha The score the player to move is already sure of
+	* @param beta The score the opponent is already sure of
+	* @param ply The distance from the root
+	* @return The score from the view of the player to move
+	*/
+	private int alphaBeta(int depth, int alpha, int beta, int ply) {
+		if(depth <= 0) {
+			return quiesce(alpha, beta, ply);
+		}
+		if(countNode()) {
+			return 0;
+		}
+		Position pos = board.getPosition();
+		int colour = board.getPlayer() == 'w' ? Position.WHITE : Position.BLACK;
+		if(pos.getKingSquare(colour) == -1) {
+			return -(MATE - ply); // King lost to a mine or trap door
+		}
+		if(pos.getKingSquare(colour ^ 1) == -1) {
+			return MATE - ply;
+		}
+		keys[ply] = board.getHashKey();
+		if(isRepetition(ply) || board.getFiftyMoveCounter() >= 50) {
+			return 0;
+		}
+		if(ply >= MAX_PLY) {
+			return Evaluation.evaluate(board);
+		}
+		long entry = table.probe(keys[ply]);
+		if(entry != 0L && TranspositionTable.getDepth(entry) >= depth) {
+			int score = fromTable(TranspositionTable.getScore(entry), ply);
+			int bound = TranspositionTable.getBound(entry);
+			if(bound == TranspositionTable.EXACT
+				|| (bound == TranspositionTable.LOWER && score >= beta)
+				|| (bound == TranspositionTable.UPPER && score <= alpha)) {
+				return score;
+			}
+		}
+		MoveList list = lists[ply];
+		board.generateMoves(list);
+		scoreMoves(list, ply, colour, TranspositionTable.getMove(entry));
+		int alphaStart = alpha;
+		int legal = 0;
+		int best = -INFINITY;
+		int bestHere = Move.NONE;
+		for(int i = 0; i < list.size(); i++) {
+			int m = pickMove(list, ply, i, list.size());
+			char mover = board.getPlayer();
+			board.makeMove(m);
+			if(board.isChecked(mover)) {
+				board.unmakeMove();
+				continue; // Leaves the king in check
+			}
+			legal++;
+			int score = -alphaBeta(depth - 1, -beta, -alpha, ply + 1);
+			board.unmakeMove();
+			if(stopped) {
+				return 0;
+			}
+			if(score > best) {
+				best = score;
+				bestHere = m;
+			}
+			if(score > alpha) {
+				alpha = score;
+				if(alpha >= beta) {
+					if(isQuiet(m)) {
+						addCutOff(m, ply, colour, depth);
+					}
+					break;
+				}
+			}
+		}
+		if(legal == 0) {
+			best = board.isChecked(board.getPlayer()) ? -(MATE - ply) : 0; // Checkmate or stalemate
+		}
+		int bound;
+		if(best >= beta) {
+			bound = TranspositionTable.LOWER;
+		} else if(best > alphaStart) {
+			bound = TranspositionTable.EXACT;
+		} else {
+			bound = TranspositionTable.UPPER;
+			bestHere = Move.NONE; // No move is known to be best
+		}
+		table.store(keys[ply], depth, bound, toTable(best, ply), bestHere);
+		return best;
+	}
+
+	/**
+	* Converts a score to be stored in the transposition table. <br>
+	* Mate scores are counted from the root, the table counts them from the position
+	* @param score The score
+	* @param ply The distance of the position from the root
+	* @return The score for the table
+	*/
+	private static int toTable(int score, int ply) {
+		if(score >= MATE - MAX_PLY) {
+			return score + ply;
+		}
+		if(score <= -(MATE - MAX_PLY)) {
+			return score - ply;
+		}
+		return score;
+	}
+
+	/**
+	* Converts a score from the transposition table
+	* @param score The stored score
+	* @param ply The distance of the position from the root
+	* @return The score counted from the root
+	*/
+	private static int fromTable(int score, int ply) {
+		if(score >= MATE - MAX_PLY) {
+			return score - ply;
+		}
+		if(score <= -(MATE - MAX_PLY)) {
+			return score + ply;
+		}
+		return score;
+	}
+
+	/**
+	* Searches the captures, queen promotions and moves onto known mines and
+	* trap doors until the position is quiet. <br>
+	* The player to move can also stop and keep the static score. Moves that
+	* lose material in the static exchange are left out
+	* @param alpha The score the player to move is already sure of
+	* @param beta The score the opponent is already sure of
+	* @param ply The distance from the root
+	* @return The score from the view of the player to move
+	*/
+	private int quiesce(int alpha, int beta, int ply) {
+		if(countNode()) {
+			return 0;
+		}
+		Position pos = board.getPosition();
+		int colour = board.getPlayer() == 'w' ? Position.WHITE : Position.BLACK;
+		if(pos.getKingSquare(colour) == -1) {
+			return -(MATE - ply);
+		}
+		if(pos.getKingSquare(colour ^ 1) == -1) {
+			return MATE - ply;
+		}
+		int best = Evaluation.evaluate(board);
+		if(best >= beta || ply >= MAX_PLY) {
+			return best;
+		}
+		if(best > alpha) {
+			alpha = best;
+		}
+		MoveList list = lists[ply];
+		board.generateMoves(list);
+		long obstacles = pos.getObstacles(Position.TRAP) | pos.getObstacles(Position.OPEN_TRAP)
+			| pos.getObstacles(Position.MINE) | pos.getObstacles(Position.MINE_TRAP);
+		if(scores[ply].length < list.size()) {
+			scores[ply] = new int[list.size() * 2];
+		}
+		int[] moveScores = scores[ply];
+		int count = 0;
+		for(int i = 0; i < list.size(); i++) {
+			// Keep the winning and even tactical moves, ordered by their exchange value
+			int m = list.get(i);
+			int type = Move.getType(m);
+			int to = Move.getTo(m);
+			boolean tactical = type == Move.EN_PASSANT
+				|| (type == Move.NORMAL && (pos.getPiece(to) != '.' || Move.getExtra(m) == Position.QUEEN
+				|| (obstacles & (1L << to)) != 0L));
+			if(!tactical) {
+				continue;
+			}
+			int gain = staticExchange(m);
+			if(Move.getExtra(m) == Position.QUEEN) {
+				gain += Evaluation.VALUES[Position.QUEEN] - Evaluation.VALUES[Position.PAWN];
+			}
+			if(gain >= 0) {
+				list.set(count, m);
+				moveScores[count] = gain;
+				count++;
+			}
+		}
+		for(int i = 0; i < count; i++) {
+			int m = pickMove(list, ply, i, count);
+			char mover = board.getPlayer();
+			board.makeMove(m);
+			if(board.isChecked(mover)) {
+				board.unmakeMove();
+				continue; // Leaves the king in check
+			}
+			int score = -quiesce(-beta, -alpha, ply + 1);
+			board.unmakeMove();
+			if(stopped) {
+				return 0;
+			}
+			if(score > best) {
+				best = score;
+				if(score > alpha) {
+					alpha = score;
+					if(alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	* Works out the material a move wins or loses on its square. <br>
+	* A move onto a trap door loses the piece. A move onto a mine ends the
+	* exchange at once: the blast takes the mover and the pieces of both
+	* colours next to the mine that no wall shields. Otherwise both players
+	* take back on the square with their cheapest piece while it pays
+	* @param m The encoded capture or move onto an obstacle
+	* @return The gain in centipawns for the player making the move
+	*/
+	private int staticExchange(int m) {
+		Position pos = board.getPosition();
+		int from = Move.getFrom(m);
+		int to = Move.getTo(m);
+		long toBit = 1L << to;
+		int colour = Position.colourOf(pos.getPiece(from));
+		int attackerValue = seeValue(Position.pieceIndex(pos.getPiece(from)) % 6);
+		int captured = 0;
+		long occupied = pos.getOccupied() ^ (1L << from);
+		if(Move.getType(m) == Move.EN_PASSANT) {
+			captured = Evaluation.VALUES[Position.PAWN];
+			occupied ^= 1L << (colour == Position.WHITE ? to + 8 : to - 8);
+		} else if(pos.getPiece(to) != '.') {
+			captured = seeValue(Position.pieceIndex(pos.getPiece(to)) % 6);
+		}
+		if(((pos.getObstacles(Position.MINE) | pos.getObstacles(Position.MINE_TRAP)) & toBit) != 0L) {
+			long blast = AttackTables.blastSquares(to, pos) & occupied;
+			return captured + blastValue(pos, blast, colour ^ 1) - blastValue(pos, blast, colour) - attackerValue;
+		}
+		if(((pos.getObstacles(Position.TRAP) | pos.getObstacles(Position.OPEN_TRAP)) & toBit) != 0L) {
+			return captured - attackerValue; // Down the trap door
+		}
+		int d = 0;
+		swap[0] = captured;
+		int side = colour ^ 1;
+		long attackers = AttackTables.attackersTo(to, occupied, pos) & occupied;
+		while(d < swap.length - 1) {
+			d++;
+			swap[d] = attackerValue - swap[d - 1]; // Score if the piece on the square is taken
+			if(Math.max(-swap[d - 1], swap[d]) < 0) {
+				break; // Neither side gains by going on
+			}
+			long sideAttackers = attackers & pos.getColour(side);
+			if(sideAttackers == 0L) {
+				break;
+			}
+			int type = Position.PAWN;
+			while((sideAttackers & pos.getPieces(side, type)) == 0L) {
+				type++;
+			}
+			long next = sideAttackers & pos.getPieces(side, type);
+			occupied ^= next & -next;
+			attackers = AttackTables.attackersTo(to, occupied, pos) & occupied; // Uncover pieces behind
+			attackerValue = seeValue(type);
+			side ^= 1;
+		}
+		while(--d > 0) {
+			swap[d - 1] = -Math.max(-swap[d - 1], swap[d]);
+		}
+		return swap[0];
+	}
+
+	/**
+	* Adds up the value of the pieces of a colour on the given squares
+	* @param pos The position
+	* @param squares The squares
+	* @param colour The colour index
+	* @return The value in centipawns
+	*/
+	private static int blastValue(Position pos, long squares, int colour) {
+		int value = 0;
+		for(int type = Position.PAWN; type <= Position.KING; type++) {
+			value += Long.bitCount(squares & pos.getPieces(colour, type)) * seeValue(type);
+		}
+		return value;
+	}
+
+	/**
+	* Returns the value of a piece type in the static exchange
+	* @param type The piece type
+	* @return The value in centipawns
+	*/
+	private static int seeValue(int type) {
+		return type == Position.KING ? SEE_KING : Evaluation.VALUES[type];
+	}
+
+	/**
+	* Counts a visited position and checks the clock and the stop flag
+	* @return True if the search has to stop
+	*/
+	private boolean countNode() {
+		nodes++;
+		if((nodes & CHECK_NODES) == 0
+			&& (System.nanoTime() > deadline || (stopSignal != null && stopSignal.get()))) {
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	/**
+	* Determines if the position at a ply already occurred on the search path
+	* @param ply The distance from the root
+	* @return True if the position is repeated
+	*/
+	private boolean isRepetition(int ply) {
+		for(int i = ply - 2; i >= 0; i -= 2) {
+			if(keys[i] == keys[ply]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	* Gives every move of a ply its ordering score. <br>
+	* Captures are ordered by the value of the taken piece and then by the
+	* cheapest attacker. Quiet moves onto a mine or trap door go last
+	* @param list The moves
+	* @param ply The distance from the root
+	* @param colour The colour index of the player to move
+	* @param hashMove The best move from the transposition table, searched first
+	*/
+	private void scoreMoves(MoveList list, int ply, int colour, int hashMove) {
+		Position pos = board.getPosition();
+		long obstacles = pos.getObstacles(Position.TRAP) | pos.getObstacles(Position.OPEN_TRAP)
+			| pos.getObstacles(Position.MINE) | pos.getObstacles(Position.MINE_TRAP);
+		if(scores[ply].length < list.size()) {
+			scores[ply] = new int[list.size() * 2];
+		}
+		int[] moveScores = scores[ply];
+		for(int i = 0; i < list.size(); i++) {
+			int m = list.get(i);
+			int type = Move.getType(m);
+			int from = Move.getFrom(m);
+			int to = Move.getTo(m);
+			int attacker = Position.pieceIndex(pos.getPiece(from)) % 6;
+			if(m == hashMove && hashMove != Move.NONE) {
+				moveScores[i] = HASH_SCORE;
+			} else if(type == Move.EN_PASSANT) {
+				moveScores[i] = CAPTURE_SCORE + Evaluation.VALUES[Position.PAWN] * 16;
+			} else if(type == Move.NORMAL && pos.getPiece(to) != '.') {
+				int victim = Position.pieceIndex(pos.getPiece(to)) % 6;
+				moveScores[i] = CAPTURE_SCORE + Evaluation.VALUES[victim] * 16 - attacker;
+			} else if(type == Move.NORMAL && Move.getExtra(m) != 0) {
+				moveScores[i] = PROMOTION_SCORE + Move.getExtra(m);
+			} else if(m == killers[ply][0]) {
+				moveScores[i] = KILLER_SCORE + 1;
+			} else if(m == killers[ply][1]) {
+				moveScores[i] = KILLER_SCORE;
+			} else if(type == Move.NORMAL && (obstacles & (1L << to)) != 0L) {
+				moveScores[i] = -Evaluation.VALUES[attacker] - 1; // The piece is lost
+			} else {
+				moveScores[i] = history[colour][from][to];
+			}
+		}
+	}
+
+	/**
+	* Moves the best scored of the remaining moves to the given index
+	* @param list The moves
+	* @param ply The distance from the root
+	* @param idx The index to fill
+	* @param count The number of moves to pick from
+	* @return The move at the index
+	*/
+	private int pickMove(MoveList list, int ply, int idx, int count) {
+		int[] moveScores = scores[ply];
+		int best = idx;
+		for(int i = idx + 1; i < count; i++) {
+			if(moveScores[i] > moveScores[best]) {
+				best = i;
+			}
+		}
+		if(best != idx) {
+			int m = list.get(best);
+			list.set(best, list.get(idx));
+			list.set(idx, m);
+			int s = moveScores[best];
+			moveScores[best] = moveScores[idx];
+			moveScores[idx] = s;
+		}
+		return list.get(idx);
+	}
+
+	/**
+	* Determines if a move neither captures nor promotes
+	* @param m The encoded move
+	* @return True for quiet moves and castling
+	*/
+	private boolean isQuiet(int m) {
+		int type = Move.getType(m);
+		if(type == Move.EN_PASSANT) {
+			return false;
+		}
+		if(type != Move.NORMAL) {
+			return true;
+		}
+		return Move.getExtra(m) == 0 && board.getPosition().getPiece(Move.getTo(m)) == '.';
+	}
+
+	/**
+	* Remembers a quiet move that caused a cut-off as a killer and in the history
+	* @param m The encoded move
+	* @param ply The distance from the root
+	* @param colour The colour index of the player to move
+	* @param depth The remaining depth
+	*/
+	private void addCutOff(int m, int ply, int colour, int depth) {
+		if(killers[ply][0] != m) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = m;
+		}
+		int[] counts = history[colour][Move.getFrom(m)];
+		counts[Move.getTo(m)] += depth * depth;
+		if(counts[Move.getTo(m)] > HISTORY_LIMIT) {
+			// Halve all the counts so they stay below the killers
+			for(int c = 0; c < history.length; c++) {
+				for(int from = 0; from < 64; from++) {
+					for(int to = 0; to < 64; to++) {
+						history[c][from][to] /= 2;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,375 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+* This class answers engine commands read from standard input, one per
+* line, in the spirit of the UCI protocol. <br>
+* It is meant for scripts: nothing is printed but the replies, and one
+* running program can analyse any number of positions. A search runs on
+* its own thread and prints an info line after every iteration, so the
+* stop command can end it at any time. The commands are: <br>
+* obstacle, isready, newgame, quit <br>
+* setoption name [Threads|Hash|Placements] value [x] <br>
+* position [startpos|board [Line 1]/[Line 2]/.../[Line 9]] [moves [Move 1] [Move 2] ...] <br>
+* go [depth x] [movetime x] [infinite], stop <br>
+* perft [x], eval
+*/
+public class EngineProtocol {
+	private static final int MAX_PERFT_DEPTH = 64; // Deepest perft count
+	private Chess game; // The position set up by the last position command
+	private TranspositionTable table; // Table kept between searches
+	private ParallelSearch search; // Search of the running or last go command, null until the first go
+	private ExecutorService searcher; // Thread that runs the searches
+	private Future<?> running; // The running search, null if none ran yet
+	private int threads; // Number of search threads
+	private int hashMb; // Size of the transposition table in megabytes
+	private boolean placements; // Search and count wall placements as moves
+
+	/**
+	* Creates a protocol handler at the starting position
+	*/
+	public EngineProtocol() {
+		game = new Chess();
+		threads = 1;
+		hashMb = 16;
+		placements = false;
+		table = new TranspositionTable(hashMb);
+		searcher = Executors.newSingleThreadExecutor();
+		running = null;
+		search = null;
+	}
+
+	/**
+	* Reads and answers commands until quit or the end of the input
+	*/
+	public void run() {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(!command(line.trim())) {
+					break;
+				}
+			}
+		} catch(IOException ex) {
+			System.out.println("ERROR: input could not be read");
+		}
+		stopSearch();
+		searcher.shutdown();
+		if(search != null) {
+			search.shutdown();
+		}
+	}
+
+	/**
+	* Answers one command
+	* @param line The command line
+	* @return False if the command was quit
+	*/
+	public boolean command(String line) {
+		if(line.isEmpty()) {
+			return true;
+		}
+		String[] cmd = line.split("\\s+");
+		switch(cmd[0]) {
+			case "obstacle":
+				System.out.println("id name ObstacleChess");
+				System.out.println("option name Threads type spin default 1 min 1 max 256");
+				System.out.println("option name Hash type spin default 16 min 1 max 4096");
+				System.out.println("option name Placements type check default false");
+				System.out.println("obstacleok");
+				break;
+			case "isready":
+				System.out.println("readyok");
+				break;
+			case "quit":
+				return false;
+			case "stop":
+				stopSearch();
+				break;
+			case "newgame":
+				if(!checkIdle()) {
+					break;
+				}
+				table.clear();
+				game = new Chess();
+				break;
+			case "setoption":
+				if(checkIdle()) {
+					setOption(cmd);
+				}
+				break;
+			case "position":
+				if(checkIdle()) {
+					// The game prints messages of its own while the moves are played
+					PrintStream out = System.out;
+					ByteArrayOutputStream messages = new ByteArrayOutputStream();
+					System.setOut(new PrintStream(messages, true));
+					try {
+						setPosition(line, cmd);
+					} finally {
+						System.setOut(out);
+					}
+					printMessages(messages.toString());
+				}
+				break;
+			case "go":
+				if(checkIdle()) {
+					go(cmd);
+				}
+				break;
+			case "perft":
+				if(checkIdle()) {
+					perft(cmd);
+				}
+				break;
+			case "eval":
+				if(checkIdle()) {
+					System.out.println("eval cp " + Evaluation.evaluate(game) + " side " + game.getPlayer());
+				}
+				break;
+			default:
+				System.out.println("ERROR: unknown command " + cmd[0]);
+		}
+		return true;
+	}
+
+	/**
+	* Changes an option: setoption name [Name] value [Value]
+	* @param cmd The command words
+	*/
+	private void setOption(String[] cmd) {
+		if(cmd.length != 5 || !cmd[1].equals("name") || !cmd[3].equals("value")) {
+			System.out.println("ERROR: usage setoption name [Name] value [Value]");
+			return;
+		}
+		try {
+			switch(cmd[2].toLowerCase()) {
+				case "threads":
+					int newThreads = Integer.parseInt(cmd[4]);
+					if(newThreads < 1) {
+						System.out.println("ERROR: at least one thread is needed");
+						return;
+					}
+					threads = newThreads;
+					resetSearch();
+					break;
+				case "hash":
+					int newHash = Integer.parseInt(cmd[4]);
+					if(newHash < 1) {
+						System.out.println("ERROR: hash size must be at least 1");
+						return;
+					}
+					hashMb = newHash;
+					table = new TranspositionTable(hashMb);
+					resetSearch();
+					break;
+				case "placements":
+					placements = Boolean.parseBoolean(cmd[4]);
+					break;
+				default:
+					System.out.println("ERROR: unknown option " + cmd[2]);
+			}
+		} catch(NumberFormatException ex) {
+			System.out.println("ERROR: invalid number " + cmd[4]);
+		}
+	}
+
+	/**
+	* Sets up a position from the start or a board and plays a move list. <br>
+	* The board is the text of a board file with a / between the lines.
+	* The position is only changed if the board and every move are valid
+	* @param line The command line
+	* @param cmd The command words
+	*/
+	private void setPosition(String line, String[] cmd) {
+		if(cmd.length < 2) {
+			System.out.println("ERROR: usage position [startpos|board [Board]] [moves [Moves]]");
+			return;
+		}
+		Chess newGame = new Chess();
+		int movesAt = line.indexOf(" moves");
+		if(cmd[1].equals("board")) {
+			int boardAt = line.indexOf("board") + 5;
+			String board = movesAt == -1 ? line.substring(boardAt) : line.substring(boardAt, movesAt);
+			if(!newGame.loadBoard(board.trim().replace('/', '\n'))) {
+				return;
+			}
+		} else if(!cmd[1].equals("startpos")) {
+			System.out.println("ERROR: unknown position " + cmd[1]);
+			return;
+		}
+		if(movesAt != -1) {
+			String[] moves = line.substring(movesAt + 6).trim().split("\\s+");
+			for(int i = 0; i < moves.length; i++) {
+				if(!moves[i].isEmpty() && !newGame.move(moves[i])) {
+					System.out.println("ERROR: position not set up, move " + moves[i] + " failed");
+					return;
+				}
+			}
+		}
+		game = newGame;
+	}
+
+	/**
+	* Starts a search: go [depth x] [movetime x] [infinite]. <br>
+	* Without a limit the search runs until stop
+	* @param cmd The command words
+	*/
+	private void go(String[] cmd) {
+		int depth = 0;
+		long millis = 0;
+		try {
+			for(int i = 1; i < cmd.length; i++) {
+				if(cmd[i].equals("depth") && i + 1 < cmd.length) {
+					depth = Integer.parseInt(cmd[++i]);
+				} else if(cmd[i].equals("movetime") && i + 1 < cmd.length) {
+					millis = Long.parseLong(cmd[++i]);
+				} else if(!cmd[i].equals("infinite")) {
+					System.out.println("ERROR: unknown go option " + cmd[i]);
+					return;
+				}
+			}
+		} catch(NumberFormatException ex) {
+			System.out.println("ERROR: invalid number " + ex.getMessage());
+			return;
+		}
+		if(depth < 0 || millis < 0) {
+			System.out.println("ERROR: invalid search limit");
+			return;
+		}
+		if(search == null) {
+			search = new ParallelSearch(threads, table);
+			search.setVerbose(true);
+		}
+		search.setPlacements(placements);
+		final Chess searched = game;
+		final int maxDepth = depth;
+		final long budget = millis;
+		running = searcher.submit(new Runnable() {
+			@Override
+			public void run() {
+				int best = search.search(searched, maxDepth, budget);
+				if(search.getMainDepth() == 0 || search.getDepth() > search.getMainDepth()) {
+					System.out.println(search.getInfo()); // Not printed by the reports
+				}
+				System.out.println("bestmove " + (best == Move.NONE ? "none" : Move.toString(best)));
+			}
+		});
+	}
+
+	/**
+	* Counts the move paths of the position and prints the count below
+	* each legal first move as an info line: perft [x]
+	* @param cmd The command words
+	*/
+	private void perft(String[] cmd) {
+		int depth;
+		try {
+			depth = Integer.parseInt(cmd.length > 1 ? cmd[1] : "");
+		} catch(NumberFormatException ex) {
+			System.out.println("ERROR: usage perft [Depth]");
+			return;
+		}
+		if(depth < 1 || depth > MAX_PERFT_DEPTH) {
+			System.out.println("ERROR: depth must be between 1 and " + MAX_PERFT_DEPTH);
+			return;
+		}
+		long start = System.nanoTime();
+		Perft perft = new Perft(game, placements, null);
+		MoveList moves = new MoveList();
+		game.generateMoves(moves);
+		if(placements) {
+			game.generatePlacements(moves);
+		}
+		long total = 0;
+		for(int i = 0; i < moves.size(); i++) {
+			int m = moves.get(i);
+			if(!Perft.isLegal(game, m)) {
+				continue;
+			}
+			game.makeMove(m);
+			long nodes = perft.count(depth - 1);
+			game.unmakeMove();
+			total += nodes;
+			System.out.println("info move " + Move.toString(m) + Perft.promotionSuffix(m) + " nodes " + nodes);
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.println("perft depth " + depth + " nodes " + total + " time " + nanos / 1000000L
+			+ " nps " + (nanos > 0 ? total * 1000000000L / nanos : total));
+	}
+
+	/**
+	* Prints the messages of the game, errors as they are and the others as info strings
+	* @param messages The printed lines
+	*/
+	private void printMessages(String messages) {
+		String[] lines = messages.split("\\r?\\n");
+		for(int i = 0; i < lines.length; i++) {
+			if(lines[i].startsWith("ERROR")) {
+				System.out.println(lines[i]);
+			} else if(!lines[i].isEmpty()) {
+				System.out.println("info string " + lines[i]);
+			}
+		}
+	}
+
+	/**
+	* Determines if a search is running
+	* @return True while a go command has not printed its best move
+	*/
+	private boolean isSearching() {
+		return running != null && !running.isDone();
+	}
+
+	/**
+	* Prints an error if a search is running, as the position must not change during a search
+	* @return True if no search is running
+	*/
+	private boolean checkIdle() {
+		if(isSearching()) {
+			System.out.println("ERROR: search is running, send stop first");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Stops the running search and waits for its best move. <br>
+	* The stop is repeated, as a search that has not started yet clears it
+	*/
+	private void stopSearch() {
+		while(isSearching()) {
+			search.stop();
+			try {
+				running.get(10, TimeUnit.MILLISECONDS);
+			} catch(TimeoutException ex) {
+				// Not stopped yet
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch(ExecutionException ex) {
+				System.out.println("ERROR: search failed " + ex.getCause());
+			}
+		}
+	}
+
+	/**
+	* Drops the search so the next go uses the new threads and table
+	*/
+	private void resetSearch() {
+		if(search != null) {
+			search.shutdown();
+			search = null;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/**
+* This class scores positions for the engine. <br>
+* The material and piece-square values are added up by Position every
+* time a piece is placed or removed, so they cost nothing here. The other
+* terms look at the variant: sliding pieces that walls hold back have
+* fewer moves, pieces next to a live mine can be blown up and walls left
+* to place are worth keeping. Scores are in centipawns, White minus Black,
+* until the last step turns them to the view of the player to move.
+*/
+public class Evaluation {
+	public static final int[] VALUES = {100, 320, 330, 500, 900, 0}; // Piece values by piece type
+	private static final int[] MOBILITY = {0, 4, 5, 3, 2, 0}; // Value of each reachable square by piece type
+	private static final int MINE_SHARE = 8; // A piece next to a mine loses this share of its value
+	private static final int KING_MINE_PENALTY = 60; // Penalty for a king next to a mine
+	private static final int WALL_VALUE = 15; // Value of a wall that can still be placed
+	public static final int[][] PIECE_SQUARE = new int[12][64]; // Value plus square bonus by piece index, negative for black
+	private static final int[][] SQUARE_BONUS = { // Bonus by piece type, from White's view with a8 first
+		{ // Pawn
+			 0,   0,   0,   0,   0,   0,   0,   0,
+			50,  50,  50,  50,  50,  50,  50,  50,
+			10,  10,  20,  30,  30,  20,  10,  10,
+			 5,   5,  10,  25,  25,  10,   5,   5,
+			 0,   0,   0,  20,  20,   0,   0,   0,
+			 5,  -5, -10,   0,   0, -10,  -5,   5,
+			 5,  10,  10, -20, -20,  10,  10,   5,
+			 0,   0,   0,   0,   0,   0,   0,   0
+		}, { // Knight
+			-50, -40, -30, -30, -30, -30, -40, -50,
+			-40, -20,   0,   0,   0,   0, -20, -40,
+			-30,   0,  10,  15,  15,  10,   0, -30,
+			-30,   5,  15,  20,  20,  15,   5, -30,
+			-30,   0,  15,  20,  20,  15,   0, -30,
+			-30,   5,  10,  15,  15,  10,   5, -30,
+			-40, -20,   0,   5,   5,   0, -20, -40,
+			-50, -40, -30, -30, -30, -30, -40, -50
+		}, { // Bishop
+			-20, -10, -10, -10, -10, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,  10,  10,   5,   0, -10,
+			-10,   5,   5,  10,  10,   5,   5, -10,
+			-10,   0,  10,  10,  10,  10,   0, -10,
+			-10,  10,  10,  10,  10,  10,  10, -10,
+			-10,   5,   0,   0,   0,   0,   5, -10,
+			-20, -10, -10, -10, -10, -10, -10, -20
+		}, { // Rook
+			 0,   0,   0,   0,   0,   0,   0,   0,
+			 5,  10,  10,  10,  10,  10,  10,   5,
+			-5,   0,   0,   0,   0,   0,   0,  -5,
+			-5,   0,   0,   0,   0,   0,   0,  -5,
+			-5,   0,   0,   0,   0,   0,   0,  -5,
+			-5,   0,   0,   0,   0,   0,   0,  -5,
+			-5,   0,   0,   0,   0,   0,   0,  -5,
+			 0,   0,   0,   5,   5,   0,   0,   0
+		}, { // Queen
+			-20, -10, -10,  -5,  -5, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,   5,   5,   5,   0, -10,
+			 -5,   0,   5,   5,   5,   5,   0,  -5,
+			  0,   0,   5,   5,   5,   5,   0,  -5,
+			-10,   5,   5,   5,   5,   5,   0, -10,
+			-10,   0,   5,   0,   0,   0,   0, -10,
+			-20, -10, -10,  -5,  -5, -10, -10, -20
+		}, { // King
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-20, -30, -30, -40, -40, -30, -30, -20,
+			-10, -20, -20, -20, -20, -20, -20, -10,
+			 20,  20,   0,   0,   0,   0,  20,  20,
+			 20,  30,  10,   0,   0,  10,  30,  20
+		}
+	};
+
+	static {
+		for(int type = 0; type < 6; type++) {
+			for(int sq = 0; sq < 64; sq++) {
+				PIECE_SQUARE[type][sq] = VALUES[type] + SQUARE_BONUS[type][sq];
+				// Black uses the table upside down
+				PIECE_SQUARE[6 + type][sq] = -(VALUES[type] + SQUARE_BONUS[type][sq ^ 56]);
+			}
+		}
+	}
+
+	/**
+	* Scores a position from the view of the player to move
+	* @param game The game
+	* @return The score in centipawns
+	*/
+	public static int evaluate(Chess game) {
+		Position pos = game.getPosition();
+		int score = pos.getScore();
+		score += mobility(pos, Position.WHITE) - mobility(pos, Position.BLACK);
+		score += minePenalty(pos, Position.BLACK) - minePenalty(pos, Position.WHITE);
+		score += WALL_VALUE * (Math.max(0, game.getWhiteWallRemain()) - Math.max(0, game.getBlackWallRemain()));
+		return game.getPlayer() == 'w' ? score : -score;
+	}
+
+	/**
+	* Scores the moves of the knights and sliding pieces of a colour. <br>
+	* Walls stop the sliding pieces, so a walled in piece scores less
+	* @param pos The position
+	* @param colour The colour index
+	* @return The mobility score
+	*/
+	private static int mobility(Position pos, int colour) {
+		long occupied = pos.getOccupied();
+		long notOwn = ~pos.getColour(colour);
+		int score = 0;
+		for(int type = Position.KNIGHT; type <= Position.QUEEN; type++) {
+			long pieces = pos.getPieces(colour, type);
+			while(pieces != 0L) {
+				int sq = Long.numberOfTrailingZeros(pieces);
+				pieces &= pieces - 1;
+				long moves;
+				if(type == Position.KNIGHT) {
+					moves = AttackTables.KNIGHT[sq]; // Knights jump over walls
+				} else if(type == Position.BISHOP) {
+					moves = AttackTables.bishopAttacks(sq, occupied, pos);
+				} else if(type == Position.ROOK) {
+					moves = AttackTables.rookAttacks(sq, occupied, pos);
+				} else {
+					moves = AttackTables.rookAttacks(sq, occupied, pos) | AttackTables.bishopAttacks(sq, occupied, pos);
+				}
+				score += MOBILITY[type] * Long.bitCount(moves & notOwn);
+			}
+		}
+		return score;
+	}
+
+	/**
+	* Scores the pieces of a colour that a live mine would blow up
+	* @param pos The position
+	* @param colour The colour index
+	* @return The penalty, 0 if no piece is in danger
+	*/
+	private static int minePenalty(Position pos, int colour) {
+		long mines = pos.getObstacles(Position.MINE) | pos.getObstacles(Position.MINE_TRAP);
+		if(mines == 0L) {
+			return 0;
+		}
+		long danger = 0L;
+		while(mines != 0L) {
+			int sq = Long.numberOfTrailingZeros(mines);
+			mines &= mines - 1;
+			danger |= AttackTables.blastSquares(sq, pos);
+		}
+		int penalty = 0;
+		for(int type = Position.PAWN; type < Position.KING; type++) {
+			penalty += Long.bitCount(pos.getPieces(colour, type) & danger) * VALUES[type] / MINE_SHARE;
+		}
+		if((pos.getPieces(colour, Position.KING) & danger) != 0L) {
+			penalty += KING_MINE_PENALTY;
+		}
+		return penalty;
+	}
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+
+/**
+* This class keeps the saved states of a game, one per ply. <br>
+* Most plies change a few squares, so a state is saved as the squares
+* that differ from the state before it, plus its game flags and position
+* key. Every KEYFRAME_INTERVAL plies the whole board is saved instead. A
+* past state is rebuilt by copying the keyframe at or before it and
+* replaying the changes up to it. Everything lives in one growable long
+* array, and a Storage is only created when a caller asks for one state. <br>
+* Snapshots are built on request by replaying the changes, each sharing
+* the unchanged layers of the snapshot before it, and are kept until the
+* ply is removed. <br>
+* An entry is a header long (-1 for a keyframe, else the number of changed
+* squares), the flags and the key, followed by either the boards of a
+* Storage record or the changed squares packed four to a long.
+*/
+public class GameHistory {
+	private static final int KEYFRAME_INTERVAL = 32; // Plies between full boards
+	private static final int CAPACITY = 64; // Initial number of states
+	private static final int HEADER_SIZE = 3; // Header, flags and key
+	private long[] data; // The entries
+	private int dataSize; // Number of longs in use
+	private int[] offsets; // Index of each state's entry
+	private int size; // Number of states saved
+	private long[] last; // Full record of the last state, to find the changed squares
+	private boolean lastValid; // False if the last state was removed and last must be rebuilt
+	private long[] scratch; // Record of the state being saved or rebuilt
+	private Snapshot[] snapshots; // Snapshots built so far by ply, null if not built
+
+	/**
+	* Creates an empty history
+	*/
+	public GameHistory() {
+		data = new long[CAPACITY * 4];
+		offsets = new int[CAPACITY];
+		snapshots = new Snapshot[CAPACITY];
+		last = new long[Storage.RECORD_SIZE];
+		scratch = new long[Storage.RECORD_SIZE];
+		dataSize = 0;
+		size = 0;
+		lastValid = true;
+	}
+
+	/**
+	* Saves a state after the last one
+	* @param board The board to save
+	* @param oBoard The obstacles board to save
+	* @param wBoard The wall board to save
+	* @param player The current player of this state
+	* @param blackCheck The black check status
+	* @param whiteCheck The white check status
+	* @param hasMoved The hasMoved data for castling
+	* @param gamePlaying Gameplay status to save
+	* @param enpassantSquare The square of the en passant pawn, -1 if none
+	* @param fiftyCounter The fifty move counter to save
+	* @param wwRemain The white walls remaining to save
+	* @param bwRemain The black walls remaining to save
+	* @param wMine The white player's mine usage to save
+	* @param bMine The black player's mine usage to save
+	* @param wTrap The white player's trap usage to save
+	* @param bTrap The black player's trap usage to save
+	* @param hashKey The Zobrist key of the position to save
+	*/
+	public void add(char[][] board, char[][] oBoard, char[][] wBoard, char player,
+		boolean blackCheck, boolean whiteCheck, boolean[][] hasMoved, boolean gamePlaying,
+		int enpassantSquare, int fiftyCounter, int wwRemain, int bwRemain,
+		boolean wMine, boolean bMine, boolean wTrap, boolean bTrap, long hashKey) {
+		Storage.write(scratch, 0, board, oBoard, wBoard, player,
+			blackCheck, whiteCheck, hasMoved, gamePlaying, enpassantSquare, fiftyCounter,
+			wwRemain, bwRemain, wMine, bMine, wTrap, bTrap, hashKey);
+		if(size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			snapshots = Arrays.copyOf(snapshots, size * 2);
+		}
+		snapshots[size] = null; // Left over from a removed ply
+		ensureData(HEADER_SIZE + 16); // 64 squares at four a long
+		int entry = dataSize;
+		offsets[size] = entry;
+		data[entry + 1] = scratch[Storage.FLAG_OFFSET];
+		data[entry + 2] = scratch[Storage.KEY_OFFSET];
+		dataSize += HEADER_SIZE;
+		if(size % KEYFRAME_INTERVAL == 0) {
+			data[entry] = -1L;
+			System.arraycopy(scratch, 0, data, dataSize, Storage.FLAG_OFFSET);
+			dataSize += Storage.FLAG_OFFSET;
+		} else {
+			if(!lastValid) {
+				rebuild(size - 1, last);
+			}
+			int changes = 0;
+			for(int sq = 0; sq < 64; sq++) {
+				int codes = Storage.getSquare(scratch, 0, sq);
+				if(codes != Storage.getSquare(last, 0, sq)) {
+					int shift = (changes & 3) * 16;
+					if(shift == 0) {
+						data[dataSize++] = 0L;
+					}
+					data[dataSize - 1] |= (long)(sq << 10 | codes) << shift;
+					changes++;
+				}
+			}
+			data[entry] = changes;
+		}
+		long[] swap = last;
+		last = scratch;
+		scratch = swap;
+		lastValid = true;
+		size++;
+	}
+
+	/**
+	* Returns a copy of a saved state
+	* @param ply The index of the state
+	* @return The state
+	*/
+	public Storage get(int ply) {
+		long[] state = new long[Storage.RECORD_SIZE];
+		rebuild(ply, state);
+		return new Storage(state, 0);
+	}
+
+	/**
+	* Returns an immutable snapshot of a saved state. <br>
+	* The snapshots between the state and the ply before it that has one,
+	* or its keyframe, are built as well so they share their layers
+	* @param ply The index of the state
+	* @return The snapshot
+	*/
+	public Snapshot getSnapshot(int ply) {
+		if(snapshots[ply] != null) {
+			return snapshots[ply];
+		}
+		int keyframe = ply - ply % KEYFRAME_INTERVAL;
+		int start = ply;
+		while(start > keyframe && snapshots[start - 1] == null) {
+			start--;
+		}
+		long[] record = new long[Storage.RECORD_SIZE];
+		Snapshot parent;
+		if(start > keyframe) {
+			parent = snapshots[start - 1];
+			parent.toRecord(record);
+		} else {
+			rebuild(keyframe, record);
+			parent = new Snapshot(record, keyframe, keyframe > 0 ? snapshots[keyframe - 1] : null);
+			snapshots[keyframe] = parent;
+			start = keyframe + 1;
+		}
+		for(int i = start; i <= ply; i++) {
+			applyChanges(i, record);
+			parent = new Snapshot(record, i, parent);
+			snapshots[i] = parent;
+		}
+		return snapshots[ply];
+	}
+
+	/**
+	* Returns the Zobrist key of a saved state without rebuilding it
+	* @param ply The index of the state
+	* @return The position key
+	*/
+	public long getHashKey(int ply) {
+		return data[offsets[ply] + 2];
+	}
+
+	/**
+	* Removes the last saved state
+	*/
+	public void removeLast() {
+		if(size > 0) {
+			truncate(size - 1);
+		}
+	}
+
+	/**
+	* Removes the saved states from an index on. <br>
+	* The entries are left in the array to be written over, so this takes
+	* the same time however many states are removed
+	* @param newSize The number of states to keep
+	*/
+	public void truncate(int newSize) {
+		if(newSize < 0 || newSize >= size) {
+			return;
+		}
+		size = newSize;
+		dataSize = size == 0 ? 0 : offsets[size];
+		lastValid = false;
+	}
+
+	/**
+	* Returns the number of saved states
+	* @return The state count
+	*/
+	public int size() {
+		return size;
+	}
+
+	/**
+	* Rebuilds the full record of a state from the keyframe at or before it
+	* @param ply The index of the state
+	* @param record The array to write the record to
+	*/
+	private void rebuild(int ply, long[] record) {
+		int keyframe = ply - ply % KEYFRAME_INTERVAL;
+		System.arraycopy(data, offsets[keyframe] + HEADER_SIZE, record, 0, Storage.FLAG_OFFSET);
+		for(int i = keyframe + 1; i <= ply; i++) {
+			applyChanges(i, record);
+		}
+		record[Storage.FLAG_OFFSET] = data[offsets[ply] + 1];
+		record[Storage.KEY_OFFSET] = data[offsets[ply] + 2];
+	}
+
+	/**
+	* Turns the record of the state before a delta entry into the record of its state
+	* @param ply The index of a state saved as changed squares
+	* @param record The record to change
+	*/
+	private void applyChanges(int ply, long[] record) {
+		int entry = offsets[ply];
+		int changes = (int)data[entry];
+		for(int c = 0; c < changes; c++) {
+			int change = (int)(data[entry + HEADER_SIZE + (c >>> 2)] >>> ((c & 3) * 16)) & 0xFFFF;
+			Storage.setSquare(record, 0, change >>> 10, change & 0x3FF);
+		}
+		record[Storage.FLAG_OFFSET] = data[entry + 1];
+		record[Storage.KEY_OFFSET] = data[entry + 2];
+	}
+
+	/**
+	* Makes room for an entry
+	* @param longs The largest number of longs the entry can take
+	*/
+	private void ensureData(int longs) {
+		if(dataSize + longs > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + longs));
+		}
+	}
+}
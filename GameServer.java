@@ -0,0 +1,614 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* This class hosts many games in one program over a local TCP socket. <br>
+* Every connection is a session with its own Chess object, served by its
+* own thread, so no game is shared between threads. The threads are
+* virtual threads when the Java runtime has them, else platform threads
+* with small stacks. A session reads one command a line and answers with
+* any number of lines followed by a line starting with ok or error.
+* What the game prints while it answers is sent to the client as well.
+* The commands are: <br>
+* [Move], for example e2-e4, Md4, |_c3 or 0-0 <br>
+* new, board, log, watch [Session], stats, quit <br>
+* The time the game takes to check and play each move is kept in a
+* histogram shared by the sessions, for the stats command and the bench.
+* The watch command shows another session's game through the view its
+* game publishes after every move, so any number of sessions can watch a
+* game without locking it or slowing its player.
+*/
+public class GameServer {
+	private static final String[] BENCH_MOVES = {"g1-f3", "g8-f6", "f3-g1", "f6-g8", "new"}; // Commands the bench repeats
+	private static final long PLATFORM_STACK_SIZE = 256 * 1024; // Stack of a session thread when there are no virtual threads
+	private static final int BACKLOG = 4096; // Connections waiting to be accepted
+	private ServerSocket server; // The listening socket
+	private ExecutorService sessions; // Runs one task per connection
+	private boolean virtualThreads; // The sessions run on virtual threads
+	private ThreadOutput output; // Sends what each game prints to its own session
+	private LatencyHistogram latency; // Time to check and play a move
+	private AtomicInteger openSessions; // Sessions connected now
+	private AtomicInteger sessionCount; // Sessions connected since the start
+	private AtomicLong illegalMoves; // Moves the games rejected
+	private ConcurrentHashMap<Integer, Session> live; // Connected sessions by number, for watch
+
+	/**
+	* Creates a server listening on the loopback address
+	* @param port The port, 0 for any free port
+	* @throws IOException If the port cannot be opened
+	*/
+	public GameServer(int port) throws IOException {
+		server = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+		sessions = newVirtualExecutor();
+		virtualThreads = sessions != null;
+		if(!virtualThreads) {
+			sessions = Executors.newCachedThreadPool(new SessionThreads());
+		}
+		latency = new LatencyHistogram();
+		openSessions = new AtomicInteger();
+		sessionCount = new AtomicInteger();
+		illegalMoves = new AtomicLong();
+		live = new ConcurrentHashMap<Integer, Session>();
+	}
+
+	/**
+	* Returns an executor that starts a virtual thread per task. <br>
+	* Looked up by reflection, as it only exists from Java 21
+	* @return The executor, null if the runtime has no virtual threads
+	*/
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		} catch(ReflectiveOperationException ex) {
+			return null; // Missing, or a preview feature that is not enabled
+		}
+	}
+
+	/**
+	* Returns the port the server listens on
+	* @return The port
+	*/
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	* Determines if the sessions run on virtual threads
+	* @return True for virtual threads, false for platform threads
+	*/
+	public boolean hasVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	* Returns the move latency histogram
+	* @return The histogram
+	*/
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	* Returns the server statistics in one line
+	* @return The open and total sessions, rejected moves and move latency
+	*/
+	public String getStats() {
+		return "sessions " + openSessions.get() + " total " + sessionCount.get()
+			+ " illegal " + illegalMoves.get() + " latency " + latency.summary();
+	}
+
+	/**
+	* Accepts connections until the server is closed. <br>
+	* System.out is replaced while the server runs, so each game's messages
+	* go to its own session
+	*/
+	public void serve() {
+		output = ThreadOutput.install();
+		try {
+			while(!server.isClosed()) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch(SocketException ex) {
+					break; // Closed
+				}
+				socket.setTcpNoDelay(true);
+				sessions.execute(new Session(socket));
+			}
+		} catch(IOException ex) {
+			System.out.println("ERROR: connection could not be accepted");
+			System.out.println("Reason: " + ex.getMessage());
+		} finally {
+			output.uninstall();
+		}
+	}
+
+	/**
+	* Stops accepting connections and ends the sessions
+	*/
+	public void close() {
+		try {
+			server.close();
+		} catch(IOException ex) {
+			// Already closed
+		}
+		sessions.shutdownNow();
+	}
+
+	/**
+	* Runs a server until the program is ended, printing the statistics at the end
+	* @param port The port, 0 for any free port
+	*/
+	public static void run(int port) {
+		final GameServer gameServer;
+		try {
+			gameServer = new GameServer(port);
+		} catch(IOException ex) {
+			System.out.println("ERROR: port " + port + " could not be opened");
+			System.out.println("Reason: " + ex.getMessage());
+			return;
+		}
+		final PrintStream console = System.out;
+		console.println("Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + gameServer.getPort()
+			+ " with " + (gameServer.hasVirtualThreads() ? "virtual" : "platform") + " threads");
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				console.println(gameServer.getStats());
+			}
+		});
+		gameServer.serve();
+	}
+
+	/**
+	* Measures the server: opens many sessions and plays moves on them from a few client threads. <br>
+	* Each client thread plays a knight tour out and back on each of its
+	* sessions in turn and starts a new game, while the other sessions stay
+	* connected and idle. Watcher threads meanwhile watch the games one
+	* after another, to show the players are not slowed by them
+	* @param sessions The number of sessions to open
+	* @param clients The number of client threads
+	* @param rounds The number of times each session plays the moves
+	* @param watchers The number of watcher threads, each with its own session
+	*/
+	public static void bench(int sessions, int clients, int rounds, int watchers) {
+		if(sessions < 1 || clients < 1 || rounds < 1 || watchers < 0) {
+			System.out.println("ERROR: sessions, clients and rounds must be at least 1");
+			return;
+		}
+		clients = Math.min(clients, sessions);
+		final GameServer gameServer;
+		try {
+			gameServer = new GameServer(0);
+		} catch(IOException ex) {
+			System.out.println("ERROR: server could not be started");
+			System.out.println("Reason: " + ex.getMessage());
+			return;
+		}
+		PrintStream console = System.out;
+		Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				gameServer.serve();
+			}
+		};
+		acceptor.start();
+		Client[] connections = new Client[sessions + watchers];
+		ExecutorService pool = Executors.newFixedThreadPool(clients + watchers);
+		AtomicBoolean playing = new AtomicBoolean(true);
+		try {
+			long start = System.nanoTime();
+			for(int i = 0; i < connections.length; i++) {
+				connections[i] = new Client(gameServer.getPort());
+			}
+			double connectSeconds = (System.nanoTime() - start) / 1e9;
+			console.printf("Opened %d sessions on %s threads in %.3f s%n", sessions,
+				gameServer.hasVirtualThreads() ? "virtual" : "platform", connectSeconds);
+			LatencyHistogram roundTrip = new LatencyHistogram();
+			ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+			ArrayList<Future<Long>> watched = new ArrayList<Future<Long>>();
+			start = System.nanoTime();
+			for(int i = 0; i < watchers; i++) {
+				watched.add(pool.submit(new WatchTask(connections[sessions + i], sessions, i, playing)));
+			}
+			for(int i = 0; i < clients; i++) {
+				results.add(pool.submit(new ClientTask(connections, sessions, i, clients, rounds, roundTrip)));
+			}
+			for(Future<String> result : results) {
+				String error = result.get();
+				if(error != null) {
+					console.println("ERROR: " + error);
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			playing.set(false);
+			long views = 0;
+			for(Future<Long> result : watched) {
+				views += result.get();
+			}
+			long commands = (long)sessions * rounds * BENCH_MOVES.length;
+			console.printf("Sent %d commands from %d client threads in %.3f s, %.0f commands/second%n",
+				commands, clients, seconds, seconds > 0 ? commands / seconds : 0.0);
+			if(watchers > 0) {
+				console.printf("Watched %d views from %d watcher threads, %.0f views/second%n",
+					views, watchers, seconds > 0 ? views / seconds : 0.0);
+			}
+			console.println("Move validation: " + gameServer.getLatency().summary());
+			console.println("Round trip     : " + roundTrip.summary());
+			console.println("Server         : " + gameServer.getStats());
+		} catch(IOException ex) {
+			console.println("ERROR: session could not be opened");
+			console.println("Reason: " + ex.getMessage());
+		} catch(ExecutionException ex) {
+			console.println("ERROR: " + ex.getCause());
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdown();
+			for(Client connection : connections) {
+				if(connection != null) {
+					connection.close();
+				}
+			}
+			gameServer.close();
+			try {
+				acceptor.join(1000);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	* One connection, answered on its own thread
+	*/
+	private class Session implements Runnable {
+		private Socket socket; // The connection
+		private volatile Chess game; // The game of this session, only played by this thread
+		private PrintWriter out; // Replies to the client
+		private ByteArrayOutputStream messages; // What the game printed since the last reply
+
+		/**
+		* Creates a session
+		* @param socket The connection
+		*/
+		Session(Socket socket) {
+			this.socket = socket;
+		}
+
+		/**
+		* Answers commands until quit or the end of the connection
+		*/
+		@Override
+		public void run() {
+			messages = output.capture();
+			int id = sessionCount.incrementAndGet();
+			openSessions.incrementAndGet();
+			try(Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+				out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8)));
+				game = new Chess();
+				live.put(id, this);
+				out.print("ok session " + id + "\n");
+				out.flush();
+				String line;
+				while((line = in.readLine()) != null) {
+					line = line.trim();
+					if(line.isEmpty()) {
+						continue;
+					}
+					boolean more = command(line);
+					out.flush();
+					if(!more) {
+						break;
+					}
+				}
+			} catch(IOException ex) {
+				// Connection lost, the session ends
+			} finally {
+				live.remove(id);
+				openSessions.decrementAndGet();
+				output.release();
+			}
+		}
+
+		/**
+		* Answers one command
+		* @param line The command
+		* @return False if the command was quit
+		*/
+		private boolean command(String line) {
+			if(line.startsWith("watch ")) {
+				watch(line.substring(6).trim());
+				return true;
+			}
+			switch(line) {
+				case "quit":
+					reply("ok bye");
+					return false;
+				case "new":
+					game = new Chess();
+					reply("ok new game");
+					break;
+				case "board":
+					send(game.getBoardText());
+					reply("ok board");
+					break;
+				case "log":
+					String[] log = game.getGameLog();
+					for(String muv : log) {
+						out.print(muv + "\n");
+					}
+					reply("ok " + log.length + " moves");
+					break;
+				case "stats":
+					reply("ok " + getStats());
+					break;
+				default:
+					long start = System.nanoTime();
+					boolean legal = game.move(line);
+					latency.record(System.nanoTime() - start);
+					if(legal) {
+						reply("ok " + line);
+					} else {
+						illegalMoves.incrementAndGet();
+						reply("error illegal move " + line);
+					}
+			}
+			return true;
+		}
+
+		/**
+		* Sends the board of another session's game, read from its published view
+		* @param number The number of the session
+		*/
+		private void watch(String number) {
+			Session other;
+			try {
+				other = live.get(Integer.parseInt(number));
+			} catch(NumberFormatException ex) {
+				other = null;
+			}
+			Snapshot view = other == null ? null : other.game.getView();
+			if(view == null) {
+				reply("error no session " + number);
+				return;
+			}
+			for(int i = 0; i < 8; i++) {
+				StringBuilder row = new StringBuilder();
+				for(int j = 0; j < 8; j++) {
+					char wall = view.getWall(i, j);
+					if(wall == 'L') {
+						row.append("|_");
+					} else if(wall != '.') {
+						row.append(wall);
+					} else if(view.getObstacle(i, j) != '.') {
+						row.append(view.getObstacle(i, j));
+					} else {
+						row.append(view.getPiece(i, j));
+					}
+					row.append(j < 7 ? " " : "\n");
+				}
+				out.print(row);
+			}
+			reply("ok watch " + number + " version " + view.getVersion() + " ply " + view.getPly()
+				+ " player " + view.getPlayer() + (view.getWhiteCheck() || view.getBlackCheck() ? " check" : ""));
+		}
+
+		/**
+		* Sends what the game printed, then the reply line
+		* @param status The line starting with ok or error
+		*/
+		private void reply(String status) {
+			if(messages.size() > 0) {
+				send(messages.toString());
+				messages.reset();
+			}
+			out.print(status + "\n");
+		}
+
+		/**
+		* Sends lines of text without the empty ones
+		* @param text The lines
+		*/
+		private void send(String text) {
+			for(String line : text.split("\n")) {
+				if(!line.trim().isEmpty()) {
+					out.print(line + "\n");
+				}
+			}
+		}
+	}
+
+	/**
+	* Makes the session threads when there are no virtual threads
+	*/
+	private static class SessionThreads implements ThreadFactory {
+		private AtomicInteger count = new AtomicInteger(); // Threads made so far
+
+		/**
+		* Makes a daemon thread with a small stack
+		* @param task The task to run
+		* @return The thread
+		*/
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(null, task, "session-" + count.incrementAndGet(), PLATFORM_STACK_SIZE);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	* The client end of a bench session
+	*/
+	private static class Client {
+		private Socket socket; // The connection
+		private BufferedReader in; // Replies from the server
+		private PrintWriter out; // Commands to the server
+
+		/**
+		* Connects and reads the greeting
+		* @param port The server port
+		* @throws IOException If the connection fails
+		*/
+		Client(int port) throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			socket.setTcpNoDelay(true);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+			send(null);
+		}
+
+		/**
+		* Sends a command and reads the reply
+		* @param command The command, null to only read
+		* @return The ok or error line
+		* @throws IOException If the connection fails
+		*/
+		String send(String command) throws IOException {
+			if(command != null) {
+				out.print(command + "\n");
+				out.flush();
+			}
+			String line;
+			while((line = in.readLine()) != null) {
+				if(line.startsWith("ok") || line.startsWith("error")) {
+					return line;
+				}
+			}
+			throw new IOException("connection closed");
+		}
+
+		/**
+		* Closes the connection
+		*/
+		void close() {
+			try {
+				socket.close();
+			} catch(IOException ex) {
+				// Already closed
+			}
+		}
+	}
+
+	/**
+	* Plays the bench moves on every clients-th session
+	*/
+	private static class ClientTask implements Callable<String> {
+		private Client[] connections; // All bench sessions
+		private int sessions; // Number of playing sessions, at the start of connections
+		private int first; // Index of the first session of this task
+		private int step; // Distance between the sessions of this task
+		private int rounds; // Times each session plays the moves
+		private LatencyHistogram roundTrip; // Time from sending a command to its reply
+
+		/**
+		* Creates a client task
+		* @param connections All bench sessions
+		* @param sessions The number of playing sessions, at the start of connections
+		* @param first The index of the first session of this task
+		* @param step The distance between the sessions of this task
+		* @param rounds The times each session plays the moves
+		* @param roundTrip The histogram for the round trip times
+		*/
+		ClientTask(Client[] connections, int sessions, int first, int step, int rounds, LatencyHistogram roundTrip) {
+			this.connections = connections;
+			this.sessions = sessions;
+			this.first = first;
+			this.step = step;
+			this.rounds = rounds;
+			this.roundTrip = roundTrip;
+		}
+
+		/**
+		* Plays the moves
+		* @return The first unexpected reply, null if all were ok
+		* @throws IOException If a connection fails
+		*/
+		@Override
+		public String call() throws IOException {
+			for(int r = 0; r < rounds; r++) {
+				for(int i = first; i < sessions; i += step) {
+					for(String command : BENCH_MOVES) {
+						long start = System.nanoTime();
+						String reply = connections[i].send(command);
+						roundTrip.record(System.nanoTime() - start);
+						if(!reply.startsWith("ok")) {
+							return "session " + (i + 1) + ": " + reply;
+						}
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	* Watches the bench games one after another while they are played
+	*/
+	private static class WatchTask implements Callable<Long> {
+		private Client connection; // The watcher's own session
+		private int sessions; // Number of playing sessions, numbered from 1
+		private int first; // Session watched first
+		private AtomicBoolean playing; // Cleared when the players are done
+
+		/**
+		* Creates a watcher task
+		* @param connection The watcher's own session
+		* @param sessions The number of playing sessions
+		* @param first The index of the session watched first
+		* @param playing The flag cleared when the players are done
+		*/
+		WatchTask(Client connection, int sessions, int first, AtomicBoolean playing) {
+			this.connection = connection;
+			this.sessions = sessions;
+			this.first = first;
+			this.playing = playing;
+		}
+
+		/**
+		* Watches games until the players are done
+		* @return The number of views read
+		* @throws IOException If the connection fails
+		*/
+		@Override
+		public Long call() throws IOException {
+			long views = 0;
+			int session = first % sessions;
+			while(playing.get()) {
+				String reply = connection.send("watch " + (session + 1));
+				if(!reply.startsWith("ok")) {
+					throw new IOException(reply);
+				}
+				views++;
+				session = (session + 1) % sessions;
+			}
+			return views;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* This class counts time measurements to report their percentiles. <br>
+* Every power of two is split into SUB_BUCKETS equal buckets, so a
+* percentile is off by at most 1/SUB_BUCKETS of its value while the
+* counts take a fixed 8 kB. Any number of threads can record at the same
+* time without locking.
+*/
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4; // Buckets per power of two as a power of two
+	private static final int SUB_BUCKETS = 1 << SUB_BITS; // Buckets per power of two
+	private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9}; // Percentiles of the summary
+	private AtomicLongArray counts; // Measurements by bucket
+	private AtomicLong total; // Number of measurements
+	private AtomicLong max; // Largest measurement
+
+	/**
+	* Creates an empty histogram
+	*/
+	public LatencyHistogram() {
+		counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+		total = new AtomicLong();
+		max = new AtomicLong();
+	}
+
+	/**
+	* Adds a measurement
+	* @param nanos The time in nanoseconds
+	*/
+	public void record(long nanos) {
+		nanos = Math.max(0L, nanos);
+		counts.incrementAndGet(bucket(nanos));
+		total.incrementAndGet();
+		long top = max.get();
+		while(nanos > top && !max.compareAndSet(top, nanos)) {
+			top = max.get();
+		}
+	}
+
+	/**
+	* Returns the number of measurements
+	* @return The count
+	*/
+	public long getCount() {
+		return total.get();
+	}
+
+	/**
+	* Returns the largest measurement
+	* @return The time in nanoseconds
+	*/
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	* Returns a percentile of the measurements
+	* @param percentile The percentile, from 0 to 100
+	* @return The highest time of the bucket holding the percentile in nanoseconds, 0 if empty
+	*/
+	public long getPercentile(double percentile) {
+		long count = total.get();
+		if(count == 0) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long)Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if(seen >= rank) {
+				return Math.min(highest(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	* Returns the count and main percentiles in one line
+	* @return The summary, times in microseconds
+	*/
+	public String summary() {
+		StringBuilder line = new StringBuilder("n " + getCount());
+		for(double percentile : PERCENTILES) {
+			line.append(String.format(" p%s %.1fus", percentile == Math.floor(percentile)
+				? String.valueOf((int)percentile) : String.valueOf(percentile), getPercentile(percentile) / 1e3));
+		}
+		line.append(String.format(" max %.1fus", getMax() / 1e3));
+		return line.toString();
+	}
+
+	/**
+	* Returns the bucket of a measurement
+	* @param nanos The time, at least 0
+	* @return The bucket index
+	*/
+	private static int bucket(long nanos) {
+		if(nanos < SUB_BUCKETS) {
+			return (int)nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int)(nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	* Returns the highest measurement of a bucket
+	* @param idx The bucket index
+	* @return The time in nanoseconds
+	*/
+	private static long highest(int idx) {
+		if(idx < SUB_BUCKETS) {
+			return idx;
+		}
+		int exponent = idx / SUB_BUCKETS + SUB_BITS - 1;
+		long width = 1L << (exponent - SUB_BITS);
+		return (SUB_BUCKETS + idx % SUB_BUCKETS) * width + width - 1;
+	}
+}
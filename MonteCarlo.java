@@ -0,0 +1,507 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* This class picks a move with Monte Carlo tree search (UCT). <br>
+* Mines and trap doors are hidden from the other player, so the search
+* does not use the opponent's obstacles as they are. Every playout first
+* moves them to random squares where they could have been placed
+* (determinization) and then plays random moves from the tree to the end
+* of the game or a move limit. Moves that do not exist in a sampled board
+* are skipped for that playout. Several threads share the tree; a thread
+* walking down a branch adds a virtual loss to it, so the other threads
+* try other branches until its result is in. Walls are not part of the
+* search, their number of placements is too large for random playouts.
+*/
+public class MonteCarlo {
+	private static final double EXPLORATION = 1.4; // UCT exploration constant
+	private static final int PLAYOUT_PLIES = 80; // Moves played in a playout before it is scored
+	private static final double SCORE_SCALE = 400.0; // Centipawns that turn into about 73% winning chances
+	private ExecutorService pool; // The playout threads
+	private int threads; // Number of playout threads
+	private Chess root; // The game being searched, only read
+	private Node rootNode; // Tree of moves from the game
+	private int viewer; // Colour index of the player to move in the game
+	private int[] hiddenMines; // Squares of the opponent's mines that are still hidden
+	private int[] hiddenTraps; // Squares of the opponent's trap doors that are still hidden
+	private LongAdder playouts; // Playouts finished in the current search
+	private volatile boolean stopped; // Set when the search has to stop
+	private long deadline; // Time to stop in nanoseconds
+	private long maxPlayouts; // Playout limit of the current search
+	private long nanos; // Time taken by the last search
+
+	/**
+	* Creates a Monte Carlo search
+	* @param threads The number of playout threads, at least 1
+	*/
+	public MonteCarlo(int threads) {
+		this.threads = Math.max(1, threads);
+		pool = Executors.newFixedThreadPool(this.threads);
+		playouts = new LongAdder();
+		stopped = false;
+	}
+
+	/**
+	* Searches for the best move of the player to move
+	* @param game The game, it must not change while the search runs
+	* @param millis The time budget in milliseconds, 0 for no time limit
+	* @param limit The maximum number of playouts, 0 for no limit
+	* @return The most visited move, Move.NONE if the player has no move
+	*/
+	public int search(Chess game, long millis, long limit) {
+		long start = System.nanoTime();
+		root = game;
+		viewer = game.getPlayer() == 'w' ? Position.WHITE : Position.BLACK;
+		rootNode = new Node(Move.NONE, null, viewer ^ 1);
+		findHiddenObstacles(game);
+		MoveList moves = new MoveList();
+		game.generateMoves(moves);
+		for(int i = 0; i < moves.size(); i++) {
+			if(game.isLegalMove(moves.get(i))) {
+				rootNode.children.add(new Node(moves.get(i), rootNode, viewer));
+			}
+		}
+		if(!game.getGamePlayStatus()) {
+			moves.clear();
+			game.generatePlacements(moves);
+			for(int i = 0; i < moves.size(); i++) {
+				if(Move.getType(moves.get(i)) != Move.WALL) {
+					rootNode.children.add(new Node(moves.get(i), rootNode, viewer));
+				}
+			}
+		}
+		playouts.reset();
+		if(rootNode.children.isEmpty()) {
+			nanos = System.nanoTime() - start;
+			return Move.NONE;
+		}
+		deadline = millis > 0 ? start + millis * 1000000L : Long.MAX_VALUE;
+		maxPlayouts = limit > 0 ? limit : Long.MAX_VALUE;
+		if(millis <= 0 && limit <= 0) {
+			maxPlayouts = 10000; // Some budget is needed
+		}
+		stopped = false;
+		ArrayList<Future<?>> workers = new ArrayList<Future<?>>();
+		for(int i = 0; i < threads; i++) {
+			workers.add(pool.submit(new Worker(i)));
+		}
+		for(Future<?> worker : workers) {
+			try {
+				worker.get();
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch(ExecutionException ex) {
+				System.out.println("ERROR: playout thread failed " + ex.getCause());
+			}
+		}
+		nanos = System.nanoTime() - start;
+		return getBestChild().move;
+	}
+
+	/**
+	* Asks a running search to stop. The best move found so far is returned
+	*/
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	* Stops the playout threads
+	*/
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	* Returns the number of playouts of the last search
+	* @return The playout count
+	*/
+	public long getPlayouts() {
+		return playouts.sum();
+	}
+
+	/**
+	* Returns the speed of the last search
+	* @return The playouts per second
+	*/
+	public long getPlayoutsPerSecond() {
+		return nanos > 0 ? playouts.sum() * 1000000000L / nanos : playouts.sum();
+	}
+
+	/**
+	* Returns a report of the last search
+	* @return The playout count, speed, time, best move, its visits and winning chances
+	*/
+	public String getInfo() {
+		Node best = rootNode == null || rootNode.children.isEmpty() ? null : getBestChild();
+		if(best == null) {
+			return "info playouts 0 pv -";
+		}
+		return "info playouts " + playouts.sum() + " pps " + getPlayoutsPerSecond()
+			+ " time " + nanos / 1000000L + " pv " + Move.toString(best.move)
+			+ " visits " + best.visits
+			+ " winrate " + String.format("%.1f", best.visits > 0 ? best.wins * 100.0 / best.visits : 0.0) + "%";
+	}
+
+	/**
+	* Returns the root move that was tried the most
+	* @return The child of the root node
+	*/
+	private Node getBestChild() {
+		Node best = rootNode.children.get(0);
+		for(Node child : rootNode.children) {
+			if(child.visits > best.visits) {
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	* Finds the mines and trap doors the opponent placed that no piece has set off. <br>
+	* The game log starts with the placements. White places first and every
+	* mine, trap door or pass hands the turn over, so the log tells who placed
+	* each one. Obstacles read from a board file are known to both players
+	* @param game The game
+	*/
+	private void findHiddenObstacles(Chess game) {
+		ArrayList<Integer> mines = new ArrayList<Integer>();
+		ArrayList<Integer> traps = new ArrayList<Integer>();
+		String[] log = game.getGameLog();
+		int player = Position.WHITE;
+		char[][] oBoard = game.getObstacleBoard();
+		for(int i = 0; i < log.length; i++) {
+			char first = log[i].charAt(0);
+			if(first == '|' || first == '_') {
+				continue; // Walls do not hand the turn over
+			}
+			if(first != 'M' && first != 'D' && !log[i].equals("...")) {
+				break; // The game has started
+			}
+			if(first != '.' && player != viewer) {
+				int sq = Move.parseSquare(log[i], 1);
+				char obs = oBoard[sq >>> 3][sq & 7];
+				if(first == 'M' && (obs == 'M' || obs == 'X')) {
+					mines.add(sq);
+				} else if(first == 'D' && (obs == 'D' || obs == 'X')) {
+					traps.add(sq);
+				}
+			}
+			player ^= 1;
+		}
+		hiddenMines = new int[mines.size()];
+		for(int i = 0; i < hiddenMines.length; i++) {
+			hiddenMines[i] = mines.get(i);
+		}
+		hiddenTraps = new int[traps.size()];
+		for(int i = 0; i < hiddenTraps.length; i++) {
+			hiddenTraps[i] = traps.get(i);
+		}
+	}
+
+	/**
+	* Moves the opponent's hidden obstacles to random squares where they
+	* could have been placed: mines on ranks 4 and 5, trap doors on ranks 3 to 6,
+	* on an empty square without another obstacle
+	* @param board The board to change, a copy of the game
+	* @param random The random numbers of the thread
+	*/
+	private void determinize(Chess board, Random random) {
+		Position pos = board.getPosition();
+		char[][] oBoard = pos.getObstacleBoard();
+		for(int i = 0; i < hiddenMines.length; i++) {
+			int sq = hiddenMines[i];
+			pos.setObstacle(sq >>> 3, sq & 7, oBoard[sq >>> 3][sq & 7] == 'X' ? 'D' : '.');
+		}
+		for(int i = 0; i < hiddenTraps.length; i++) {
+			int sq = hiddenTraps[i];
+			pos.setObstacle(sq >>> 3, sq & 7, oBoard[sq >>> 3][sq & 7] == 'X' ? 'M' : '.');
+		}
+		for(int i = 0; i < hiddenMines.length; i++) {
+			placeRandom(pos, 'M', 24, 40, random);
+		}
+		for(int i = 0; i < hiddenTraps.length; i++) {
+			placeRandom(pos, 'D', 16, 48, random);
+		}
+	}
+
+	/**
+	* Puts an obstacle on a random free square in a range
+	* @param pos The position
+	* @param obs The obstacle character
+	* @param first The first square of the range
+	* @param end The square after the range
+	* @param random The random numbers of the thread
+	*/
+	private static void placeRandom(Position pos, char obs, int first, int end, Random random) {
+		char[][] oBoard = pos.getObstacleBoard();
+		for(int tries = 0; tries < 64; tries++) {
+			int sq = first + random.nextInt(end - first);
+			if(pos.getPiece(sq) == '.' && oBoard[sq >>> 3][sq & 7] == '.') {
+				pos.setObstacle(sq >>> 3, sq & 7, obs);
+				return;
+			}
+		}
+	}
+
+	/**
+	* Fills a list with the legal moves of a board. <br>
+	* Before the game starts this includes the mines, trap doors and passes
+	* @param board The board
+	* @param list The list to fill
+	*/
+	private static void legalMoves(Chess board, MoveList list) {
+		board.generateMoves(list);
+		if(!board.getGamePlayStatus()) {
+			int pieceMoves = list.size();
+			board.generatePlacements(list);
+			// Leave out the walls
+			int count = pieceMoves;
+			for(int i = pieceMoves; i < list.size(); i++) {
+				if(Move.getType(list.get(i)) != Move.WALL) {
+					list.set(count++, list.get(i));
+				}
+			}
+			list.truncate(count);
+		}
+		int count = 0;
+		for(int i = 0; i < list.size(); i++) {
+			if(Perft.isLegal(board, list.get(i))) {
+				list.set(count++, list.get(i));
+			}
+		}
+		list.truncate(count);
+	}
+
+	/**
+	* Returns the result of a finished game or -1 if it goes on
+	* @param board The board
+	* @return 1 if White won, 0 if Black won, 0.5 for a draw, -1 if the game goes on
+	*/
+	private static double gameResult(Chess board) {
+		Position pos = board.getPosition();
+		if(pos.getKingSquare(Position.WHITE) == -1) {
+			return 0.0;
+		}
+		if(pos.getKingSquare(Position.BLACK) == -1) {
+			return 1.0;
+		}
+		if(board.getFiftyMoveCounter() >= 50) {
+			return 0.5;
+		}
+		return -1.0;
+	}
+
+	/**
+	* Returns the result of a board without moves
+	* @param board The board, the player to move has no legal move
+	* @return 1 if White won, 0 if Black won, 0.5 for stalemate
+	*/
+	private static double noMovesResult(Chess board) {
+		if(!board.isChecked(board.getPlayer())) {
+			return 0.5;
+		}
+		return board.getPlayer() == 'w' ? 0.0 : 1.0;
+	}
+
+	/**
+	* A move in the search tree with its statistics. <br>
+	* The fields are only changed while holding the lock of the node
+	*/
+	private static class Node {
+		private int move; // The move that leads to this node
+		private Node parent; // The node before the move, null for the root
+		private int mover; // Colour index of the player who made the move
+		private ArrayList<Node> children; // Moves tried from this node
+		private int visits; // Playouts through this node
+		private double wins; // Results of those playouts for the mover
+		private int virtualLoss; // Playouts that are still running through this node
+
+		/**
+		* Creates a node
+		* @param move The move that leads to the node
+		* @param parent The node before the move
+		* @param mover Colour index of the player who made the move
+		*/
+		Node(int move, Node parent, int mover) {
+			this.move = move;
+			this.parent = parent;
+			this.mover = mover;
+			this.children = new ArrayList<Node>();
+		}
+	}
+
+	/**
+	* Runs playouts on one thread until the search stops
+	*/
+	private class Worker implements Runnable {
+		private Chess board; // The thread's board
+		private MoveList moves; // Legal moves of the board
+		private Random random; // The thread's random numbers
+
+		/**
+		* Creates a worker
+		* @param index The thread number, used for the random seed
+		*/
+		Worker(int index) {
+			board = new Chess();
+			moves = new MoveList();
+			random = new Random(System.nanoTime() + index * 7919L);
+		}
+
+		/**
+		* Runs playouts until the time or playout budget is used up
+		*/
+		@Override
+		public void run() {
+			while(!stopped && System.nanoTime() < deadline && playouts.sum() < maxPlayouts) {
+				iterate();
+				playouts.increment();
+			}
+		}
+
+		/**
+		* Runs one playout: samples a board, walks down the tree, adds a node,
+		* plays random moves and passes the result back up the tree
+		*/
+		private void iterate() {
+			board.copyFrom(root);
+			determinize(board, random);
+			Node node = rootNode;
+			synchronized(node) {
+				node.virtualLoss++;
+			}
+			double result = gameResult(board);
+			while(result < 0) {
+				legalMoves(board, moves);
+				if(moves.size() == 0) {
+					result = noMovesResult(board);
+					break;
+				}
+				int colour = board.getPlayer() == 'w' ? Position.WHITE : Position.BLACK;
+				Node next = null;
+				boolean expanded = false;
+				synchronized(node) {
+					// Try a move of this board that has no node yet. The root moves are all known
+					for(int i = 0; i < moves.size() && next == null && node != rootNode; i++) {
+						if(findChild(node, moves.get(i)) == null) {
+							next = new Node(moves.get(i), node, colour);
+							node.children.add(next);
+							expanded = true;
+						}
+					}
+					if(next == null) {
+						next = selectChild(node);
+					}
+					if(next != null) {
+						next.virtualLoss++;
+					}
+				}
+				if(next == null) {
+					// None of the root moves is legal in this sampled board, score it without descending
+					result = playout();
+					break;
+				}
+				board.makeMove(next.move);
+				node = next;
+				result = gameResult(board);
+				if(expanded) {
+					if(result < 0) {
+						result = playout();
+					}
+					break;
+				}
+			}
+			// Pass the result back up
+			for(Node n = node; n != null; n = n.parent) {
+				synchronized(n) {
+					n.virtualLoss--;
+					n.visits++;
+					n.wins += n.mover == Position.WHITE ? result : 1.0 - result;
+				}
+			}
+		}
+
+		/**
+		* Picks the child with the best UCT value among the moves of the board
+		* @param node The node, its lock is held
+		* @return The child to walk to, null if no child's move is legal in the board
+		*/
+		private Node selectChild(Node node) {
+			double logVisits = Math.log(node.visits + node.virtualLoss + 1);
+			Node best = null;
+			double bestValue = -1.0;
+			for(Node child : node.children) {
+				if(!moves.contains(child.move)) {
+					continue; // Not possible in this sampled board
+				}
+				// Running playouts count as losses until they finish
+				int n = child.visits + child.virtualLoss;
+				double value = n == 0 ? Double.MAX_VALUE
+					: child.wins / n + EXPLORATION * Math.sqrt(logVisits / n);
+				if(value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		* Plays random legal moves until the game ends or the move limit is reached
+		* @return 1 if White won, 0 if Black won, the evaluation as winning chances otherwise
+		*/
+		private double playout() {
+			for(int ply = 0; ply < PLAYOUT_PLIES; ply++) {
+				board.generateMoves(moves);
+				if(!board.getGamePlayStatus()) {
+					moves.add(Move.create(Move.PASS, 0, 0, 0)); // Skip the rest of the placements
+				}
+				int m = Move.NONE;
+				while(moves.size() > 0) {
+					int idx = random.nextInt(moves.size());
+					int candidate = moves.get(idx);
+					if(Perft.isLegal(board, candidate)) {
+						m = candidate;
+						break;
+					}
+					moves.set(idx, moves.get(moves.size() - 1));
+					moves.truncate(moves.size() - 1);
+				}
+				if(m == Move.NONE) {
+					return noMovesResult(board);
+				}
+				board.makeMove(m);
+				double result = gameResult(board);
+				if(result >= 0) {
+					return result;
+				}
+			}
+			int score = Evaluation.evaluate(board);
+			if(board.getPlayer() == 'b') {
+				score = -score;
+			}
+			return 1.0 / (1.0 + Math.exp(-score / SCORE_SCALE));
+		}
+
+		/**
+		* Returns the child of a node for a move
+		* @param node The node, its lock is held
+		* @param m The encoded move
+		* @return The child, null if the move has no node yet
+		*/
+		private Node findChild(Node node, int m) {
+			for(Node child : node.children) {
+				if(child.move == m) {
+					return child;
+				}
+			}
+			return null;
+		}
+	}
+}
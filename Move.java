@@ -0,0 +1,222 @@
+/**
+* This class encodes moves as a single int so moves can be generated
+* and checked without creating objects. <br>
+* Bits 0-5 hold the from square, bits 6-11 the to square (Position layout),
+* bits 12-14 the extra value (promotion piece type or wall type) and
+* bits 15-18 the move type. <br>
+* The text notation (Eg. e2-e4, 0-0, Md4, |_c3, =Q, ...) is only used when
+* reading or writing logs.
+*/
+public class Move {
+	public static final int NONE = 0; // No move. A move from a square to itself is never valid
+	public static final int NORMAL = 0; // Move types
+	public static final int CASTLE_KING = 1; // King side castling (0-0)
+	public static final int CASTLE_QUEEN = 2; // Queen side castling (0-0-0)
+	public static final int EN_PASSANT = 3; // Pawn taking a pawn en passant
+	public static final int WALL = 4; // Wall placement
+	public static final int MINE = 5; // Mine placement
+	public static final int TRAP = 6; // Trap door placement
+	public static final int PASS = 7; // Pass the turn during setup (...)
+	public static final int PROMOTE = 8; // Promote the last moved pawn (=Q)
+	public static final int WALL_WEST = 1; // Wall types stored in the extra value
+	public static final int WALL_SOUTH = 2;
+	public static final int WALL_BOTH = 3;
+	private static final String PROMOTION_PIECES = " NBRQ"; // Promotion piece by piece type
+	private static final String WALL_CHARS = " |_L"; // Wall character by wall type
+
+	/**
+	* Creates a move
+	* @param type The move type
+	* @param from The from square
+	* @param to The to square
+	* @param extra The promotion piece type or the wall type, 0 if none
+	* @return The encoded move
+	*/
+	public static int create(int type, int from, int to, int extra) {
+		return from | (to << 6) | (extra << 12) | (type << 15);
+	}
+
+	/**
+	* Returns the from square of a move
+	* @param move The encoded move
+	* @return The from square
+	*/
+	public static int getFrom(int move) {
+		return move & 63;
+	}
+
+	/**
+	* Returns the to square of a move
+	* @param move The encoded move
+	* @return The to square
+	*/
+	public static int getTo(int move) {
+		return (move >>> 6) & 63;
+	}
+
+	/**
+	* Returns the extra value of a move
+	* @param move The encoded move
+	* @return The promotion piece type (Position.KNIGHT - Position.QUEEN) or wall type, 0 if none
+	*/
+	public static int getExtra(int move) {
+		return (move >>> 12) & 7;
+	}
+
+	/**
+	* Returns the type of a move
+	* @param move The encoded move
+	* @return The move type
+	*/
+	public static int getType(int move) {
+		return (move >>> 15) & 15;
+	}
+
+	/**
+	* Returns the wall character of a wall placement
+	* @param move The encoded move
+	* @return The wall character ('|', '_' or 'L')
+	*/
+	public static char getWallChar(int move) {
+		return WALL_CHARS.charAt(getExtra(move));
+	}
+
+	/**
+	* Returns the wall type of a wall character
+	* @param wall The wall character
+	* @return The wall type, 0 if not a wall
+	*/
+	public static int wallType(char wall) {
+		int idx = WALL_CHARS.indexOf(wall);
+		return idx < 1 ? 0 : idx;
+	}
+
+	/**
+	* Returns the piece type of a promotion character
+	* @param pc The piece character in either case
+	* @return The piece type, 0 if the piece cannot be promoted to
+	*/
+	public static int promotionType(char pc) {
+		int idx = PROMOTION_PIECES.indexOf(Character.toUpperCase(pc));
+		return idx < 1 ? 0 : idx;
+	}
+
+	/**
+	* Returns the white piece character of a promotion type
+	* @param type The piece type
+	* @return The piece character
+	*/
+	public static char promotionChar(int type) {
+		return PROMOTION_PIECES.charAt(type);
+	}
+
+	/**
+	* Returns the square index of a square in chess notation
+	* @param muv The text holding the square
+	* @param offset The position of the square in the text
+	* @return The square index, -1 if the square is not valid
+	*/
+	public static int parseSquare(String muv, int offset) {
+		if(muv.length() < offset + 2) {
+			return -1;
+		}
+		char file = Character.toLowerCase(muv.charAt(offset));
+		char rank = muv.charAt(offset + 1);
+		if(file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+			return -1;
+		}
+		return ('8' - rank) * 8 + (file - 'a');
+	}
+
+	/**
+	* Parses a move in move notation
+	* @param muv The move. Eg. e2-e4, 0-0, 0-0-0, Md4, Dc3, |e4, _e4, |_e4, =Q or ...
+	* @return The encoded move, NONE if the move is not valid notation
+	*/
+	public static int parse(String muv) {
+		if(muv.equals("...")) {
+			return create(PASS, 0, 0, 0);
+		}
+		if(muv.equals("0-0")) {
+			return create(CASTLE_KING, 0, 0, 0);
+		}
+		if(muv.equals("0-0-0")) {
+			return create(CASTLE_QUEEN, 0, 0, 0);
+		}
+		if(muv.length() < 2) {
+			return NONE;
+		}
+		char first = muv.charAt(0);
+		if(first == '=' && muv.length() == 2) {
+			int promo = promotionType(muv.charAt(1));
+			return promo == 0 ? NONE : create(PROMOTE, 0, 0, promo);
+		}
+		int type = -1;
+		int extra = 0;
+		int offset = 1;
+		if(first == 'M') {
+			type = MINE;
+		} else if(first == 'D') {
+			type = TRAP;
+		} else if(first == '_') {
+			type = WALL;
+			extra = WALL_SOUTH;
+		} else if(first == '|') {
+			type = WALL;
+			if(muv.charAt(1) == '_') {
+				extra = WALL_BOTH;
+				offset = 2;
+			} else {
+				extra = WALL_WEST;
+			}
+		}
+		if(type != -1) {
+			int sq = parseSquare(muv, offset);
+			if(sq == -1 || muv.length() != offset + 2) {
+				return NONE;
+			}
+			return create(type, sq, sq, extra);
+		}
+		// Piece move. Eg. e2-e4
+		if(muv.length() != 5 || muv.charAt(2) != '-') {
+			return NONE;
+		}
+		int from = parseSquare(muv, 0);
+		int to = parseSquare(muv, 3);
+		if(from == -1 || to == -1 || from == to) {
+			return NONE;
+		}
+		return create(NORMAL, from, to, 0);
+	}
+
+	/**
+	* Returns the move in move notation. <br>
+	* Promotions are written without the piece because the
+	* game log holds the promotion on its own line (=Q)
+	* @param move The encoded move
+	* @return The move notation
+	*/
+	public static String toString(int move) {
+		switch(getType(move)) {
+			case CASTLE_KING:
+				return "0-0";
+			case CASTLE_QUEEN:
+				return "0-0-0";
+			case WALL:
+				if(getExtra(move) == WALL_BOTH) {
+					return "|_" + Position.squareName(getTo(move));
+				}
+				return getWallChar(move) + Position.squareName(getTo(move));
+			case MINE:
+				return "M" + Position.squareName(getTo(move));
+			case TRAP:
+				return "D" + Position.squareName(getTo(move));
+			case PASS:
+				return "...";
+			case PROMOTE:
+				return "=" + promotionChar(getExtra(move));
+			default:
+				return Position.squareName(getFrom(move)) + "-" + Position.squareName(getTo(move));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+* A reusable buffer of encoded moves. <br>
+* The buffer is cleared and refilled instead of being created
+* again, so generating moves does not create any objects.
+*/
+public class MoveList {
+	private static final int CAPACITY = 512; // Enough for any position and its placements
+	private int[] moves; // The encoded moves
+	private int size; // Number of moves in the list
+
+	/**
+	* Creates an empty move list
+	*/
+	public MoveList() {
+		moves = new int[CAPACITY];
+		size = 0;
+	}
+
+	/**
+	* Empties the list
+	*/
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	* Adds a move to the list
+	* @param move The encoded move
+	*/
+	public void add(int move) {
+		if(size == moves.length) {
+			moves = java.util.Arrays.copyOf(moves, moves.length * 2);
+		}
+		moves[size++] = move;
+	}
+
+	/**
+	* Keeps the first moves of the list and drops the rest
+	* @param newSize The number of moves to keep
+	*/
+	public void truncate(int newSize) {
+		if(newSize < size) {
+			size = newSize;
+		}
+	}
+
+	/**
+	* Returns the move at the given index
+	* @param i The index
+	* @return The encoded move
+	*/
+	public int get(int i) {
+		return moves[i];
+	}
+
+	/**
+	* Replaces the move at the given index
+	* @param i The index
+	* @param move The encoded move
+	*/
+	public void set(int i, int move) {
+		moves[i] = move;
+	}
+
+	/**
+	* Returns the number of moves in the list
+	* @return The list size
+	*/
+	public int size() {
+		return size;
+	}
+
+	/**
+	* Determines if the list holds the given move
+	* @param move The encoded move
+	* @return True if the move is in the list
+	*/
+	public boolean contains(int move) {
+		for(int i = 0; i < size; i++) {
+			if(moves[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
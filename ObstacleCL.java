@@ -1,3 +1,5 @@
+import java.io.File;
+
 /**
 * Main Class that acts as the driver for the game
 */
@@ -13,6 +15,98 @@ public class ObstacleCL {
 		if(args.length == 0) {
 			// Start interactive mode
 			myGameGUI = new ObstacleGUI();
+		} else if(args[0].equals("perft") && args.length >= 3 && !isAutoRun(args)) {
+			// PERFT MODE - Count move paths to measure and verify the move generator
+			boolean divide = false;
+			boolean placements = false;
+			int threads = 1;
+			int hashMb = 0;
+			try {
+				for(int i = 3; i < args.length; i++) {
+					if(args[i].equals("divide")) {
+						divide = true;
+					} else if(args[i].equals("placements")) {
+						placements = true;
+					} else if(args[i].equals("threads")) {
+						threads = Runtime.getRuntime().availableProcessors();
+					} else if(args[i].startsWith("threads=")) {
+						threads = Integer.parseInt(args[i].substring(8));
+					} else if(args[i].startsWith("hash=")) {
+						hashMb = Integer.parseInt(args[i].substring(5));
+					}
+				}
+				Perft.run(args[1], Integer.parseInt(args[2]), divide, placements, threads, hashMb);
+			} catch(NumberFormatException ex) {
+				System.out.println("ERROR: invalid number " + ex.getMessage());
+			}
+			System.exit(0); // Exit
+		} else if(args[0].equals("bench") && args.length <= 4 && !isAutoRun(args)) {
+			// BENCH MODE - Speedup of the parallel search over one thread
+			int threads = Runtime.getRuntime().availableProcessors();
+			int depth = 6;
+			int hashMb = 16;
+			try {
+				if(args.length > 1) {
+					threads = Integer.parseInt(args[1]);
+				}
+				if(args.length > 2) {
+					depth = Integer.parseInt(args[2]);
+				}
+				for(int i = 3; i < args.length; i++) {
+					if(args[i].startsWith("hash=")) {
+						hashMb = Integer.parseInt(args[i].substring(5));
+					}
+				}
+				ParallelSearch.bench(threads, depth, hashMb);
+			} catch(NumberFormatException ex) {
+				System.out.println("ERROR: invalid number " + ex.getMessage());
+			}
+			System.exit(0); // Exit
+		} else if(args[0].equals("batch") && args.length >= 2 && !isAutoRun(args)) {
+			// BATCH MODE - Many AUTO MODE games at once from a manifest file or directory
+			int threads = Runtime.getRuntime().availableProcessors();
+			String outDir = null;
+			boolean verbose = false;
+			try {
+				for(int i = 2; i < args.length; i++) {
+					if(args[i].startsWith("threads=")) {
+						threads = Integer.parseInt(args[i].substring(8));
+					} else if(args[i].startsWith("out=")) {
+						outDir = args[i].substring(4);
+					} else if(args[i].equals("verbose")) {
+						verbose = true;
+					}
+				}
+				BatchRunner.run(args[1], threads, outDir, verbose);
+			} catch(NumberFormatException ex) {
+				System.out.println("ERROR: invalid number " + ex.getMessage());
+			}
+			System.exit(0); // Exit
+		} else if(args[0].equals("server") && args.length <= 6 && !isAutoRun(args)) {
+			// SERVER MODE - Many games at once over a local TCP socket
+			try {
+				if(args.length > 1 && args[1].equals("bench")) {
+					int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+					int clients = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+					int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+					int watchers = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+					GameServer.bench(sessions, clients, rounds, watchers);
+				} else {
+					GameServer.run(args.length > 1 ? Integer.parseInt(args[1]) : 7777);
+				}
+			} catch(NumberFormatException ex) {
+				System.out.println("ERROR: invalid number " + ex.getMessage());
+			}
+			System.exit(0); // Exit
+		} else if(args.length == 3 && args[0].equals("convert") && !isAutoRun(args)) {
+			// CONVERT MODE - Game log from text to binary or from binary to text
+			BinaryGameLog.convert(args[1], args[2]);
+			System.exit(0); // Exit
+		} else if(args.length == 1 && args[0].equals("protocol")) {
+			// PROTOCOL MODE - Engine commands from standard input for scripts
+			EngineProtocol protocol = new EngineProtocol();
+			protocol.run();
+			System.exit(0); // Exit
 		} else if(args.length == 3) {
 			// Start command line interface with arguments
 			myGame = new Chess(args[0], args[1], args[2]);
@@ -27,8 +121,24 @@ public class ObstacleCL {
 			System.out.println();
 			System.out.println("AUTO MODE     : java " + className + " [Input Board File] [Game File] [Output Board File]");
 			System.out.println("CLI MODE      : java " + className + " cli");
+			System.out.println("PERFT MODE    : java " + className + " perft [Input Board File] [Depth] [divide] [placements] [threads[=N]] [hash=MB]");
+			System.out.println("PROTOCOL MODE : java " + className + " protocol");
+			System.out.println("CONVERT MODE  : java " + className + " convert [Input Game File] [Output Game File]");
+			System.out.println("BENCH MODE    : java " + className + " bench [Threads] [Depth] [hash=MB]");
+			System.out.println("BATCH MODE    : java " + className + " batch [Manifest File|Directory] [threads=N] [out=Directory] [verbose]");
+			System.out.println("SERVER MODE   : java " + className + " server [Port] | server bench [Sessions] [Clients] [Rounds] [Watchers]");
 			System.out.println("GRAPHICS MODE : java " + className);
 			System.exit(0); // Terminate
 		}
 	}
+
+	/**
+	* Determines if the arguments are an AUTO MODE run whose input board
+	* file has the name of another mode, so that mode does not take it over
+	* @param args The command line arguments
+	* @return True if there are three arguments and the first is a file
+	*/
+	private static boolean isAutoRun(String[] args) {
+		return args.length == 3 && new File(args[0]).isFile();
+	}
 }
\ No newline at end of file
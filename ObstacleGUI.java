@@ -31,6 +31,7 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 	private JButton mineBtn; // Button to add mines
 	private JButton trapBtn; // Button to add traps
 	private JButton wallBtn; // Button to add walls
+	private JButton computerBtn; // Button to let the computer play a move
 	private JToggleButton tutMode; // Tutorial mode toggle
 	private JLabel currentPlayer; // The current player label
 	private String myMove; // The move to be made by pieces
@@ -38,8 +39,7 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 	private JList<String> movesList; // The game log visible to the user
 	private JScrollPane moveSP; //  Game log list container
 	private char wallToAdd; // The wall to add
-	private Storage thePast; // The past state of the game
-	private Storage thePresent; // The present state of the game before going back
+	private Snapshot thePast; // The past state of the game on view, null when the live game is shown
 
 	/**
 	* This allows the GUI to be independant and no rely on a driver class
@@ -112,7 +112,6 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		gui.add(chessBoard);
 		wallToAdd = '-';
 		thePast = null;
-		thePresent = null;
 		newGame = new JButton("New Game");
 		newGame.setToolTipText("Start new game");
 		newGame.setPreferredSize(new Dimension(100, 30));
@@ -124,6 +123,9 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		loadBtn.setPreferredSize(new Dimension(70, 30));
 		undoBtn = new JButton("Undo");
 		undoBtn.setToolTipText("Undo the last move");
+		computerBtn = new JButton("Computer");
+		computerBtn.setToolTipText("Let the computer play a move");
+		computerBtn.setPreferredSize(new Dimension(100, 30));
 		tutMode = new JToggleButton("-ON-");
 		tutMode.setToolTipText("Tutorial Mode");
 		tutMode.setSelected(true); // Default on
@@ -156,6 +158,7 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		toolbar.add(newGame);
 		toolbar.add(saveBtn);
 		toolbar.add(loadBtn);
+		toolbar.add(computerBtn);
 		toolbar.addSeparator();
 		toolbar.add(new JLabel("Tutorial Mode: "));
 		toolbar.add(tutMode);
@@ -171,6 +174,7 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		movesBtn.addActionListener(new MovesBtn());
 		homeBtn.addActionListener(new HomeBtn());
 		undoBtn.addActionListener(new UndoBtn());
+		computerBtn.addActionListener(new ComputerBtn());
 		mineBtn.addActionListener(new MinesBtn());
 		trapBtn.addActionListener(new TrapsBtn());
 		wallBtn.addActionListener(new WallsBtn());
@@ -219,6 +223,9 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 	*@param deleteData If true then create a new game else just refresh UI elements
 	*/
 	private void newGame(boolean deleteData) {
+		// Show the live game
+		thePast = null;
+		homeBtn.setEnabled(false);
 		// Delete old data
 		for(int i = 0; i < boardSquares.length; i++) {
 			for(int j = 0; j < boardSquares[i].length; j++) {
@@ -375,14 +382,37 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		if(movesList.getSelectedIndex() == -1) {
 			return; // Just incase selection error
 		}
-		if(thePast == null) {
-			thePresent = myGame.getBoardState(myGame.getGameLog().length - 1);
+		// The game is not changed, the board shows a snapshot of the selected move
+		int pt = myGame.getGameLog().length - movesList.getSelectedIndex();
+		Snapshot past = pt < myGame.getGameLog().length ? myGame.getSnapshot(pt) : myGame.getSnapshot();
+		if(past == null) {
+			return;
 		}
-		movesBtn.setEnabled(false);
+		thePast = past;
 		homeBtn.setEnabled(true);
-		thePast = myGame.getBoardState(myGame.getGameLog().length - movesList.getSelectedIndex());
-		myGame.setBoardState(thePast);
-		newGame(false);
+		for(int i = 0; i < boardSquares.length; i++) {
+			for(int j = 0; j < boardSquares[i].length; j++) {
+				if(boardSquares[i][j].getPiece() != null) {
+					boardSquares[i][j].removePiece();
+				}
+				char pc = thePast.getPiece(i, j);
+				Piece newPiece = getPiece(pc);
+				if(newPiece != null) {
+					boardSquares[i][j].setPiece(newPiece);
+				}
+				boardSquares[i][j].setWall(thePast.getWall(i, j));
+				boardSquares[i][j].setTrapMine(thePast.getObstacle(i, j));
+				boardSquares[i][j].placeWallAndTraps();
+				boardSquares[i][j].removeCheck();
+				if((pc == 'K' && thePast.getWhiteCheck()) || (pc == 'k' && thePast.getBlackCheck())) {
+					boardSquares[i][j].setCheck();
+				}
+				// Refresh
+				boardSquares[i][j].select();
+				boardSquares[i][j].deSelect();
+			}
+		}
+		currentPlayer.setText("Viewing move: " + (thePast.getPlayer() == 'w' ? "WHITE" : "BLACK") + " to play");
 		movesBtn.setEnabled(false);
 		movesList.clearSelection();
 	}
@@ -454,6 +484,9 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 	*/
 	@Override
 	public void mouseClicked(MouseEvent arg0){
+		if(thePast != null) {
+			return; // Viewing an old move
+		}
 		BoardSquare clickedSquare = (BoardSquare)arg0.getSource(); // Get the clicked item
 		int[] sqPos = clickedSquare.getPosition();
 		// Add Mines/Traps
@@ -559,8 +592,8 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 				if(posMoves.get(i).equals("0-0") || posMoves.get(i).equals("0-0-0")) {
 					testMove = posMoves.get(i);
 				}
-				if(myGame.move(testMove)) {
-					// Successful test move
+				if(myGame.isLegalMove(testMove)) {
+					// Legal move
 					int[] pcpos = selectedSquare.getPosition();
 					if(posMoves.get(i).equals("0-0")) {
 						// Add castling to gui
@@ -570,7 +603,6 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 					} else {
 						cleanMoves.add(posMoves.get(i));
 					}
-					myGame.restoreBoard(); // Revert move
 				}
 			}
 
@@ -844,6 +876,9 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 	private class UndoBtn implements ActionListener {
 		@Override
 		public void actionPerformed(ActionEvent arg0) {
+			if(thePast != null) {
+				return; // Viewing an old move
+			}
 			ArrayList<String> gamelog = new ArrayList<String>(Arrays.asList(myGame.getGameLog()));
 			int i = gamelog.size() - 1;
 			if(i < 0) {
@@ -860,6 +895,66 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		}
 	}
 
+	/**
+	* This handles the clicking of the 'Computer' button. <br>
+	* The engine searches a copy of the game for one second in the background
+	* and plays its move on the event thread when it is done
+	*/
+	private class ComputerBtn implements ActionListener {
+		private Engine engine = new Engine(); // Search engine, kept between moves
+
+		@Override
+		public void actionPerformed(ActionEvent arg0) {
+			if(thePast != null) {
+				return; // Viewing an old move
+			}
+			final Chess searchGame = new Chess(myGame); // Private board, the game can change during the search
+			final long searchKey = myGame.getHashKey();
+			computerBtn.setEnabled(false);
+			new SwingWorker<Integer, Void>() {
+				@Override
+				protected Integer doInBackground() {
+					return engine.search(searchGame, 0, 1000);
+				}
+
+				@Override
+				protected void done() {
+					computerBtn.setEnabled(true);
+					int best;
+					try {
+						best = get();
+					} catch(Exception ex) {
+						JOptionPane.showMessageDialog(null, "Search failed: " + ex.getMessage(), "Computer", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					if(thePast != null || myGame.getHashKey() != searchKey) {
+						return; // The game changed during the search
+					}
+					if(best == Move.NONE) {
+						JOptionPane.showMessageDialog(null, "No legal move", "Computer", JOptionPane.INFORMATION_MESSAGE);
+						return;
+					}
+					for(int i = 0; i < boardSquares.length; i++) {
+						for(int j = 0; j < boardSquares[i].length; j++) {
+							if(boardSquares[i][j].isPossibleDestination()) {
+								boardSquares[i][j].removePossibleDestination();
+							}
+						}
+					}
+					if(selectedSquare != null) {
+						selectedSquare.deSelect();
+						selectedSquare = null;
+					}
+					myMove = ""; // Reset
+					myGame.move(best);
+					computerBtn.setToolTipText("Last search: depth " + engine.getDepth() + ", "
+						+ engine.getNodesPerSecond() + " nodes/second");
+					newGame(false); // Refresh UI elements
+				}
+			}.execute();
+		}
+	}
+
 	/**
 	* This handles the clicking of the 'GOTO' button to load 
 	* the selected move on the chess board
@@ -900,11 +995,7 @@ public class ObstacleGUI extends JFrame implements MouseListener {
 		@Override
 		public void actionPerformed(ActionEvent arg0) {
 			movesBtn.setEnabled(false);
-			homeBtn.setEnabled(false);
-			myGame.setBoardState(thePresent);
-			thePast = null;
-			thePresent = null;
-			newGame(false);
+			newGame(false); // The live game was never changed
 			movesList.clearSelection();
 		}
 	}
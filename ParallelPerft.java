@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+* This class counts perft on several threads with a fork/join pool. <br>
+* The moves near the root are split into tasks. A task holds the path of
+* moves from the root to its node. Every worker thread owns a Chess copy
+* and a Perft counter. It copies the root into its board, plays the path
+* and then counts the small subtree on its own. The root game is only read
+* while the count runs.
+*/
+public class ParallelPerft {
+	private static final int SPLIT_DEPTH = 3; // Subtrees of this depth or less are counted by one worker
+	private ForkJoinPool pool; // The worker threads
+	private boolean placements; // Count walls, mines and trap doors as moves
+	private PerftTable table; // Shared table of subtree counts, null if not used
+	private Chess root; // The position the count starts from
+	private ThreadLocal<Perft> workers; // The board and counter of each worker thread
+
+	/**
+	* Creates a parallel move counter
+	* @param threads The number of worker threads
+	* @param placements True to count wall, mine and trap door placements as moves
+	* @param table Shared table of subtree counts, null to count every path
+	*/
+	public ParallelPerft(int threads, boolean placements, PerftTable table) {
+		this.pool = new ForkJoinPool(threads);
+		this.placements = placements;
+		this.table = table;
+		this.workers = new ThreadLocal<Perft>();
+	}
+
+	/**
+	* Counts the move paths of a game to the given depth
+	* @param game The game, it must not change while the count runs
+	* @param depth The number of moves in each path
+	* @return The number of leaf positions
+	*/
+	public long count(Chess game, int depth) {
+		root = game;
+		return pool.invoke(new PerftTask(new int[0], depth));
+	}
+
+	/**
+	* Counts the move paths below each first move
+	* @param game The game, it must not change while the count runs
+	* @param depth The number of moves in each path, at least 1
+	* @param moves The first moves to count
+	* @return The count of each first move, -1 for a move that leaves the king in check
+	*/
+	public long[] divide(Chess game, int depth, MoveList moves) {
+		root = game;
+		ArrayList<PerftTask> tasks = new ArrayList<PerftTask>();
+		long[] counts = new long[moves.size()];
+		Chess board = new Chess(game);
+		for(int i = 0; i < moves.size(); i++) {
+			int m = moves.get(i);
+			if(Perft.isLegal(board, m)) {
+				tasks.add(new PerftTask(new int[] {m}, depth - 1));
+			} else {
+				tasks.add(null);
+			}
+		}
+		for(PerftTask task : tasks) {
+			if(task != null) {
+				pool.execute(task);
+			}
+		}
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] = tasks.get(i) == null ? -1 : tasks.get(i).join();
+		}
+		return counts;
+	}
+
+	/**
+	* Stops the worker threads
+	*/
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	* Returns the counter of the current worker thread, set to the node at the end of a path
+	* @param path The moves from the root
+	* @return The worker's counter
+	*/
+	private Perft enter(int[] path) {
+		Perft perft = workers.get();
+		if(perft == null) {
+			perft = new Perft(new Chess(root), placements, table);
+			workers.set(perft);
+		}
+		Chess board = perft.getGame();
+		board.copyFrom(root);
+		for(int i = 0; i < path.length; i++) {
+			board.makeMove(path[i]);
+		}
+		return perft;
+	}
+
+	/**
+	* Counts the subtree below one node
+	*/
+	private class PerftTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L; // RecursiveTask is Serializable
+		private int[] path; // Moves from the root to the node
+		private int depth; // Remaining depth
+
+		/**
+		* Creates a task for a node
+		* @param path The moves from the root to the node
+		* @param depth The remaining depth
+		*/
+		PerftTask(int[] path, int depth) {
+			this.path = path;
+			this.depth = depth;
+		}
+
+		/**
+		* Counts the subtree, splitting it into child tasks if it is large
+		* @return The number of leaf positions
+		*/
+		@Override
+		protected Long compute() {
+			Perft perft = enter(path);
+			if(depth <= SPLIT_DEPTH) {
+				return perft.count(depth);
+			}
+			Chess board = perft.getGame();
+			long key = board.getHashKey();
+			if(table != null) {
+				long nodes = table.probe(key, depth);
+				if(nodes != -1) {
+					return nodes;
+				}
+			}
+			MoveList moves = new MoveList();
+			board.generateMoves(moves);
+			if(placements) {
+				board.generatePlacements(moves);
+			}
+			ArrayList<PerftTask> children = new ArrayList<PerftTask>();
+			for(int i = 0; i < moves.size(); i++) {
+				int m = moves.get(i);
+				if(Perft.isLegal(board, m)) {
+					int[] childPath = java.util.Arrays.copyOf(path, path.length + 1);
+					childPath[path.length] = m;
+					children.add(new PerftTask(childPath, depth - 1));
+				}
+			}
+			// The board is free now, the child tasks set it up again
+			invokeAll(children);
+			long nodes = 0;
+			for(PerftTask child : children) {
+				nodes += child.join();
+			}
+			if(table != null) {
+				table.store(key, depth, nodes);
+			}
+			return nodes;
+		}
+	}
+}
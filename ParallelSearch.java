@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+* This class searches for the best move on several threads (Lazy SMP). <br>
+* Every thread runs its own Engine with its own copy of the game. The
+* engines share one transposition table, so what one thread finds the
+* others can use. Half of the helpers start one iteration deeper, so the
+* threads search different depths at the same time. When the main engine
+* finishes, a shared stop flag ends the helpers. The game is only read
+* while the search runs.
+*/
+public class ParallelSearch {
+	private static final String[] BENCH_GAMES = { // Move lists that set up the bench positions
+		"",
+		"e2-e4 e7-e5 g1-f3 b8-c6 f1-c4 g8-f6",
+		"d2-d4 d7-d5 c2-c4 e7-e6 b1-c3 g8-f6 c1-g5 f8-e7",
+		"Md4 Me5 Dc6 Df3 |e4 e2-e3 _d5 d7-d6",
+		"e2-e4 c7-c5 g1-f3 d7-d6 d2-d4 c5-d4 f3-d4 g8-f6 b1-c3 a7-a6"
+	};
+	private ExecutorService pool; // The helper threads
+	private Engine[] engines; // engines[0] runs on the calling thread, the others are helpers
+	private TranspositionTable table; // Table shared by all engines
+	private AtomicBoolean stopSignal; // Set to stop the helpers
+	private MoveList rootMoves; // Legal moves of the searched game
+	private Engine best; // Engine with the deepest finished iteration of the last search
+	private long nodes; // Positions visited by all engines in the last search
+	private long nanos; // Time taken by the last search
+
+	/**
+	* Creates a parallel search
+	* @param threads The number of threads, at least 1
+	* @param table The table shared by the threads
+	*/
+	public ParallelSearch(int threads, TranspositionTable table) {
+		this.table = table;
+		threads = Math.max(1, threads);
+		pool = threads > 1 ? Executors.newFixedThreadPool(threads - 1) : null;
+		stopSignal = new AtomicBoolean(false);
+		engines = new Engine[threads];
+		for(int i = 0; i < threads; i++) {
+			engines[i] = new Engine(table);
+			engines[i].setStopSignal(stopSignal);
+			engines[i].setFirstDepth(1 + (i & 1)); // Depth staggering
+		}
+		rootMoves = new MoveList();
+		best = engines[0];
+	}
+
+	/**
+	* Sets if wall placements are searched as well as piece moves
+	* @param placements True to search wall placements
+	*/
+	public void setPlacements(boolean placements) {
+		for(int i = 0; i < engines.length; i++) {
+			engines[i].setPlacements(placements);
+		}
+	}
+
+	/**
+	* Sets if the main thread prints a line after every iteration
+	* @param verbose True to print the reports
+	*/
+	public void setVerbose(boolean verbose) {
+		engines[0].setVerbose(verbose);
+	}
+
+	/**
+	* Returns the number of threads
+	* @return The thread count
+	*/
+	public int getThreads() {
+		return engines.length;
+	}
+
+	/**
+	* Searches for the best move of the player to move
+	* @param game The game, it must not change while the search runs
+	* @param maxDepth The deepest iteration, 0 for no depth limit
+	* @param millis The time budget in milliseconds, 0 for no time limit
+	* @return The best move, Move.NONE if the player has no move
+	*/
+	public int search(Chess game, int maxDepth, long millis) {
+		long start = System.nanoTime();
+		stopSignal.set(false);
+		table.newSearch();
+		engines[0].generateRootMoves(game, rootMoves);
+		ArrayList<Future<?>> helpers = new ArrayList<Future<?>>();
+		for(int i = 1; i < engines.length; i++) {
+			helpers.add(pool.submit(new Helper(engines[i], game, rootMoves, maxDepth, millis)));
+		}
+		engines[0].search(game, rootMoves, maxDepth, millis);
+		stopSignal.set(true);
+		for(Future<?> helper : helpers) {
+			try {
+				helper.get();
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch(ExecutionException ex) {
+				System.out.println("ERROR: search thread failed " + ex.getCause());
+			}
+		}
+		nanos = System.nanoTime() - start;
+		nodes = 0;
+		best = engines[0];
+		for(int i = 0; i < engines.length; i++) {
+			nodes += engines[i].getNodes();
+			if(engines[i].getDepth() > best.getDepth()) {
+				best = engines[i];
+			}
+		}
+		return best.getBestMove();
+	}
+
+	/**
+	* Asks a running search to stop. The best move found so far is returned
+	*/
+	public void stop() {
+		stopSignal.set(true);
+		engines[0].stop();
+	}
+
+	/**
+	* Stops the helper threads
+	*/
+	public void shutdown() {
+		if(pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	* Returns the number of positions visited by all threads in the last search
+	* @return The node count
+	*/
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	* Returns the speed of all threads together in the last search
+	* @return The nodes searched per second
+	*/
+	public long getNodesPerSecond() {
+		return nanos > 0 ? nodes * 1000000000L / nanos : nodes;
+	}
+
+	/**
+	* Returns the depth of the deepest finished iteration of the last search
+	* @return The depth in plies
+	*/
+	public int getDepth() {
+		return best.getDepth();
+	}
+
+	/**
+	* Returns the depth of the main thread's last finished iteration, the last one its reports printed
+	* @return The depth in plies
+	*/
+	public int getMainDepth() {
+		return engines[0].getDepth();
+	}
+
+	/**
+	* Returns a report of the last search
+	* @return The depth, score, node count, speed, time and best move on one line
+	*/
+	public String getInfo() {
+		return Engine.formatInfo(best.getDepth(), best.getScore(), nodes, nanos, table.getHitRate(), best.getBestMove());
+	}
+
+	/**
+	* Searches a fixed set of positions with one thread and then with the
+	* given number of threads, and prints the time of each and the speedup
+	* @param threads The number of threads to compare with one thread
+	* @param depth The search depth
+	* @param hashMb The size of the transposition table in megabytes
+	*/
+	public static void bench(int threads, int depth, int hashMb) {
+		if(threads < 1 || depth < 1 || hashMb < 1) {
+			System.out.println("ERROR: threads, depth and hash size must be at least 1");
+			return;
+		}
+		Chess[] games = new Chess[BENCH_GAMES.length];
+		for(int i = 0; i < BENCH_GAMES.length; i++) {
+			games[i] = new Chess();
+			String[] moves = BENCH_GAMES[i].split(" ");
+			for(int j = 0; j < moves.length; j++) {
+				if(!moves[j].isEmpty() && !games[i].move(moves[j])) {
+					System.out.println("ERROR: bench position " + (i + 1) + " could not be set up");
+					return;
+				}
+			}
+		}
+		// Warm up the JIT compiler so the first timed search is not slower
+		Engine warmUp = new Engine(new TranspositionTable(hashMb));
+		for(int i = 0; i < games.length; i++) {
+			warmUp.search(games[i], depth, 0);
+		}
+		long totalOne = 0;
+		long totalMany = 0;
+		for(int i = 0; i < games.length; i++) {
+			long one = timeSearch(games[i], 1, depth, hashMb);
+			long many = timeSearch(games[i], threads, depth, hashMb);
+			totalOne += one;
+			totalMany += many;
+			System.out.printf("Position %d: 1 thread %d ms, %d threads %d ms, speedup %.2f%n",
+				i + 1, one / 1000000L, threads, many / 1000000L, many > 0 ? (double)one / many : 0.0);
+		}
+		System.out.println();
+		System.out.printf("Total: 1 thread %d ms, %d threads %d ms, speedup %.2f%n",
+			totalOne / 1000000L, threads, totalMany / 1000000L, totalMany > 0 ? (double)totalOne / totalMany : 0.0);
+	}
+
+	/**
+	* Searches a position to a fixed depth with an empty table and prints the report
+	* @param game The position
+	* @param threads The number of threads
+	* @param depth The search depth
+	* @param hashMb The size of the transposition table in megabytes
+	* @return The time taken in nanoseconds
+	*/
+	private static long timeSearch(Chess game, int threads, int depth, int hashMb) {
+		ParallelSearch search = new ParallelSearch(threads, new TranspositionTable(hashMb));
+		search.search(game, depth, 0);
+		search.shutdown();
+		System.out.println(search.getInfo());
+		return search.nanos;
+	}
+
+	/**
+	* Runs one helper engine until the main engine stops it
+	*/
+	private static class Helper implements Runnable {
+		private Engine engine; // The helper's engine
+		private Chess game; // The searched game, only read
+		private MoveList moves; // The root moves, only read
+		private int maxDepth; // The deepest iteration
+		private long millis; // The time budget in milliseconds
+
+		/**
+		* Creates a helper
+		* @param engine The helper's engine
+		* @param game The searched game
+		* @param moves The root moves
+		* @param maxDepth The deepest iteration, 0 for no depth limit
+		* @param millis The time budget in milliseconds, 0 for no time limit
+		*/
+		Helper(Engine engine, Chess game, MoveList moves, int maxDepth, long millis) {
+			this.engine = engine;
+			this.game = game;
+			this.moves = moves;
+			this.maxDepth = maxDepth;
+			this.millis = millis;
+		}
+
+		/**
+		* Searches the root moves prepared by the main engine
+		*/
+		@Override
+		public void run() {
+			engine.search(game, moves, maxDepth, millis);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+* This class counts the move paths from a position to a given depth (perft). <br>
+* Every legal move is played with makeMove and taken back with unmakeMove,
+* so trap doors and mine blasts are part of the count. Wall placements and,
+* before the game starts, mine and trap door placements can be counted as
+* moves as well. The counts verify the move generator and the time taken
+* measures its speed. A shared PerftTable can skip subtrees that were
+* already counted through another move order.
+*/
+public class Perft {
+	private static final int MAX_DEPTH = 64; // Deepest supported search
+	private Chess game; // The game to count the moves of
+	private boolean placements; // Count walls, mines and trap doors as moves
+	private PerftTable table; // Shared table of subtree counts, null if not used
+	private MoveList[] lists; // One move buffer per depth
+
+	/**
+	* Creates a move counter for the given game
+	* @param game The game, its position is changed during a count and restored afterwards
+	* @param placements True to count wall, mine and trap door placements as moves
+	* @param table Shared table of subtree counts, null to count every path
+	*/
+	public Perft(Chess game, boolean placements, PerftTable table) {
+		this.game = game;
+		this.placements = placements;
+		this.table = table;
+		lists = new MoveList[MAX_DEPTH + 1];
+		for(int i = 0; i < lists.length; i++) {
+			lists[i] = new MoveList();
+		}
+	}
+
+	/**
+	* Counts the move paths to the given depth
+	* @param depth The number of moves in each path
+	* @return The number of leaf positions
+	*/
+	public long count(int depth) {
+		if(depth == 0) {
+			return 1;
+		}
+		long key = 0L;
+		if(table != null && depth > 1) {
+			key = game.getHashKey();
+			long nodes = table.probe(key, depth);
+			if(nodes != -1) {
+				return nodes;
+			}
+		}
+		MoveList list = generate(depth);
+		long nodes = 0;
+		for(int i = 0; i < list.size(); i++) {
+			int m = list.get(i);
+			char mover = game.getPlayer();
+			game.makeMove(m);
+			if(!isPieceMove(m) || !game.isChecked(mover)) {
+				nodes += depth == 1 ? 1 : count(depth - 1);
+			}
+			game.unmakeMove();
+		}
+		if(table != null && depth > 1) {
+			table.store(key, depth, nodes);
+		}
+		return nodes;
+	}
+
+	/**
+	* Returns the game this counter plays the moves on
+	* @return The game
+	*/
+	public Chess getGame() {
+		return game;
+	}
+
+	/**
+	* Determines if a generated move is legal
+	* @param game The game the move was generated in
+	* @param m The encoded move
+	* @return True if the move does not leave the mover's king in check
+	*/
+	public static boolean isLegal(Chess game, int m) {
+		if(!isPieceMove(m)) {
+			return true; // Placements never leave the king in check
+		}
+		char mover = game.getPlayer();
+		game.makeMove(m);
+		boolean legal = !game.isChecked(mover);
+		game.unmakeMove();
+		return legal;
+	}
+
+	/**
+	* Counts the move paths to the given depth and prints the count below
+	* each legal first move, followed by the total and the speed
+	* @param depth The number of moves in each path, at least 1
+	* @return The number of leaf positions
+	*/
+	public long divide(int depth) {
+		long start = System.nanoTime();
+		MoveList list = generate(depth);
+		long total = 0;
+		for(int i = 0; i < list.size(); i++) {
+			int m = list.get(i);
+			char mover = game.getPlayer();
+			game.makeMove(m);
+			if(!isPieceMove(m) || !game.isChecked(mover)) {
+				long nodes = count(depth - 1);
+				System.out.println(Move.toString(m) + promotionSuffix(m) + ": " + nodes);
+				total += nodes;
+			}
+			game.unmakeMove();
+		}
+		printSummary(total, System.nanoTime() - start);
+		return total;
+	}
+
+	/**
+	* Runs perft on a board file and prints the result
+	* @param boardFile The board file to load
+	* @param depth The number of moves in each path
+	* @param divide True to print the count below each first move
+	* @param placements True to count wall, mine and trap door placements as moves
+	* @param threads The number of threads, 1 counts on the calling thread
+	* @param hashMb The size of the shared count table in megabytes, 0 for none
+	*/
+	public static void run(String boardFile, int depth, boolean divide, boolean placements, int threads, int hashMb) {
+		Chess game = new Chess();
+		if(!game.loadGame(boardFile)) {
+			return;
+		}
+		if(depth < 1 || depth > MAX_DEPTH) {
+			System.out.println("ERROR: depth must be between 1 and " + MAX_DEPTH);
+			return;
+		}
+		if(threads < 1) {
+			System.out.println("ERROR: at least one thread is needed");
+			return;
+		}
+		PerftTable table = hashMb > 0 ? new PerftTable(hashMb) : null;
+		if(threads == 1) {
+			Perft perft = new Perft(game, placements, table);
+			if(divide) {
+				perft.divide(depth);
+			} else {
+				long start = System.nanoTime();
+				long nodes = perft.count(depth);
+				printSummary(nodes, System.nanoTime() - start);
+			}
+			return;
+		}
+		ParallelPerft parallel = new ParallelPerft(threads, placements, table);
+		long start = System.nanoTime();
+		long nodes = 0;
+		if(divide) {
+			MoveList moves = new Perft(game, placements, null).generate(depth);
+			long[] counts = parallel.divide(game, depth, moves);
+			for(int i = 0; i < counts.length; i++) {
+				if(counts[i] != -1) {
+					System.out.println(Move.toString(moves.get(i)) + promotionSuffix(moves.get(i)) + ": " + counts[i]);
+					nodes += counts[i];
+				}
+			}
+		} else {
+			nodes = parallel.count(game, depth);
+		}
+		printSummary(nodes, System.nanoTime() - start);
+		parallel.shutdown();
+	}
+
+	/**
+	* Fills the move buffer of a depth with the moves of the player to move
+	* @param depth The remaining depth
+	* @return The filled move buffer
+	*/
+	private MoveList generate(int depth) {
+		MoveList list = lists[depth];
+		game.generateMoves(list);
+		if(placements) {
+			game.generatePlacements(list);
+		}
+		return list;
+	}
+
+	/**
+	* Determines if a move moves a piece, only these can leave the king in check
+	* @param m The encoded move
+	* @return True for piece moves and castling
+	*/
+	private static boolean isPieceMove(int m) {
+		int type = Move.getType(m);
+		return type == Move.NORMAL || type == Move.EN_PASSANT
+			|| type == Move.CASTLE_KING || type == Move.CASTLE_QUEEN;
+	}
+
+	/**
+	* Returns the promotion piece of a move for the divide output
+	* @param m The encoded move
+	* @return The piece after an equals sign, empty if the move is not a promotion
+	*/
+	static String promotionSuffix(int m) {
+		int type = Move.getType(m);
+		if(type != Move.NORMAL || Move.getExtra(m) == 0) {
+			return "";
+		}
+		return "=" + Move.promotionChar(Move.getExtra(m));
+	}
+
+	/**
+	* Prints the node count, the time taken and the nodes per second
+	* @param nodes The number of leaf positions
+	* @param nanos The time taken in nanoseconds
+	*/
+	private static void printSummary(long nodes, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.println();
+		System.out.println("Nodes: " + nodes);
+		System.out.printf("Time: %.3f s%n", seconds);
+		System.out.println("Nodes/second: " + (seconds > 0 ? (long)(nodes / seconds) : nodes));
+	}
+}
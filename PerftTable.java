@@ -0,0 +1,54 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* This class is a shared table of perft subtree counts. <br>
+* Each entry is two longs: the count packed with its depth, and the
+* position key XORed with that data. Threads read and write entries
+* without locks. If two threads write the same entry at the same time,
+* the halves no longer match the key and the entry is treated as empty,
+* so a torn entry can never give a wrong count.
+*/
+public class PerftTable {
+	private AtomicLongArray entries; // Pairs of (key ^ data, data)
+	private int mask; // Entry count - 1, the entry count is a power of two
+
+	/**
+	* Creates a table of the given size
+	* @param megabytes The size of the table in megabytes
+	*/
+	public PerftTable(int megabytes) {
+		long wanted = Math.max(1L, (long)megabytes * 1024 * 1024 / 16);
+		int size = Integer.highestOneBit((int)Math.min(wanted, 1 << 28));
+		entries = new AtomicLongArray(size * 2);
+		mask = size - 1;
+	}
+
+	/**
+	* Looks up the count of a position
+	* @param key The position key
+	* @param depth The remaining depth of the count
+	* @return The stored count, -1 if the table does not hold it
+	*/
+	public long probe(long key, int depth) {
+		int idx = ((int)(key ^ (key >>> 32)) & mask) * 2;
+		long check = entries.get(idx);
+		long data = entries.get(idx + 1);
+		if((check ^ data) != key || (data & 0xFF) != depth) {
+			return -1;
+		}
+		return data >>> 8;
+	}
+
+	/**
+	* Stores the count of a position, replacing the old entry
+	* @param key The position key
+	* @param depth The remaining depth of the count
+	* @param nodes The number of leaf positions
+	*/
+	public void store(long key, int depth, long nodes) {
+		int idx = ((int)(key ^ (key >>> 32)) & mask) * 2;
+		long data = (nodes << 8) | depth;
+		entries.set(idx, key ^ data);
+		entries.set(idx + 1, data);
+	}
+}
@@ -0,0 +1,427 @@
+/**
+* This class holds the layout of the board as 64-bit bitboards. <br>
+* Square indexes follow the same layout as the board arrays in Chess,
+* the index of [x][y] is (x * 8 + y) so a8 is 0 and h1 is 63. <br>
+* A character view of the board is kept in step with the bitboards so
+* the GUI and the board files can still read the board as characters.
+*/
+public class Position {
+	public static final int WHITE = 0; // White colour index
+	public static final int BLACK = 1; // Black colour index
+	public static final int PAWN = 0; // Piece type indexes
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+	public static final int TRAP = 0; // Obstacle indexes. Hidden trap door 'D'
+	public static final int OPEN_TRAP = 1; // Open trap door 'O'
+	public static final int MINE = 2; // Mine 'M'
+	public static final int MINE_TRAP = 3; // Hidden mine and trap door combo 'X'
+	public static final String PIECES = "PNBRQKpnbrqk"; // Piece characters by piece index
+	private static final String OBSTACLES = "DOMX"; // Obstacle characters by obstacle index
+	private static final int[] PIECE_INDEX = new int[128]; // Piece index of a piece character
+	private static final long FILE_A = 0x0101010101010101L; // Squares on the a file
+	private static final long FILE_H = FILE_A << 7; // Squares on the h file
+	private static final long RANK_1 = 0xFF00000000000000L; // Squares on rank 1
+	private static final String[] SQUARE_NAMES = new String[64]; // Square names in chess notation
+	private long[] pieces; // One bitboard per piece. Index is colour * 6 + type
+	private long[] colours; // All pieces of a colour
+	private long occupied; // All pieces
+	private int[] kings; // Square of each king, -1 if there is none
+	private long[] obstacles; // One bitboard per obstacle type
+	private long westWalls; // Squares with a wall on the west side ('|' or 'L')
+	private long southWalls; // Squares with a wall on the south side ('_' or 'L')
+	private long[] wallBlocks; // Squares that a wall stops from stepping in each direction
+	private long[] blockedSteps; // Neighbours of each square that are cut off by a wall
+	private long key; // Zobrist key of the pieces, obstacles and walls
+	private int score; // Material and piece-square score of the pieces, White minus Black
+	private char[][] board; // Character view of the pieces
+	private char[][] oBoard; // Character view of the obstacles
+	private char[][] wBoard; // Character view of the walls
+
+	static {
+		for(int i = 0; i < PIECE_INDEX.length; i++) {
+			PIECE_INDEX[i] = -1;
+		}
+		for(int i = 0; i < PIECES.length(); i++) {
+			PIECE_INDEX[PIECES.charAt(i)] = i;
+		}
+		for(int i = 0; i < SQUARE_NAMES.length; i++) {
+			SQUARE_NAMES[i] = "" + (char)('a' + (i & 7)) + (8 - (i >>> 3));
+		}
+	}
+
+	/**
+	* Creates an empty board
+	*/
+	public Position() {
+		pieces = new long[12];
+		colours = new long[2];
+		kings = new int[2];
+		obstacles = new long[4];
+		wallBlocks = new long[8];
+		blockedSteps = new long[64];
+		board = new char[8][8];
+		oBoard = new char[8][8];
+		wBoard = new char[8][8];
+		clear();
+	}
+
+	/**
+	* Creates a copy of the given position
+	* @param other The position to copy
+	*/
+	public Position(Position other) {
+		this();
+		copyFrom(other);
+	}
+
+	/**
+	* Removes all pieces, obstacles and walls from the board
+	*/
+	public void clear() {
+		for(int i = 0; i < pieces.length; i++) {
+			pieces[i] = 0L;
+		}
+		for(int i = 0; i < obstacles.length; i++) {
+			obstacles[i] = 0L;
+		}
+		colours[WHITE] = colours[BLACK] = 0L;
+		occupied = 0L;
+		kings[WHITE] = kings[BLACK] = -1;
+		westWalls = southWalls = 0L;
+		key = 0L;
+		score = 0;
+		updateWallBlocks();
+		for(int i = 0; i < board.length; i++) {
+			for(int j = 0; j < board[i].length; j++) {
+				board[i][j] = '.';
+				oBoard[i][j] = '.';
+				wBoard[i][j] = '.';
+			}
+		}
+	}
+
+	/**
+	* Copies the given position into this one
+	* @param other The position to copy
+	*/
+	public void copyFrom(Position other) {
+		System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+		System.arraycopy(other.obstacles, 0, obstacles, 0, obstacles.length);
+		colours[WHITE] = other.colours[WHITE];
+		colours[BLACK] = other.colours[BLACK];
+		occupied = other.occupied;
+		kings[WHITE] = other.kings[WHITE];
+		kings[BLACK] = other.kings[BLACK];
+		westWalls = other.westWalls;
+		southWalls = other.southWalls;
+		key = other.key;
+		score = other.score;
+		System.arraycopy(other.wallBlocks, 0, wallBlocks, 0, wallBlocks.length);
+		System.arraycopy(other.blockedSteps, 0, blockedSteps, 0, blockedSteps.length);
+		for(int i = 0; i < board.length; i++) {
+			System.arraycopy(other.board[i], 0, board[i], 0, board[i].length);
+			System.arraycopy(other.oBoard[i], 0, oBoard[i], 0, oBoard[i].length);
+			System.arraycopy(other.wBoard[i], 0, wBoard[i], 0, wBoard[i].length);
+		}
+	}
+
+	/**
+	* Places a piece on the given square, replacing anything that is there. <br>
+	* The king squares are kept up to date here, so every move, trap door
+	* and mine blast updates them without searching the board
+	* @param x The X coordinate of the square
+	* @param y The Y coordinate of the square
+	* @param pc The piece character, '.' to empty the square
+	*/
+	public void setPiece(int x, int y, char pc) {
+		int sq = x * 8 + y;
+		long bit = 1L << sq;
+		int old = PIECE_INDEX[board[x][y]];
+		if(old != -1) {
+			pieces[old] &= ~bit;
+			colours[old / 6] &= ~bit;
+			occupied &= ~bit;
+			key ^= Zobrist.PIECES[old][sq];
+			score -= Evaluation.PIECE_SQUARE[old][sq];
+			if(old % 6 == KING && kings[old / 6] == sq) {
+				// Fall back to any other king of the colour
+				long king = pieces[old];
+				kings[old / 6] = king == 0L ? -1 : Long.numberOfTrailingZeros(king);
+			}
+		}
+		int idx = pc < 128 ? PIECE_INDEX[pc] : -1;
+		if(idx != -1) {
+			pieces[idx] |= bit;
+			colours[idx / 6] |= bit;
+			occupied |= bit;
+			key ^= Zobrist.PIECES[idx][sq];
+			score += Evaluation.PIECE_SQUARE[idx][sq];
+			board[x][y] = pc;
+			if(idx % 6 == KING) {
+				kings[idx / 6] = sq;
+			}
+		} else {
+			board[x][y] = '.';
+		}
+	}
+
+	/**
+	* Places an obstacle on the given square, replacing the old one
+	* @param x The X coordinate of the square
+	* @param y The Y coordinate of the square
+	* @param obs The obstacle character ('D', 'O', 'M', 'X'), '.' to remove it
+	*/
+	public void setObstacle(int x, int y, char obs) {
+		int sq = x * 8 + y;
+		long bit = 1L << sq;
+		int old = OBSTACLES.indexOf(oBoard[x][y]);
+		if(old != -1) {
+			obstacles[old] &= ~bit;
+			key ^= Zobrist.OBSTACLES[old][sq];
+		}
+		int idx = OBSTACLES.indexOf(obs);
+		if(idx != -1) {
+			obstacles[idx] |= bit;
+			key ^= Zobrist.OBSTACLES[idx][sq];
+			oBoard[x][y] = obs;
+		} else {
+			oBoard[x][y] = '.';
+		}
+	}
+
+	/**
+	* Places a wall on the given square, replacing the old one
+	* @param x The X coordinate of the square
+	* @param y The Y coordinate of the square
+	* @param wall The wall character ('|', '_', 'L'), '.' to remove it
+	*/
+	public void setWall(int x, int y, char wall) {
+		if(wBoard[x][y] == wall) {
+			return; // Nothing changes
+		}
+		int sq = x * 8 + y;
+		long bit = 1L << sq;
+		if((westWalls & bit) != 0L) {
+			key ^= Zobrist.WEST_WALLS[sq];
+		}
+		if((southWalls & bit) != 0L) {
+			key ^= Zobrist.SOUTH_WALLS[sq];
+		}
+		westWalls &= ~bit;
+		southWalls &= ~bit;
+		if(wall == '|' || wall == 'L') {
+			westWalls |= bit;
+			key ^= Zobrist.WEST_WALLS[sq];
+		}
+		if(wall == '_' || wall == 'L') {
+			southWalls |= bit;
+			key ^= Zobrist.SOUTH_WALLS[sq];
+		}
+		if(wall == '|' || wall == '_' || wall == 'L') {
+			wBoard[x][y] = wall;
+		} else {
+			wBoard[x][y] = '.';
+		}
+		updateWallBlocks();
+	}
+
+	/**
+	* Rebuilds the wall blocking masks. This only runs when a wall changes. <br>
+	* A west wall on a square sits between it and its west neighbour and a
+	* south wall between it and its south neighbour. Diagonal steps are only
+	* cut by an 'L' wall, between the square and its south-west neighbour.
+	*/
+	private void updateWallBlocks() {
+		long cornerWalls = westWalls & southWalls;
+		wallBlocks[AttackTables.NORTH] = southWalls << 8;
+		wallBlocks[AttackTables.NORTH_EAST] = (cornerWalls << 7) & ~FILE_H;
+		wallBlocks[AttackTables.EAST] = (westWalls >>> 1) & ~FILE_H;
+		wallBlocks[AttackTables.SOUTH_EAST] = 0L;
+		wallBlocks[AttackTables.SOUTH] = southWalls & ~RANK_1;
+		wallBlocks[AttackTables.SOUTH_WEST] = cornerWalls & ~FILE_A & ~RANK_1;
+		wallBlocks[AttackTables.WEST] = westWalls & ~FILE_A;
+		wallBlocks[AttackTables.NORTH_WEST] = 0L;
+		for(int sq = 0; sq < 64; sq++) {
+			long blocked = 0L;
+			for(int d = 0; d < 8; d++) {
+				if((wallBlocks[d] & (1L << sq)) != 0L) {
+					blocked |= 1L << AttackTables.STEP[d][sq];
+				}
+			}
+			blockedSteps[sq] = blocked;
+		}
+	}
+
+	/**
+	* Returns the Zobrist key of the board layout
+	* @return The XOR of the numbers of every piece, obstacle and wall
+	*/
+	public long getKey() {
+		return key;
+	}
+
+	/**
+	* Returns the material and piece-square score of the pieces. <br>
+	* It is updated by setPiece, so it never has to be added up from the board
+	* @return The score in centipawns, White minus Black
+	*/
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	* Returns the squares that a wall stops from stepping in the given direction
+	* @param dir The direction from AttackTables
+	* @return Bitboard of the blocked squares
+	*/
+	public long getWallBlocks(int dir) {
+		return wallBlocks[dir];
+	}
+
+	/**
+	* Returns the neighbours of a square that a wall cuts off
+	* @param sq The square index
+	* @return Bitboard of the neighbours that cannot be reached in one step
+	*/
+	public long getBlockedSteps(int sq) {
+		return blockedSteps[sq];
+	}
+
+	/**
+	* Returns the bitboard of a piece
+	* @param colour The colour of the piece
+	* @param type The type of the piece
+	* @return The squares holding the piece
+	*/
+	public long getPieces(int colour, int type) {
+		return pieces[colour * 6 + type];
+	}
+
+	/**
+	* Returns the bitboard of all the pieces of a colour
+	* @param colour The colour of the pieces
+	* @return The squares holding the pieces of the colour
+	*/
+	public long getColour(int colour) {
+		return colours[colour];
+	}
+
+	/**
+	* Returns the bitboard of all the pieces on the board
+	* @return The occupied squares
+	*/
+	public long getOccupied() {
+		return occupied;
+	}
+
+	/**
+	* Returns the bitboard of an obstacle type
+	* @param type The obstacle index
+	* @return The squares holding the obstacle
+	*/
+	public long getObstacles(int type) {
+		return obstacles[type];
+	}
+
+	/**
+	* Returns the squares that have a wall on their west side
+	* @return West wall bitboard
+	*/
+	public long getWestWalls() {
+		return westWalls;
+	}
+
+	/**
+	* Returns the squares that have a wall on their south side
+	* @return South wall bitboard
+	*/
+	public long getSouthWalls() {
+		return southWalls;
+	}
+
+	/**
+	* Returns the square of the king of the given colour
+	* @param colour The colour of the king
+	* @return The square index of the king, -1 if there is no king
+	*/
+	public int getKingSquare(int colour) {
+		return kings[colour];
+	}
+
+	/**
+	* Returns the piece on the given square
+	* @param sq The square index
+	* @return The piece character, '.' if empty
+	*/
+	public char getPiece(int sq) {
+		return board[sq >>> 3][sq & 7];
+	}
+
+	/**
+	* Determines if a square holds a piece of the given colour
+	* @param colour The colour to check
+	* @param sq The square index
+	* @return True if a piece of the colour is on the square
+	*/
+	public boolean isColour(int colour, int sq) {
+		return (colours[colour] & (1L << sq)) != 0L;
+	}
+
+	/**
+	* Returns the character view of the pieces
+	* @return Piece board
+	*/
+	public char[][] getBoard() {
+		return board;
+	}
+
+	/**
+	* Returns the character view of the obstacles
+	* @return Obstacle board
+	*/
+	public char[][] getObstacleBoard() {
+		return oBoard;
+	}
+
+	/**
+	* Returns the character view of the walls
+	* @return Wall board
+	*/
+	public char[][] getWallBoard() {
+		return wBoard;
+	}
+
+	/**
+	* Returns the name of a square in chess notation
+	* @param sq The square index
+	* @return The square name. Eg. e4
+	*/
+	public static String squareName(int sq) {
+		return SQUARE_NAMES[sq];
+	}
+
+	/**
+	* Returns the piece index of a piece character
+	* @param pc The piece character
+	* @return The piece index (colour * 6 + type), -1 if not a piece
+	*/
+	public static int pieceIndex(char pc) {
+		if(pc >= 128) {
+			return -1;
+		}
+		return PIECE_INDEX[pc];
+	}
+
+	/**
+	* Returns the colour index of a piece character
+	* @param pc The piece character
+	* @return WHITE or BLACK, -1 if not a piece
+	*/
+	public static int colourOf(char pc) {
+		int idx = pieceIndex(pc);
+		return idx == -1 ? -1 : idx / 6;
+	}
+}
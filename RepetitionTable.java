@@ -0,0 +1,115 @@
+/**
+* This class counts how often each position key occurs in the game. <br>
+* It is an open addressing hash table of primitive keys and counts, so
+* adding, removing and looking up a position is O(1) and creates no objects.
+* It also keeps the number of keys seen three or more times, so a
+* threefold repetition check does not have to visit the table.
+*/
+public class RepetitionTable {
+	private static final int CAPACITY = 256; // Initial number of slots, a power of two
+	private long[] keys; // Position keys
+	private int[] counts; // Occurrences of each key, 0 for a free or emptied slot
+	private boolean[] used; // Slot holds a key
+	private int usedSlots; // Number of slots holding a key
+	private int repeated; // Number of keys with a count of three or more
+
+	/**
+	* Creates an empty table
+	*/
+	public RepetitionTable() {
+		keys = new long[CAPACITY];
+		counts = new int[CAPACITY];
+		used = new boolean[CAPACITY];
+		usedSlots = 0;
+		repeated = 0;
+	}
+
+	/**
+	* Adds an occurrence of a position
+	* @param key The position key
+	*/
+	public void add(long key) {
+		if((usedSlots + 1) * 4 > keys.length * 3) {
+			grow();
+		}
+		int slot = find(key);
+		if(!used[slot]) {
+			used[slot] = true;
+			keys[slot] = key;
+			usedSlots++;
+		}
+		counts[slot]++;
+		if(counts[slot] == 3) {
+			repeated++;
+		}
+	}
+
+	/**
+	* Removes an occurrence of a position
+	* @param key The position key
+	*/
+	public void remove(long key) {
+		int slot = find(key);
+		if(!used[slot] || counts[slot] == 0) {
+			return; // Not in the table
+		}
+		if(counts[slot] == 3) {
+			repeated--;
+		}
+		counts[slot]--;
+	}
+
+	/**
+	* Returns how often a position occurred
+	* @param key The position key
+	* @return The number of occurrences
+	*/
+	public int count(long key) {
+		int slot = find(key);
+		return used[slot] ? counts[slot] : 0;
+	}
+
+	/**
+	* Returns the number of positions that occurred three or more times
+	* @return The number of repeated positions
+	*/
+	public int getRepeated() {
+		return repeated;
+	}
+
+	/**
+	* Returns the slot of a key, or the free slot where it belongs
+	* @param key The position key
+	* @return The slot index
+	*/
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = (int)(key ^ (key >>> 32)) & mask;
+		while(used[slot] && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	* Doubles the table and moves the keys that still occur
+	*/
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length * 2];
+		counts = new int[oldKeys.length * 2];
+		used = new boolean[oldKeys.length * 2];
+		usedSlots = 0;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldUsed[i] && oldCounts[i] > 0) {
+				int slot = find(oldKeys[i]);
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+				usedSlots++;
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/**
+* This class is an immutable view of the game at one ply. <br>
+* The state is split into layers in the Storage record layout: the
+* pieces, the obstacles and the walls, plus the game flags and the
+* position key. A snapshot shares every layer that did not change with the
+* snapshot of the ply before it, so a ply usually only adds a new piece
+* layer. Nothing changes after a snapshot is made, so the GUI, search
+* threads and the live game can keep snapshots of any ply at the same time
+* without copying or locking. <br>
+* The game also publishes a snapshot after every move it plays, with a
+* version that counts the publications, for threads that watch the game.
+*/
+public final class Snapshot {
+	private final long[] pieces; // Storage piece layer, never changed after construction
+	private final long[] obstacles; // Storage obstacle layer, never changed after construction
+	private final long[] walls; // Storage wall layer, never changed after construction
+	private final long flags; // The game flags in the Storage layout
+	private final long key; // The Zobrist key
+	private final int ply; // Index of the state in the game history
+	private final long version; // Publication number of the game, 0 if not published
+	private final Snapshot parent; // Snapshot of the ply before, null if unknown
+
+	/**
+	* Creates a snapshot from a Storage record, sharing the unchanged layers of the parent
+	* @param record The packed state, it is copied
+	* @param ply The index of the state in the game history
+	* @param parent The snapshot of the ply before, null if none
+	*/
+	public Snapshot(long[] record, int ply, Snapshot parent) {
+		this(record, ply, 0L, parent, parent);
+	}
+
+	/**
+	* Creates a snapshot from a Storage record
+	* @param record The packed state, it is copied
+	* @param ply The index of the state in the game history
+	* @param version The publication number, 0 if not published
+	* @param shared A snapshot whose layers are used if they are the same, null if none
+	* @param parent The snapshot of the ply before, null if none
+	*/
+	private Snapshot(long[] record, int ply, long version, Snapshot shared, Snapshot parent) {
+		this.pieces = layer(record, Storage.PIECE_OFFSET, Storage.PIECE_LENGTH, shared == null ? null : shared.pieces);
+		this.obstacles = layer(record, Storage.OBSTACLE_OFFSET, Storage.OBSTACLE_LENGTH, shared == null ? null : shared.obstacles);
+		this.walls = layer(record, Storage.WALL_OFFSET, Storage.WALL_LENGTH, shared == null ? null : shared.walls);
+		this.flags = record[Storage.FLAG_OFFSET];
+		this.key = record[Storage.KEY_OFFSET];
+		this.ply = ply;
+		this.version = version;
+		this.parent = parent;
+	}
+
+	/**
+	* Creates a snapshot to publish, sharing the unchanged layers of the one
+	* published before without keeping it alive
+	* @param record The packed state, it is copied
+	* @param ply The index of the state in the game history
+	* @param version The publication number
+	* @param previous The snapshot published before, null if none
+	* @return The snapshot, without a parent
+	*/
+	public static Snapshot publish(long[] record, int ply, long version, Snapshot previous) {
+		return new Snapshot(record, ply, version, previous, null);
+	}
+
+	/**
+	* Returns a layer of a record, the parent's layer if it is the same
+	* @param record The packed state
+	* @param offset The record index of the layer
+	* @param length The number of longs in the layer
+	* @param shared The parent's layer, null if none
+	* @return The layer
+	*/
+	private static long[] layer(long[] record, int offset, int length, long[] shared) {
+		if(shared != null) {
+			boolean same = true;
+			for(int i = 0; i < length && same; i++) {
+				same = shared[i] == record[offset + i];
+			}
+			if(same) {
+				return shared;
+			}
+		}
+		long[] copy = new long[length];
+		System.arraycopy(record, offset, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	* Writes the state back into a Storage record
+	* @param record The array to write the record to
+	*/
+	public void toRecord(long[] record) {
+		System.arraycopy(pieces, 0, record, Storage.PIECE_OFFSET, Storage.PIECE_LENGTH);
+		System.arraycopy(obstacles, 0, record, Storage.OBSTACLE_OFFSET, Storage.OBSTACLE_LENGTH);
+		System.arraycopy(walls, 0, record, Storage.WALL_OFFSET, Storage.WALL_LENGTH);
+		record[Storage.FLAG_OFFSET] = flags;
+		record[Storage.KEY_OFFSET] = key;
+	}
+
+	/**
+	* Returns a Storage copy of the state, to restore it with Chess.setBoardState
+	* @return The state
+	*/
+	public Storage toStorage() {
+		long[] record = new long[Storage.RECORD_SIZE];
+		toRecord(record);
+		return new Storage(record, 0);
+	}
+
+	/**
+	* Counts the layers this snapshot shares with another, without copies
+	* @param other The other snapshot
+	* @return The number of layers (pieces, obstacles, walls) shared with the other snapshot
+	*/
+	public int sharedLayers(Snapshot other) {
+		int shared = pieces == other.pieces ? 1 : 0;
+		shared += obstacles == other.obstacles ? 1 : 0;
+		shared += walls == other.walls ? 1 : 0;
+		return shared;
+	}
+
+	/**
+	* Returns the piece on a square
+	* @param x The X coordinate of the square
+	* @param y The Y coordinate of the square
+	* @return The piece character, '.' if empty
+	*/
+	public char getPiece(int x, int y) {
+		return Storage.PIECES.charAt(Storage.getField(pieces, 0, Storage.PIECE_BITS, x * 8 + y));
+	}
+
+	/**
+	* Returns the obstacle on a square
+	* @param x The X coordinate of the square
+	* @param y The Y coordinate of the square
+	* @return The obstacle character, '.' if none
+	*/
+	public char getObstacle(int x, int y) {
+		return Storage.OBSTACLES.charAt(Storage.getField(obstacles, 0, Storage.OBSTACLE_BITS, x * 8 + y));
+	}
+
+	/**
+	* Returns the wall on a square
+	* @param x The X coordinate of the square
+	* @param y The Y coordinate of the square
+	* @return The wall character, '.' if none
+	*/
+	public char getWall(int x, int y) {
+		return Storage.WALLS.charAt(Storage.getField(walls, 0, Storage.WALL_BITS, x * 8 + y));
+	}
+
+	/**
+	* Returns a copy of the board
+	* @return The pieces by row and column
+	*/
+	public char[][] getBoard() {
+		char[][] board = new char[8][8];
+		for(int i = 0; i < 8; i++) {
+			for(int j = 0; j < 8; j++) {
+				board[i][j] = getPiece(i, j);
+			}
+		}
+		return board;
+	}
+
+	/**
+	* Returns a copy of the obstacle board
+	* @return The obstacles by row and column
+	*/
+	public char[][] getObstacleBoard() {
+		char[][] board = new char[8][8];
+		for(int i = 0; i < 8; i++) {
+			for(int j = 0; j < 8; j++) {
+				board[i][j] = getObstacle(i, j);
+			}
+		}
+		return board;
+	}
+
+	/**
+	* Returns a copy of the wall board
+	* @return The walls by row and column
+	*/
+	public char[][] getWallBoard() {
+		char[][] board = new char[8][8];
+		for(int i = 0; i < 8; i++) {
+			for(int j = 0; j < 8; j++) {
+				board[i][j] = getWall(i, j);
+			}
+		}
+		return board;
+	}
+
+	/**
+	* Returns the player to move
+	* @return 'w' or 'b'
+	*/
+	public char getPlayer() {
+		return Storage.decodePlayer(flags);
+	}
+
+	/**
+	* Returns the black check status
+	* @return True if black is in check
+	*/
+	public boolean getBlackCheck() {
+		return Storage.decodeBlackCheck(flags);
+	}
+
+	/**
+	* Returns the white check status
+	* @return True if white is in check
+	*/
+	public boolean getWhiteCheck() {
+		return Storage.decodeWhiteCheck(flags);
+	}
+
+	/**
+	* Returns the gameplay status
+	* @return True if the game has started
+	*/
+	public boolean getGamePlaying() {
+		return Storage.decodeGamePlaying(flags);
+	}
+
+	/**
+	* Returns the fifty move counter
+	* @return The fifty move counter
+	*/
+	public int getFiftyCounter() {
+		return Storage.decodeFiftyCounter(flags);
+	}
+
+	/**
+	* Returns the remaining white walls
+	* @return White wall remaining counter
+	*/
+	public int getWWRemain() {
+		return Storage.decodeWWRemain(flags);
+	}
+
+	/**
+	* Returns the remaining black walls
+	* @return Black wall remaining counter
+	*/
+	public int getBWRemain() {
+		return Storage.decodeBWRemain(flags);
+	}
+
+	/**
+	* Returns the Zobrist key of the position
+	* @return The position key
+	*/
+	public long getHashKey() {
+		return key;
+	}
+
+	/**
+	* Returns the index of the state in the game history
+	* @return The ply, the game log length for the live position
+	*/
+	public int getPly() {
+		return ply;
+	}
+
+	/**
+	* Returns the publication number of the snapshot. <br>
+	* Every snapshot a game publishes has a higher number than the one
+	* before, also when a move is taken back
+	* @return The version, 0 if the snapshot was not published
+	*/
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	* Returns the snapshot of the ply before
+	* @return The parent, null if it was not built with this snapshot
+	*/
+	public Snapshot getParent() {
+		return parent;
+	}
+}
@@ -1,25 +1,42 @@
 /**
-* This class is used to store the state of the board 
+* This class is used to store the state of the board
 * to allow for stepping back and forth in the game. It
-* follows the Memento design pattern.
+* follows the Memento design pattern. <br>
+* The state is packed into a record of RECORD_SIZE longs: the pieces and
+* obstacles take 4 bits a square, the walls 2 bits a square and the game
+* flags and position key one long each. GameHistory saves a whole record
+* every 32 plies and only the changed squares of the plies between them.
 */
 public class Storage {
-	private char[][] sBoard; // Board to save
-	private char[][] sOBoard; // Obstacle board to save
-	private char[][] sWBoard; // Wall board to save
-	private char sPlayer; // Current player
-	private boolean sBlackCheck; // Black check status
-	private boolean sWhiteCheck; // White check status
-	private boolean[][] sHasPlayed; // Castling detection to save
-	private boolean sGamePlaying; // Game play flag
-	private String sepPawn; // pawn vulnerable to en passant attack
-	private int sFiftyCounter; // Counter for the fifty move rule
-	private int sWWRemain; // Remaining white walls
-	private int sBWRemain; // Remaining black walls
-	private boolean sWhiteTrap; // Used white trap
-	private boolean sBlackTrap; // Used black trap
-	private boolean sWhiteMine; // Used white mine
-	private boolean sBlackMine; // Used black mine
+	public static final int RECORD_SIZE = 12; // Number of longs in a record
+	static final String PIECES = ".PNBRQKpnbrqk"; // Piece characters by code
+	static final String OBSTACLES = ".DOMX"; // Obstacle characters by code
+	static final String WALLS = ".|_L"; // Wall characters by code
+	static final int PIECE_OFFSET = 0; // Record index of the pieces
+	static final int PIECE_LENGTH = 4; // Number of longs of the pieces
+	static final int PIECE_BITS = 4; // Bits a square of the pieces
+	static final int OBSTACLE_OFFSET = 4; // Record index of the obstacles
+	static final int OBSTACLE_LENGTH = 4; // Number of longs of the obstacles
+	static final int OBSTACLE_BITS = 4; // Bits a square of the obstacles
+	static final int WALL_OFFSET = 8; // Record index of the walls
+	static final int WALL_LENGTH = 2; // Number of longs of the walls
+	static final int WALL_BITS = 2; // Bits a square of the walls
+	private static final int PLAYER_BIT = 0; // Flag bit set when black is to move
+	private static final int BLACK_CHECK_BIT = 1; // Flag bit of the black check status
+	private static final int WHITE_CHECK_BIT = 2; // Flag bit of the white check status
+	private static final int PLAYING_BIT = 3; // Flag bit of the gameplay status
+	private static final int WHITE_MINE_BIT = 4; // Flag bit of the white mine usage
+	private static final int BLACK_MINE_BIT = 5; // Flag bit of the black mine usage
+	private static final int WHITE_TRAP_BIT = 6; // Flag bit of the white trap usage
+	private static final int BLACK_TRAP_BIT = 7; // Flag bit of the black trap usage
+	private static final int MOVED_BIT = 8; // First of the 6 flag bits of the castling detection
+	private static final int ENPASSANT_SHIFT = 14; // 7 bits, en passant square + 1
+	private static final int FIFTY_SHIFT = 21; // 20 bits
+	private static final int WHITE_WALLS_SHIFT = 41; // 8 bits, remaining walls + 128
+	private static final int BLACK_WALLS_SHIFT = 49; // 8 bits, remaining walls + 128
+	public static final int FLAG_OFFSET = 10; // Record index of the game flags, the boards come before it
+	public static final int KEY_OFFSET = 11; // Record index of the Zobrist key
+	private long[] record; // The packed state
 
 	/**
 	* Constructor to save data using a deep copy
@@ -39,40 +56,241 @@ public class Storage {
 	* @param bMine The black player's mine usage to save
 	* @param wTrap The white player's trap usage to save
 	* @param bTrap The black player's trap usage to save
+	* @param hashKey The Zobrist key of the position to save
 	*/
-	public Storage(char[][] boardCopy, char[][] obsBoard, char[][] wallBoard, 
-		char curPlayer, boolean blkChk, boolean whtChk, boolean[][] movStat, 
-		boolean isPlaying, String enpPawn, int fiftyCounter, int wwRemain, 
-		int bwRemain, boolean wMine, boolean bMine, boolean wTrap, boolean bTrap) {
-		// Save all data
-		sBoard = new char[boardCopy.length][boardCopy[0].length];
-		sOBoard = new char[obsBoard.length][obsBoard[0].length];
-		sWBoard = new char[wallBoard.length][wallBoard[0].length];
-		sHasPlayed = new boolean[movStat.length][movStat[0].length];
-		for(int i = 0; i < boardCopy.length; i++) {
-			for(int j = 0; j < boardCopy[i].length; j++) {
-				sBoard[i][j] = boardCopy[i][j];
-				sOBoard[i][j] = obsBoard[i][j];
-				sWBoard[i][j] = wallBoard[i][j];
-			}
+	public Storage(char[][] boardCopy, char[][] obsBoard, char[][] wallBoard,
+		char curPlayer, boolean blkChk, boolean whtChk, boolean[][] movStat,
+		boolean isPlaying, String enpPawn, int fiftyCounter, int wwRemain,
+		int bwRemain, boolean wMine, boolean bMine, boolean wTrap, boolean bTrap, long hashKey) {
+		record = new long[RECORD_SIZE];
+		write(record, 0, boardCopy, obsBoard, wallBoard, curPlayer, blkChk, whtChk, movStat,
+			isPlaying, Move.parseSquare(enpPawn, 0), fiftyCounter, wwRemain, bwRemain,
+			wMine, bMine, wTrap, bTrap, hashKey);
+	}
+
+	/**
+	* Constructor to copy a record out of a history array
+	* @param records The array holding the record
+	* @param offset The index of the first long of the record
+	*/
+	public Storage(long[] records, int offset) {
+		record = new long[RECORD_SIZE];
+		System.arraycopy(records, offset, record, 0, RECORD_SIZE);
+	}
+
+	/**
+	* Packs a game state into a record
+	* @param records The array to write the record to
+	* @param offset The index of the first long of the record
+	* @param boardCopy The board to save
+	* @param obsBoard The obstacles board to save
+	* @param wallBoard The wall board to save
+	* @param curPlayer The current player of this state
+	* @param blkChk The black check status
+	* @param whtChk The white check status
+	* @param movStat The hasMoved data for castling is saved
+	* @param isPlaying Gameplay status to save
+	* @param enpSquare The square of the en passant pawn, -1 if none
+	* @param fiftyCounter The fifty move counter to save
+	* @param wwRemain The white walls remaining to save
+	* @param bwRemain The black walls remaining to save
+	* @param wMine The white player's mine usage to save
+	* @param bMine The black player's mine usage to save
+	* @param wTrap The white player's trap usage to save
+	* @param bTrap The black player's trap usage to save
+	* @param hashKey The Zobrist key of the position to save
+	*/
+	public static void write(long[] records, int offset, char[][] boardCopy, char[][] obsBoard,
+		char[][] wallBoard, char curPlayer, boolean blkChk, boolean whtChk, boolean[][] movStat,
+		boolean isPlaying, int enpSquare, int fiftyCounter, int wwRemain, int bwRemain,
+		boolean wMine, boolean bMine, boolean wTrap, boolean bTrap, long hashKey) {
+		for(int i = 0; i < FLAG_OFFSET; i++) {
+			records[offset + i] = 0L;
+		}
+		for(int sq = 0; sq < 64; sq++) {
+			int x = sq >>> 3;
+			int y = sq & 7;
+			setField(records, offset + PIECE_OFFSET, PIECE_BITS, sq, code(PIECES, boardCopy[x][y]));
+			setField(records, offset + OBSTACLE_OFFSET, OBSTACLE_BITS, sq, code(OBSTACLES, obsBoard[x][y]));
+			setField(records, offset + WALL_OFFSET, WALL_BITS, sq, code(WALLS, wallBoard[x][y]));
 		}
+		long flags = curPlayer == 'b' ? 1L << PLAYER_BIT : 0L;
+		flags |= blkChk ? 1L << BLACK_CHECK_BIT : 0L;
+		flags |= whtChk ? 1L << WHITE_CHECK_BIT : 0L;
+		flags |= isPlaying ? 1L << PLAYING_BIT : 0L;
+		flags |= wMine ? 1L << WHITE_MINE_BIT : 0L;
+		flags |= bMine ? 1L << BLACK_MINE_BIT : 0L;
+		flags |= wTrap ? 1L << WHITE_TRAP_BIT : 0L;
+		flags |= bTrap ? 1L << BLACK_TRAP_BIT : 0L;
+		int bit = MOVED_BIT;
 		for(int i = 0; i < movStat.length; i++) {
 			for(int j = 0; j < movStat[i].length; j++) {
-				sHasPlayed[i][j] = movStat[i][j];
+				if(movStat[i][j]) {
+					flags |= 1L << bit;
+				}
+				bit++;
 			}
 		}
-		sPlayer = curPlayer;
-		sBlackCheck = blkChk;
-		sWhiteCheck = whtChk;
-		sGamePlaying = isPlaying;
-		sepPawn = enpPawn;
-		sFiftyCounter = fiftyCounter;
-		sWWRemain = wwRemain;
-		sBWRemain = bwRemain;
-		sWhiteTrap = wTrap;
-		sBlackTrap = bTrap;
-		sWhiteMine = wMine;
-		sBlackMine = bMine;
+		flags |= (long)(enpSquare + 1) << ENPASSANT_SHIFT;
+		flags |= (long)(fiftyCounter & 0xFFFFF) << FIFTY_SHIFT;
+		flags |= (long)((wwRemain + 128) & 0xFF) << WHITE_WALLS_SHIFT;
+		flags |= (long)((bwRemain + 128) & 0xFF) << BLACK_WALLS_SHIFT;
+		records[offset + FLAG_OFFSET] = flags;
+		records[offset + KEY_OFFSET] = hashKey;
+	}
+
+	/**
+	* Returns the piece, obstacle and wall codes of one square of a record
+	* @param records The array holding the record
+	* @param offset The index of the first long of the record
+	* @param sq The square index
+	* @return The piece code, the obstacle code shifted by 4 and the wall code shifted by 8
+	*/
+	public static int getSquare(long[] records, int offset, int sq) {
+		int piece = getField(records, offset + PIECE_OFFSET, PIECE_BITS, sq);
+		int obstacle = getField(records, offset + OBSTACLE_OFFSET, OBSTACLE_BITS, sq);
+		int wall = getField(records, offset + WALL_OFFSET, WALL_BITS, sq);
+		return piece | obstacle << 4 | wall << 8;
+	}
+
+	/**
+	* Sets the piece, obstacle and wall codes of one square of a record
+	* @param records The array holding the record
+	* @param offset The index of the first long of the record
+	* @param sq The square index
+	* @param codes The codes as returned by getSquare
+	*/
+	public static void setSquare(long[] records, int offset, int sq, int codes) {
+		setField(records, offset + PIECE_OFFSET, PIECE_BITS, sq, codes & 15);
+		setField(records, offset + OBSTACLE_OFFSET, OBSTACLE_BITS, sq, (codes >>> 4) & 15);
+		setField(records, offset + WALL_OFFSET, WALL_BITS, sq, (codes >>> 8) & 3);
+	}
+
+	/**
+	* Returns the code of one square of a packed board layer
+	* @param layer The array holding the layer
+	* @param offset The index of the first long of the layer
+	* @param bits The bits per square of the layer
+	* @param sq The square index
+	* @return The code
+	*/
+	static int getField(long[] layer, int offset, int bits, int sq) {
+		int perLong = 64 / bits;
+		return (int)(layer[offset + sq / perLong] >>> ((sq % perLong) * bits)) & ((1 << bits) - 1);
+	}
+
+	/**
+	* Sets the code of one square of a packed board layer
+	* @param layer The array holding the layer
+	* @param offset The index of the first long of the layer
+	* @param bits The bits per square of the layer
+	* @param sq The square index
+	* @param code The code
+	*/
+	private static void setField(long[] layer, int offset, int bits, int sq, int code) {
+		int perLong = 64 / bits;
+		int shift = (sq % perLong) * bits;
+		long mask = ((1L << bits) - 1) << shift;
+		int idx = offset + sq / perLong;
+		layer[idx] = (layer[idx] & ~mask) | ((long)code << shift & mask);
+	}
+
+	/**
+	* Returns the code of a board character
+	* @param chars The characters in code order
+	* @param c The board character
+	* @return The code, 0 for an empty square or an unknown character
+	*/
+	private static int code(String chars, char c) {
+		return Math.max(0, chars.indexOf(c));
+	}
+
+	/**
+	* Unpacks one of the boards of the record
+	* @param offset The record index of the board
+	* @param bits The bits per square
+	* @param chars The characters in code order
+	* @return The board
+	*/
+	private char[][] unpack(int offset, int bits, String chars) {
+		char[][] layout = new char[8][8];
+		for(int sq = 0; sq < 64; sq++) {
+			layout[sq >>> 3][sq & 7] = chars.charAt(getField(record, offset, bits, sq));
+		}
+		return layout;
+	}
+
+	/**
+	* Determines if a flag bit is set
+	* @param flags The game flags of a record
+	* @param bit The bit index
+	* @return True if the bit is set
+	*/
+	private static boolean flag(long flags, int bit) {
+		return (flags & (1L << bit)) != 0L;
+	}
+
+	/**
+	* Returns the player to move of the game flags of a record
+	* @param flags The game flags
+	* @return 'w' or 'b'
+	*/
+	static char decodePlayer(long flags) {
+		return flag(flags, PLAYER_BIT) ? 'b' : 'w';
+	}
+
+	/**
+	* Returns the black check status of the game flags of a record
+	* @param flags The game flags
+	* @return True if black is in check
+	*/
+	static boolean decodeBlackCheck(long flags) {
+		return flag(flags, BLACK_CHECK_BIT);
+	}
+
+	/**
+	* Returns the white check status of the game flags of a record
+	* @param flags The game flags
+	* @return True if white is in check
+	*/
+	static boolean decodeWhiteCheck(long flags) {
+		return flag(flags, WHITE_CHECK_BIT);
+	}
+
+	/**
+	* Returns the gameplay status of the game flags of a record
+	* @param flags The game flags
+	* @return True if the game has started
+	*/
+	static boolean decodeGamePlaying(long flags) {
+		return flag(flags, PLAYING_BIT);
+	}
+
+	/**
+	* Returns the fifty move counter of the game flags of a record
+	* @param flags The game flags
+	* @return The fifty move counter
+	*/
+	static int decodeFiftyCounter(long flags) {
+		return (int)((flags >>> FIFTY_SHIFT) & 0xFFFFF);
+	}
+
+	/**
+	* Returns the remaining white walls of the game flags of a record
+	* @param flags The game flags
+	* @return White wall remaining counter
+	*/
+	static int decodeWWRemain(long flags) {
+		return (int)((flags >>> WHITE_WALLS_SHIFT) & 0xFF) - 128;
+	}
+
+	/**
+	* Returns the remaining black walls of the game flags of a record
+	* @param flags The game flags
+	* @return Black wall remaining counter
+	*/
+	static int decodeBWRemain(long flags) {
+		return (int)((flags >>> BLACK_WALLS_SHIFT) & 0xFF) - 128;
 	}
 
 	/**
@@ -80,7 +298,7 @@ public class Storage {
 	* @return Saved board state
 	*/
 	public char[][] getBoard() {
-		return sBoard;
+		return unpack(PIECE_OFFSET, PIECE_BITS, PIECES);
 	}
 
 	/**
@@ -88,7 +306,7 @@ public class Storage {
 	* @return Saved board state
 	*/
 	public char[][] getOBoard() {
-		return sOBoard;
+		return unpack(OBSTACLE_OFFSET, OBSTACLE_BITS, OBSTACLES);
 	}
 
 	/**
@@ -96,7 +314,7 @@ public class Storage {
 	* @return Saved board state
 	*/
 	public char[][] getWBoard() {
-		return sWBoard;
+		return unpack(WALL_OFFSET, WALL_BITS, WALLS);
 	}
 
 	/**
@@ -104,29 +322,36 @@ public class Storage {
 	* @return Saved current player
 	*/
 	public char getPlayer() {
-		return sPlayer;
+		return decodePlayer(record[FLAG_OFFSET]);
 	}
 	/**
 	* This function returns the black check status that is saved
 	* @return Black check status
 	*/
 	public boolean getBlackCheck() {
-		return sBlackCheck;
+		return decodeBlackCheck(record[FLAG_OFFSET]);
 	}
 	/**
 	* This function returns the white check status that is saved
 	* @return White check status
 	*/
 	public boolean getWhiteCheck() {
-		return sWhiteCheck;
+		return decodeWhiteCheck(record[FLAG_OFFSET]);
 	}
-	
+
 	/**
 	* This function returns the castling detection that is saved
 	* @return Castling detection status
 	*/
 	public boolean[][] getHasPlayed() {
-		return sHasPlayed;
+		boolean[][] hasPlayed = new boolean[2][3];
+		int bit = MOVED_BIT;
+		for(int i = 0; i < hasPlayed.length; i++) {
+			for(int j = 0; j < hasPlayed[i].length; j++) {
+				hasPlayed[i][j] = flag(record[FLAG_OFFSET], bit++);
+			}
+		}
+		return hasPlayed;
 	}
 
 	/**
@@ -134,7 +359,7 @@ public class Storage {
 	* @return Gameplay status
 	*/
 	public boolean getGamePlaying() {
-		return sGamePlaying;
+		return decodeGamePlaying(record[FLAG_OFFSET]);
 	}
 
 	/**
@@ -142,7 +367,8 @@ public class Storage {
 	* @return En passant piece
 	*/
 	public String getEnPassPawn() {
-		return sepPawn;
+		int sq = (int)((record[FLAG_OFFSET] >>> ENPASSANT_SHIFT) & 127) - 1;
+		return sq == -1 ? "xx" : Position.squareName(sq);
 	}
 
 	/**
@@ -150,7 +376,7 @@ public class Storage {
 	* @return Fify move counter
 	*/
 	public int getFiftyCounter() {
-		return sFiftyCounter;
+		return decodeFiftyCounter(record[FLAG_OFFSET]);
 	}
 
 	/**
@@ -158,7 +384,7 @@ public class Storage {
 	* @return White wall remaining counter
 	*/
 	public int getWWRemain() {
-		return sWWRemain;
+		return decodeWWRemain(record[FLAG_OFFSET]);
 	}
 
 	/**
@@ -166,7 +392,7 @@ public class Storage {
 	* @return Black wall remaining counter
 	*/
 	public int getBWRemain() {
-		return sBWRemain;
+		return decodeBWRemain(record[FLAG_OFFSET]);
 	}
 
 	/**
@@ -174,14 +400,14 @@ public class Storage {
 	* @return White trap usage
 	*/
 	public boolean getWTrap() {
-		return sWhiteTrap;
+		return flag(record[FLAG_OFFSET], WHITE_TRAP_BIT);
 	}
 	/**
 	* This function returns the black trap usage that is saved
 	* @return Black trap usage
 	*/
 	public boolean getBTrap() {
-		return sBlackTrap;
+		return flag(record[FLAG_OFFSET], BLACK_TRAP_BIT);
 	}
 
 	/**
@@ -189,7 +415,7 @@ public class Storage {
 	* @return White mine usage
 	*/
 	public boolean getWMine() {
-		return sWhiteMine;
+		return flag(record[FLAG_OFFSET], WHITE_MINE_BIT);
 	}
 
 	/**
@@ -197,6 +423,14 @@ public class Storage {
 	* @return Black mine usage
 	*/
 	public boolean getBMine() {
-		return sBlackMine;
+		return flag(record[FLAG_OFFSET], BLACK_MINE_BIT);
+	}
+
+	/**
+	* This function returns the Zobrist key of the saved position
+	* @return Saved position key
+	*/
+	public long getHashKey() {
+		return record[KEY_OFFSET];
 	}
-}
\ No newline at end of file
+}
@@ -4,6 +4,9 @@
 */
 public class TestCLI {
 	private Chess yourChess; // Test chess object
+	private ParallelSearch engine; // Computer player, created on first use
+	private int threads; // Search threads of the computer player
+	private int hashMb; // Transposition table size of the computer player
 
 	/**
 	* This allows the class to be a self-contained testing unit
@@ -20,6 +23,8 @@ public class TestCLI {
 	*/
 	public TestCLI(Chess yc) {
 		yourChess = yc;
+		threads = 1;
+		hashMb = 16;
 	}
 
 	public void run() {
@@ -60,9 +65,15 @@ public class TestCLI {
 				System.out.println("restore   : Restores the game to the revious state");
 				System.out.println("rs [x]    : Restores the game to point X");
 				System.out.println("gb [file] : Load a board");
-				System.out.println("gl [file] : Load a game log and executes it");
+				System.out.println("gl [file] : Load a game log (text or binary) and executes it");
 				System.out.println("sb [file] : Save the game board");
 				System.out.println("sl [file] : Save the game log");
+				System.out.println("sx [file] : Save the game log in the binary format");
+				System.out.println("gd [x]    : Computer plays a move searched to depth X");
+				System.out.println("gt [x]    : Computer plays a move searched for X milliseconds");
+				System.out.println("hs [x]    : Sets the computer's hash table size to X MB");
+				System.out.println("th [x]    : Sets the computer's search threads to X");
+				System.out.println("mc [x]    : Computer plays a move found by X milliseconds of random playouts");
 				continue;
 			}
 			// Run Commands
@@ -98,6 +109,59 @@ public class TestCLI {
 							yourChess.printBoard();
 						}
 						break;
+					case "sx":
+						if(yourChess.saveBinaryGameLog(cmd[1])) {
+							yourChess.printBoard();
+						}
+						break;
+					case "gd":
+					case "gt":
+						try {
+							int budget = Integer.parseInt(cmd[1]);
+							if(budget < 1) {
+								System.out.println("ERROR: invalid search budget");
+							} else if(cmd[0].equals("gd")) {
+								computerMove(budget, 0);
+							} else {
+								computerMove(0, budget);
+							}
+						} catch(NumberFormatException ex) {
+							System.out.println("ERROR: invalid search budget");
+						}
+						break;
+					case "mc":
+						try {
+							int millis = Integer.parseInt(cmd[1]);
+							if(millis < 1) {
+								System.out.println("ERROR: invalid search budget");
+							} else {
+								monteCarloMove(millis);
+							}
+						} catch(NumberFormatException ex) {
+							System.out.println("ERROR: invalid search budget");
+						}
+						break;
+					case "hs":
+					case "th":
+						try {
+							int value = Integer.parseInt(cmd[1]);
+							if(value < 1) {
+								System.out.println("ERROR: invalid value");
+							} else {
+								if(cmd[0].equals("hs")) {
+									hashMb = value;
+								} else {
+									threads = value;
+								}
+								if(engine != null) {
+									engine.shutdown();
+									engine = null; // Created again with the new settings
+								}
+							}
+						} catch(NumberFormatException ex) {
+							System.out.println("ERROR: invalid value");
+						}
+						break;
 					default:
 						System.out.println("ERROR: unknown command");
 						break;
@@ -108,4 +172,44 @@ public class TestCLI {
 			yourChess.printBoard();
 		}
 	}
+
+	/**
+	* Lets the engine search for a move and plays it
+	* @param depth The search depth, 0 for no depth limit
+	* @param millis The search time in milliseconds, 0 for no time limit
+	*/
+	private void computerMove(int depth, long millis) {
+		if(engine == null) {
+			engine = new ParallelSearch(threads, new TranspositionTable(hashMb));
+		}
+		engine.setVerbose(true); // Report every iteration
+		int best = engine.search(yourChess, depth, millis);
+		if(best == Move.NONE) {
+			System.out.println("INFO: no legal move");
+			return;
+		}
+		System.out.println(engine.getInfo());
+		System.out.println("Computer plays " + Move.toString(best) + " (" + engine.getNodesPerSecond() + " nodes/second)");
+		yourChess.move(best);
+		yourChess.printBoard();
+	}
+
+	/**
+	* Lets the Monte Carlo search pick a move and plays it. <br>
+	* It also handles the mine and trap door placements before the game
+	* @param millis The search time in milliseconds
+	*/
+	private void monteCarloMove(long millis) {
+		MonteCarlo search = new MonteCarlo(threads);
+		int best = search.search(yourChess, millis, 0);
+		search.shutdown();
+		if(best == Move.NONE) {
+			System.out.println("INFO: no legal move");
+			return;
+		}
+		System.out.println(search.getInfo());
+		System.out.println("Computer plays " + Move.toString(best) + " (" + search.getPlayoutsPerSecond() + " playouts/second)");
+		yourChess.move(best);
+		yourChess.printBoard();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+* This class lets every thread collect what it prints. <br>
+* The game prints its messages to System.out. When many games run on
+* different threads at once, this stream is put in place of System.out:
+* a thread that called capture writes to its own buffer, and every other
+* thread writes to the console as before.
+*/
+public class ThreadOutput extends OutputStream {
+	private PrintStream console; // Output of the threads that do not capture
+	private ThreadLocal<ByteArrayOutputStream> buffers; // Buffer of each capturing thread
+
+	/**
+	* Creates the stream
+	* @param console The console stream
+	*/
+	public ThreadOutput(PrintStream console) {
+		this.console = console;
+		this.buffers = new ThreadLocal<ByteArrayOutputStream>();
+	}
+
+	/**
+	* Puts a new stream in place of System.out
+	* @return The stream, to capture threads with
+	*/
+	public static ThreadOutput install() {
+		ThreadOutput output = new ThreadOutput(System.out);
+		System.setOut(new PrintStream(output, true));
+		return output;
+	}
+
+	/**
+	* Puts the console stream back in place of System.out
+	*/
+	public void uninstall() {
+		System.setOut(console);
+	}
+
+	/**
+	* Returns the console stream
+	* @return The stream that was System.out before install
+	*/
+	public PrintStream getConsole() {
+		return console;
+	}
+
+	/**
+	* Starts collecting what the calling thread prints
+	* @return The buffer
+	*/
+	public ByteArrayOutputStream capture() {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		buffers.set(buffer);
+		return buffer;
+	}
+
+	/**
+	* Stops collecting what the calling thread prints
+	*/
+	public void release() {
+		buffers.remove();
+	}
+
+	@Override
+	public void write(int b) {
+		ByteArrayOutputStream buffer = buffers.get();
+		if(buffer != null) {
+			buffer.write(b);
+		} else {
+			console.write(b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ByteArrayOutputStream buffer = buffers.get();
+		if(buffer != null) {
+			buffer.write(b, off, len);
+		} else {
+			console.write(b, off, len);
+		}
+	}
+
+	@Override
+	public void flush() {
+		console.flush();
+	}
+}
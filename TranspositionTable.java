@@ -0,0 +1,184 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* This class is a shared table of search results (transposition table). <br>
+* Each entry is two longs: the best move, score, depth, bound and search
+* generation packed into one long, and the position key XORed with it.
+* Search threads read and write entries without locks. An entry torn by
+* two threads writing at once no longer matches its key and is treated as
+* empty, so a search never uses a result of another position.
+*/
+public class TranspositionTable {
+	public static final int NONE = 0; // Bound types. No entry
+	public static final int EXACT = 1; // The score is exact
+	public static final int LOWER = 2; // The score is at least the stored score (cut-off)
+	public static final int UPPER = 3; // The score is at most the stored score (no move raised alpha)
+	private static final int SCORE_OFFSET = 32768; // Scores are stored as unsigned 16 bit numbers
+	private AtomicLongArray entries; // Pairs of (key ^ data, data)
+	private int mask; // Entry count - 1, the entry count is a power of two
+	private int megabytes; // Size of the table
+	private volatile int generation; // Search number, older entries are replaced first
+	private LongAdder probes; // Number of lookups of the current search
+	private LongAdder hits; // Number of lookups of the current search that found the position
+
+	/**
+	* Creates a table of the given size
+	* @param megabytes The size of the table in megabytes
+	*/
+	public TranspositionTable(int megabytes) {
+		long wanted = Math.max(1L, (long)megabytes * 1024 * 1024 / 16);
+		int size = Integer.highestOneBit((int)Math.min(wanted, 1 << 28));
+		this.megabytes = megabytes;
+		entries = new AtomicLongArray(size * 2);
+		mask = size - 1;
+		generation = 0;
+		probes = new LongAdder();
+		hits = new LongAdder();
+	}
+
+	/**
+	* Looks up a position
+	* @param key The position key
+	* @return The packed entry, 0 if the table does not hold the position
+	*/
+	public long probe(long key) {
+		int idx = ((int)(key ^ (key >>> 32)) & mask) * 2;
+		long check = entries.get(idx);
+		long data = entries.get(idx + 1);
+		probes.increment();
+		if((check ^ data) != key || getBound(data) == NONE) {
+			return 0L;
+		}
+		hits.increment();
+		return data;
+	}
+
+	/**
+	* Stores the result of a search. <br>
+	* A deeper result of the current search for another position is kept
+	* @param key The position key
+	* @param depth The remaining depth of the search
+	* @param bound EXACT, LOWER or UPPER
+	* @param score The score, mate scores counted from the stored position
+	* @param move The best move, Move.NONE if there is none
+	*/
+	public void store(long key, int depth, int bound, int score, int move) {
+		int idx = ((int)(key ^ (key >>> 32)) & mask) * 2;
+		long oldData = entries.get(idx + 1);
+		boolean sameKey = (entries.get(idx) ^ oldData) == key;
+		if(!sameKey && getBound(oldData) != NONE && getGeneration(oldData) == (generation & 0xFF)
+			&& getDepth(oldData) > depth) {
+			return; // Keep the deeper result
+		}
+		if(sameKey && move == Move.NONE) {
+			move = getMove(oldData); // Keep the old best move for move ordering
+		}
+		long data = (long)move
+			| (long)(score + SCORE_OFFSET) << 19
+			| (long)Math.min(depth, 255) << 35
+			| (long)bound << 43
+			| (long)(generation & 0xFF) << 45;
+		entries.set(idx, key ^ data);
+		entries.set(idx + 1, data);
+	}
+
+	/**
+	* Starts a new search, entries of older searches are replaced first. <br>
+	* The statistics are reset so they cover the new search only
+	*/
+	public void newSearch() {
+		generation++;
+		probes.reset();
+		hits.reset();
+	}
+
+	/**
+	* Empties the table and resets the statistics
+	*/
+	public void clear() {
+		for(int i = 0; i < entries.length(); i++) {
+			entries.set(i, 0L);
+		}
+		probes.reset();
+		hits.reset();
+	}
+
+	/**
+	* Returns the size of the table
+	* @return The size in megabytes
+	*/
+	public int getMegabytes() {
+		return megabytes;
+	}
+
+	/**
+	* Returns the number of lookups
+	* @return The lookup count
+	*/
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	/**
+	* Returns the number of lookups that found their position
+	* @return The hit count
+	*/
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	* Returns the share of lookups that found their position
+	* @return The hit rate in percent
+	*/
+	public double getHitRate() {
+		long total = probes.sum();
+		return total == 0 ? 0.0 : hits.sum() * 100.0 / total;
+	}
+
+	/**
+	* Returns the best move of an entry
+	* @param data The packed entry
+	* @return The encoded move
+	*/
+	public static int getMove(long data) {
+		return (int)(data & 0x7FFFF);
+	}
+
+	/**
+	* Returns the score of an entry
+	* @param data The packed entry
+	* @return The score
+	*/
+	public static int getScore(long data) {
+		return (int)((data >>> 19) & 0xFFFF) - SCORE_OFFSET;
+	}
+
+	/**
+	* Returns the depth of an entry
+	* @param data The packed entry
+	* @return The remaining depth of the search that stored it
+	*/
+	public static int getDepth(long data) {
+		return (int)((data >>> 35) & 0xFF);
+	}
+
+	/**
+	* Returns the bound type of an entry
+	* @param data The packed entry
+	* @return EXACT, LOWER, UPPER or NONE
+	*/
+	public static int getBound(long data) {
+		return (int)((data >>> 43) & 3);
+	}
+
+	/**
+	* Returns the search generation of an entry
+	* @param data The packed entry
+	* @return The generation, the lowest 8 bits of the search number
+	*/
+	private static int getGeneration(long data) {
+		return (int)((data >>> 45) & 0xFF);
+	}
+}
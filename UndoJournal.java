@@ -0,0 +1,153 @@
+/**
+* This class records the changes a move makes so the move can be taken back. <br>
+* Every move opens a frame. The frame starts with the game flags packed
+* into a long and is followed by the old contents of each square the move
+* changed, including squares emptied by a mine or changed by a trap door.
+* The records live in reused primitive arrays, so making and taking back
+* a move does not create any objects.
+*/
+public class UndoJournal {
+	private static final int CAPACITY = 1024; // Initial number of entries
+	private static final int MAX_DEPTH = 256; // Initial number of frames
+	private long[] entries; // Frame states and square records
+	private int size; // Number of entries in use
+	private int[] frames; // Index of the state entry of each open frame
+	private int depth; // Number of open frames
+
+	/**
+	* Creates an empty journal
+	*/
+	public UndoJournal() {
+		entries = new long[CAPACITY];
+		frames = new int[MAX_DEPTH];
+		size = 0;
+		depth = 0;
+	}
+
+	/**
+	* Removes all frames
+	*/
+	public void clear() {
+		size = 0;
+		depth = 0;
+	}
+
+	/**
+	* Opens a new frame
+	* @param state The packed game flags before the move
+	*/
+	public void open(long state) {
+		if(depth == frames.length) {
+			frames = java.util.Arrays.copyOf(frames, frames.length * 2);
+		}
+		frames[depth++] = size;
+		push(state);
+	}
+
+	/**
+	* Records the contents of a square before it is changed
+	* @param sq The square index
+	* @param piece The piece on the square
+	* @param obstacle The obstacle on the square
+	* @param wall The wall on the square
+	*/
+	public void record(int sq, char piece, char obstacle, char wall) {
+		push(sq | ((long)piece << 8) | ((long)obstacle << 24) | ((long)wall << 40));
+	}
+
+	/**
+	* Determines if the open frame still has square records
+	* @return True if there is a square to restore
+	*/
+	public boolean hasRecords() {
+		return size > frames[depth - 1] + 1;
+	}
+
+	/**
+	* Removes the last square record of the open frame
+	* @return The square record
+	*/
+	public long popRecord() {
+		return entries[--size];
+	}
+
+	/**
+	* Closes the open frame once all its squares are restored
+	* @return The packed game flags to restore
+	*/
+	public long close() {
+		size = frames[--depth];
+		return entries[size];
+	}
+
+	/**
+	* Keeps the changes of the open frame. <br>
+	* The squares of an inner frame are handed to the frame around it
+	* so taking back the outer move also restores them
+	*/
+	public void commit() {
+		int start = frames[--depth];
+		if(depth == 0) {
+			size = start;
+		} else {
+			// Drop the state entry of the frame
+			System.arraycopy(entries, start + 1, entries, start, size - start - 1);
+			size--;
+		}
+	}
+
+	/**
+	* Returns the number of open frames
+	* @return The frame count
+	*/
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	* Returns the square of a square record
+	* @param rec The square record
+	* @return The square index
+	*/
+	public static int getSquare(long rec) {
+		return (int)(rec & 63);
+	}
+
+	/**
+	* Returns the piece of a square record
+	* @param rec The square record
+	* @return The piece character
+	*/
+	public static char getPiece(long rec) {
+		return (char)((rec >>> 8) & 0xFFFF);
+	}
+
+	/**
+	* Returns the obstacle of a square record
+	* @param rec The square record
+	* @return The obstacle character
+	*/
+	public static char getObstacle(long rec) {
+		return (char)((rec >>> 24) & 0xFFFF);
+	}
+
+	/**
+	* Returns the wall of a square record
+	* @param rec The square record
+	* @return The wall character
+	*/
+	public static char getWall(long rec) {
+		return (char)((rec >>> 40) & 0xFFFF);
+	}
+
+	/**
+	* Adds an entry to the end of the journal
+	* @param entry The entry
+	*/
+	private void push(long entry) {
+		if(size == entries.length) {
+			entries = java.util.Arrays.copyOf(entries, entries.length * 2);
+		}
+		entries[size++] = entry;
+	}
+}
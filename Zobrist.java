@@ -0,0 +1,62 @@
+import java.util.Random;
+
+/**
+* This class holds the random numbers used to hash a game position. <br>
+* Every feature of the position (a piece on a square, an obstacle, a wall,
+* the side to move, ...) has its own 64-bit number. The key of a position
+* is the XOR of the numbers of its features, so a change to the position
+* updates the key with a single XOR. The numbers come from a fixed seed,
+* so keys are the same in every run.
+*/
+public class Zobrist {
+	private static final long SEED = 0x0B57AC1EC4E55L; // Seed for the random numbers
+	public static final long[][] PIECES = new long[12][64]; // Piece index and square
+	public static final long[][] OBSTACLES = new long[4][64]; // Obstacle index and square
+	public static final long[] WEST_WALLS = new long[64]; // Wall on the west side of a square
+	public static final long[] SOUTH_WALLS = new long[64]; // Wall on the south side of a square
+	public static final long SIDE; // Black to move
+	public static final long SETUP; // Game not started, mines and trap doors can still be placed
+	public static final long[][] CASTLING = new long[2][3]; // hasMoved flags
+	public static final long[] EN_PASSANT = new long[64]; // Square of the pawn that can be taken en passant
+	public static final int MAX_WALLS = 127; // Most remaining walls of a colour, the Storage record holds no more
+	public static final long[][] WALLS_LEFT = new long[2][MAX_WALLS + 2]; // Remaining walls of each colour, from -1
+	public static final long[] MINE_USED = new long[2]; // Mine placed by each colour
+	public static final long[] TRAP_USED = new long[2]; // Trap door placed by each colour
+
+	static {
+		Random rand = new Random(SEED);
+		for(int sq = 0; sq < 64; sq++) {
+			for(int i = 0; i < PIECES.length; i++) {
+				PIECES[i][sq] = rand.nextLong();
+			}
+			for(int i = 0; i < OBSTACLES.length; i++) {
+				OBSTACLES[i][sq] = rand.nextLong();
+			}
+			WEST_WALLS[sq] = rand.nextLong();
+			SOUTH_WALLS[sq] = rand.nextLong();
+			EN_PASSANT[sq] = rand.nextLong();
+		}
+		SIDE = rand.nextLong();
+		SETUP = rand.nextLong();
+		for(int c = 0; c < 2; c++) {
+			for(int i = 0; i < CASTLING[c].length; i++) {
+				CASTLING[c][i] = rand.nextLong();
+			}
+			for(int i = 0; i < WALLS_LEFT[c].length; i++) {
+				WALLS_LEFT[c][i] = rand.nextLong();
+			}
+			MINE_USED[c] = rand.nextLong();
+			TRAP_USED[c] = rand.nextLong();
+		}
+	}
+
+	/**
+	* Returns the number for a count of remaining walls
+	* @param colour The colour index
+	* @param remain The remaining walls, -1 to MAX_WALLS. An 'L' wall can take the count to -1
+	* @return The random number
+	*/
+	public static long wallsLeft(int colour, int remain) {
+		return WALLS_LEFT[colour][remain + 1];
+	}
+}